@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/** Textual forms of executions and traces: the dot files and the console output. */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    private Path dir;
+    private String executionFile;
+    private String traceFile;
+
+    @Setup
+    public void setup() throws IOException {
+	dir = Files.createTempDirectory("mdc-bench");
+	executionFile = dir.resolve("execution.dot").toString();
+	traceFile = dir.resolve("trace.dot").toString();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+	Files.deleteIfExists(Paths.get(executionFile));
+	Files.deleteIfExists(Paths.get(traceFile));
+	Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void executionDotFile(SolutionState st) {
+	st.execution.outputToDotFile(executionFile);
+    }
+
+    @Benchmark
+    public void traceDotFile(SolutionState st) {
+	st.trace.outputToDotFile(traceFile);
+    }
+
+    @Benchmark
+    public String executionToString(SolutionState st) {
+	return st.execution.toString();
+    }
+
+    @Benchmark
+    public String traceToString(SolutionState st) {
+	return st.trace.toString();
+    }
+}
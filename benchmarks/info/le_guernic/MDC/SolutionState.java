@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Synthetic solution shared by the benchmarks, scaled by the number of
+ * states, of transitions and by the length of the executions and traces.
+ * Atoms are drawn from a seeded generator, so every run measures the same
+ * solution. There are as many executions and traces as states.
+ */
+
+@org.openjdk.jmh.annotations.State(Scope.Benchmark) // MDC also has a State
+public class SolutionState {
+
+    @Param({"10", "100"})
+    public int states;
+
+    @Param({"50", "500"})
+    public int transitions;
+
+    @Param({"10", "100"})
+    public int seqLength;
+
+    MDCSolution mdc;
+    Execution execution;
+    Trace trace;
+    /** Recorded form of the solution, as in a solution store or in the cache. */
+    byte[] record;
+
+    @Setup
+    public void setup() {
+	mdc = generate(states, Math.max(transitions, states), seqLength, new Random(42));
+	execution = mdc.getExecutions().iterator().next();
+	trace = mdc.getTraces().iterator().next();
+	record = SolutionCodec.encode(mdc);
+    }
+
+    static MDCSolution generate(int nbStates, int nbTransitions, int length, Random rnd) {
+	final MDCSolution mdc = new MDCSolution();
+	for (int s = 0; s < nbStates; s++) mdc.internState("State$" + s);
+	final int nbLabels = Math.max(2, nbStates / 2);
+	for (int l = 0; l < nbLabels; l++) mdc.internLabel("Label$" + l);
+	mdc.setEmptyLabel(0, true);
+	mdc.setNoLabel(mdc.internLabel("NoLabel$0"));
+	// Every state has an outgoing transition, so that executions never get stuck
+	final List<List<Integer>> outgoing = new ArrayList<List<Integer>>();
+	for (int s = 0; s < nbStates; s++) outgoing.add(new ArrayList<Integer>());
+	for (int t = 0; t < nbTransitions; t++) {
+	    final int pre = (t < nbStates) ? t : rnd.nextInt(nbStates);
+	    mdc.internTransition("Transition$" + t);
+	    mdc.setPreState(t, pre);
+	    mdc.setPostState(t, rnd.nextInt(nbStates));
+	    mdc.setTrigger(t, rnd.nextInt(nbLabels));
+	    mdc.setEffect(t, rnd.nextInt(nbLabels));
+	    outgoing.get(pre).add(t);
+	}
+	for (int e = 0; e < nbStates; e++) {
+	    final int id = mdc.internExecution("Execution$" + e);
+	    int s = rnd.nextInt(nbStates);
+	    mdc.initExecution(id, s);
+	    for (int i = 0; i < length; i++) {
+		final List<Integer> out = outgoing.get(s);
+		final int t = out.get(rnd.nextInt(out.size()));
+		mdc.stepExecution(id, t);
+		s = mdc.postState(t);
+	    }
+	}
+	for (int r = 0; r < nbStates; r++) {
+	    final int id = mdc.internTrace("Trace$" + r);
+	    for (int i = 0; i < length; i++) mdc.appendToTrace(id, rnd.nextInt(nbLabels));
+	}
+	return mdc;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cell values of the traces table, read as the table does when it paints:
+ * once from a freshly filled model, whose sequences are rendered on first
+ * access, and again from a model whose renderings are cached.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class TraceTableBenchmark {
+
+    private TraceTableModel cached;
+
+    @Setup
+    public void setup(SolutionState st) {
+	cached = new TraceTableModel();
+	cached.silentlyAddTraces(st.mdc.getTraces());
+	readAll(cached, null);
+    }
+
+    private static void readAll(TraceTableModel model, Blackhole bh) {
+	for (int row = 0; row < model.getRowCount(); row++) {
+	    for (int col = 0; col < model.getColumnCount(); col++) {
+		final Object value = model.getValueAt(row, col);
+		if (bh != null) bh.consume(value);
+	    }
+	}
+    }
+
+    @Benchmark
+    public void firstRendering(SolutionState st, Blackhole bh) {
+	final TraceTableModel model = new TraceTableModel();
+	model.silentlyAddTraces(st.mdc.getTraces());
+	readAll(model, bh);
+    }
+
+    @Benchmark
+    public void cachedValues(Blackhole bh) {
+	readAll(cached, bh);
+    }
+}
@@ -0,0 +1,62 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Gurvan LE GUERNIC
+# All rights reserved.
+# 
+# Redistribution and use in source and binary forms, with or without
+# modification, are permitted provided that the following conditions are met:
+# 
+# * Redistributions of source code must retain the above copyright notice, this
+#   list of conditions and the following disclaimer.
+# 
+# * Redistributions in binary form must reproduce the above copyright notice,
+#   this list of conditions and the following disclaimer in the documentation
+#   and/or other materials provided with the distribution.
+# 
+# * Neither the name of the copyright holder nor the names of its
+#   contributors may be used to endorse or promote products derived from
+#   this software without specific prior written permission.
+# 
+# THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+# AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+# IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+# DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+# FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+# DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+# SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+# CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+# OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+# OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+# Usage: ./bench.sh [JMH options]
+#        ./bench.sh GraphBenchmark -p states=1000 -p transitions=5000
+#
+# Needs the JMH jars (jmh-core, jmh-generator-annprocess, jopt-simple and
+# commons-math3) in lib/jmh. The allocation rate of each benchmark is
+# reported by the gc profiler, unless other profilers are asked for.
+
+scriptsDir="${BASH_SOURCE%/*}"
+if [[ ! -d "${scriptsDir}" ]]; then scriptsDir="$PWD"; fi
+. "${scriptsDir}/config.sh"
+
+jmhDir="${libDir}/jmh";
+benchSourceDir="${rootDir}/benchmarks";
+benchTargetDir="${targetDir}/benchmarks";
+
+if ! ls ${jmhDir}/jmh-core-*.jar > /dev/null 2>&1;
+then
+    echo "The JMH jars are missing from ${jmhDir}";
+    exit 1;
+fi;
+
+mkdir -p ${benchTargetDir};
+javac -sourcepath ${sourceDir}:${benchSourceDir} -cp .:${libDir}/*:${jmhDir}/* -d ${benchTargetDir} \
+      $(find ${benchSourceDir} -name "*.java") || exit 1;
+
+params="${@}";
+if [[ "${params}" != *"-prof"* ]];
+then
+    params="${params} -prof gc";
+fi;
+
+java -cp ${benchTargetDir}:${libDir}/*:${jmhDir}/* org.openjdk.jmh.Main ${params};
@@ -29,12 +29,13 @@
 # OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 # Usage: ./run.sh info.le_guernic.MDC.Visualizer ../alloy-models/MDC.als
+#        ./run.sh info.le_guernic.MDC.Visualizer -batch ../alloy-models/MDC.als -n 1000 -o solutions.txt
 
 scriptsDir="${BASH_SOURCE%/*}"
 if [[ ! -d "${scriptsDir}" ]]; then scriptsDir="$PWD"; fi
 . "${scriptsDir}/config.sh"
 
-if [[ $# != 2 ]];
+if [[ $# -lt 2 ]];
 then
     params="info.le_guernic.MDC.Visualizer ${metamodelsDir}/MDC.als";
 else
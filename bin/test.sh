@@ -0,0 +1,60 @@
+#!/bin/bash
+
+# Copyright (c) 2018, Gurvan LE GUERNIC
+# All rights reserved.
+# 
+# Redistribution and use in source and binary forms, with or without
+# modification, are permitted provided that the following conditions are met:
+# 
+# * Redistributions of source code must retain the above copyright notice, this
+#   list of conditions and the following disclaimer.
+# 
+# * Redistributions in binary form must reproduce the above copyright notice,
+#   this list of conditions and the following disclaimer in the documentation
+#   and/or other materials provided with the distribution.
+# 
+# * Neither the name of the copyright holder nor the names of its
+#   contributors may be used to endorse or promote products derived from
+#   this software without specific prior written permission.
+# 
+# THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+# AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+# IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+# DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+# FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+# DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+# SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+# CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+# OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+# OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+# Usage: ./test.sh [SomeCheck ...]
+#
+# Compiles the checks of ./tests and runs them (all the classes whose name
+# ends with Check, unless some are given). Exits with a non-zero status if
+# any of them fails.
+
+scriptsDir="${BASH_SOURCE%/*}"
+if [[ ! -d "${scriptsDir}" ]]; then scriptsDir="$PWD"; fi
+. "${scriptsDir}/config.sh"
+
+testSourceDir="${rootDir}/tests";
+testTargetDir="${targetDir}/tests";
+
+mkdir -p ${testTargetDir};
+javac -sourcepath ${sourceDir}:${testSourceDir} -cp .:${libDir}/* -d ${testTargetDir} \
+      $(find ${testSourceDir} -name "*.java") || exit 1;
+
+if [[ $# == 0 ]];
+then
+    checks=$(cd ${testSourceDir}/info/le_guernic/MDC && ls *Check.java | sed -e "s/\.java$//");
+else
+    checks="${@}";
+fi;
+
+status=0;
+for check in ${checks};
+do
+    java -Djava.awt.headless=true -cp ${testTargetDir}:${libDir}/* info.le_guernic.MDC.${check} || status=1;
+done;
+exit ${status};
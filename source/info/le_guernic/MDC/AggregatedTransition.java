@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+
+import java.util.*;
+
+/**
+ * All the transitions of a solution going from one state to another,
+ * drawn as a single edge. Its trigger and effect are those of its first
+ * transition. Its description gives their number and their first labels
+ * (drawing long labels costs as much as drawing the edges it replaces),
+ * and its GUI name lists all of them with their labels.
+ */
+
+public class AggregatedTransition extends Transition {
+
+    /** Number of distinct "trigger | effect" labels in the description before eliding the others. */
+    static final int MAX_SHOWN_LABELS = Integer.getInteger("mdc.gui.aggregateLabels", 1);
+
+    private final List<Transition> members;
+
+    protected AggregatedTransition(List<Transition> members) {
+	super(members.get(0));
+	this.members = Collections.unmodifiableList(new ArrayList<Transition>(members));
+    }
+
+    /** The aggregated transitions, in the order of the solution. */
+    public List<Transition> getMembers() { return members; }
+
+    public int getCount() { return members.size(); }
+
+    @Override
+    public String getName() {
+	final StringBuilder sb = new StringBuilder();
+	for (Transition t:members) {
+	    if (sb.length() > 0) sb.append('+');
+	    sb.append(t.getName());
+	}
+	return sb.toString();
+    }
+
+    @Override
+    public String getGUIName() {
+	final StringBuilder sb = new StringBuilder();
+	for (Transition t:members) {
+	    if (sb.length() > 0) sb.append(", ");
+	    sb.append(t.getGUIName()).append(" (").append(t.getGUIEdgeDescription()).append(')');
+	}
+	return sb.toString();
+    }
+
+    @Override
+    public String getGUIEdgeDescription() {
+	final Set<String> labels = new LinkedHashSet<String>();
+	for (Transition t:members) labels.add(t.getGUIEdgeDescription());
+	final StringBuilder sb = new StringBuilder().append(members.size()).append(" x ");
+	int shown = 0;
+	for (String l:labels) {
+	    if (shown == MAX_SHOWN_LABELS) {
+		sb.append(", ...");
+		break;
+	    }
+	    if (shown++ > 0) sb.append(", ");
+	    sb.append(l);
+	}
+	return sb.toString();
+    }
+
+    public String toString() {
+	final StringBuilder sb = new StringBuilder();
+	for (Transition t:members) sb.append((sb.length() > 0) ? "; " : "").append(t);
+	return sb.toString();
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4compiler.ast.Module;
+import edu.mit.csail.sdg.alloy4compiler.translator.A4Solution;
+
+/**
+ * Walks the chain of solutions returned by A4Solution.next(), extracting an
+ * MDCSolution for each of them. Not thread-safe: a chain must only be
+ * walked by one thread at a time.
+ *
+ * Unless the system property "mdc.skipIsomorphic" is false, solutions that
+ * only differ from a previous one by the names of their atoms are skipped.
+ * Only the digests of the last "mdc.skipIsomorphic.max" solutions (100000
+ * by default, about 3 MB) are remembered: on longer enumerations, a
+ * solution isomorphic to an older one may be returned again.
+ */
+
+public class AlloySolutionEnumerator implements SolutionEnumerator {
+
+    private final Module alloyWorld;
+    private A4Solution pending;
+    private A4Solution current = null;
+    private int nextIndex = 0;
+
+    private static final int MAX_SEEN = Math.max(1, Integer.getInteger("mdc.skipIsomorphic.max", 100000));
+
+    private final SeenDigests seen = SKIP_ISOMORPHIC ? new SeenDigests(MAX_SEEN) : null;
+    private int skipped = 0;
+    private boolean xmlKept = false;
+
+    /** Starts an enumeration whose first solution is the given one. */
+    public AlloySolutionEnumerator(Module alloyWorld, A4Solution first) {
+	this.alloyWorld = alloyWorld;
+	this.pending = first;
+    }
+
+    public PreparedSolution next() throws Err {
+	while (true) {
+	    A4Solution sol;
+	    if (pending != null) {
+		sol = pending;
+		pending = null;
+	    } else if (current != null) {
+		Metrics.solvingStarted();
+		sol = current.next();
+		Metrics.solvingEnded();
+	    } else {
+		return null;
+	    }
+	    if (!sol.satisfiable()) {
+		current = null;
+		return null;
+	    }
+	    current = sol;
+	    final MDCSolution mdc;
+	    try (Metrics.Timer t = Metrics.time(Metrics.Phase.EXTRACTION)) {
+		mdc = new MDCSolution(alloyWorld, sol);
+	    }
+	    if (seen != null) {
+		final long[] digest = CanonicalForm.digest(mdc);
+		// Without certificate (too many symmetries) the solution is kept
+		if (digest != null && !seen.add(digest[0], digest[1])) {
+		    skipped++;
+		    Metrics.count("isomorphic solutions skipped", 1);
+		    continue;
+		}
+	    }
+	    Metrics.count("solutions", 1);
+	    final PreparedSolution prepared = new PreparedSolution(nextIndex++, sol, mdc, skipped);
+	    if (xmlKept) prepared.setAlloyXml(toXml(sol));
+	    return prepared;
+	}
+    }
+
+    /** The XML is written here because A4Solution is not safe to read while next() runs on another thread. */
+    @Override
+    public void setAlloyXmlKept(boolean kept) {
+	xmlKept = kept;
+    }
+
+    private static String toXml(A4Solution sol) throws Err {
+	final StringWriter xml = new StringWriter();
+	try (PrintWriter out = new PrintWriter(xml)) {
+	    sol.writeXML(out, null, null);
+	}
+	return xml.toString();
+    }
+
+    public int getSkippedCount() {
+	return skipped;
+    }
+
+    /** Nothing to release: the solution chain is left to the garbage collector. */
+    public void close() {}
+
+    /**
+     * Set of the last digests added, kept in arrays of primitives: the
+     * digests in a ring, in the order they were added, and an open
+     * addressing table of their positions in the ring. Once full, adding a
+     * digest forgets the oldest one.
+     */
+    static class SeenDigests {
+
+	private final long[] ring;
+	private final int[] table; // Position in the ring plus one, 0 for empty slots
+	private final int mask;
+	private int size = 0;
+	private int next = 0;
+
+	SeenDigests(int capacity) {
+	    ring = new long[2 * capacity];
+	    int slots = 2;
+	    while (slots < 2 * capacity) slots <<= 1;
+	    table = new int[slots];
+	    mask = slots - 1;
+	}
+
+	/** Adds the digest, returning whether it was not already there. */
+	boolean add(long high, long low) {
+	    int i = home(high, low);
+	    while (table[i] != 0) {
+		final int pos = table[i] - 1;
+		if (ring[2 * pos] == high && ring[2 * pos + 1] == low) return false;
+		i = (i + 1) & mask;
+	    }
+	    if (size == ring.length / 2) {
+		remove(next);
+		// The removal may have moved the free slots of the probe sequence
+		i = home(high, low);
+		while (table[i] != 0) i = (i + 1) & mask;
+	    } else {
+		size++;
+	    }
+	    ring[2 * next] = high;
+	    ring[2 * next + 1] = low;
+	    table[i] = next + 1;
+	    next = (next + 1) % (ring.length / 2);
+	    return true;
+	}
+
+	private int home(long high, long low) {
+	    final long h = high ^ low;
+	    return (int) (h ^ (h >>> 32)) & mask;
+	}
+
+	/** Removes the digest at the given position in the ring, shifting back the entries that follow it. */
+	private void remove(int pos) {
+	    int i = home(ring[2 * pos], ring[2 * pos + 1]);
+	    while (table[i] != pos + 1) i = (i + 1) & mask;
+	    int j = i;
+	    while (true) {
+		j = (j + 1) & mask;
+		if (table[j] == 0) break;
+		final int moved = table[j] - 1;
+		final int k = home(ring[2 * moved], ring[2 * moved + 1]);
+		// The entry at j may fill the hole at i if its home is not in (i, j]
+		if ((i <= j) ? (k <= i || k > j) : (k <= i && k > j)) {
+		    table[i] = table[j];
+		    i = j;
+		}
+	    }
+	    table[i] = 0;
+	}
+    }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+
+import com.google.common.base.Function;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.algorithms.layout.util.RandomLocationTransformer;
+import edu.uci.ics.jung.algorithms.util.IterativeContext;
+
+/**
+ * Force-directed layout for large graphs. Repulsion between vertices is
+ * approximated with a Barnes-Hut quadtree, making an iteration
+ * O(n log n) instead of O(n²), and is computed in parallel on a fork-join
+ * pool. The layout stops after a number of iterations or a time budget,
+ * whichever comes first.
+ *
+ * Like WarmStartLayout, it starts from the positions of a LayoutCache and
+ * only relaxes the vertices it does not know.
+ */
+
+class BarnesHutLayout extends AbstractLayout<State,Transition> implements IterativeContext, WarmStartable {
+
+    private static final int FULL_ITERATIONS = Integer.getInteger("mdc.layout.iterations", 300);
+    private static final int WARM_ITERATIONS = Integer.getInteger("mdc.layout.warmIterations", 50);
+    private static final long BUDGET_MS = Long.getLong("mdc.layout.budgetMs", 1000);
+
+    private static final double THETA = 0.8;    // Opening criterion: node size / distance
+    private static final int MAX_DEPTH = 40;     // Coincident vertices are merged below this depth
+    private static final int CHUNK = 64;         // Vertices per fork-join task
+
+    private int maxIterations = FULL_ITERATIONS;
+    private int iteration = 0;
+    private long deadline = Long.MAX_VALUE;
+    private double temperature;
+    private boolean warm = false;
+    // All the vertices were placed from the cache, there is nothing to relax
+    private boolean placed = false;
+
+    // Working arrays, rebuilt at each step from the current graph
+    private State[] vertices = new State[0];
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private double[] fxs = new double[0];
+    private double[] fys = new double[0];
+    private double k2;
+
+    BarnesHutLayout(Graph<State,Transition> graph, Dimension dim, final LayoutCache cache, final String graphName) {
+	super(graph, dim);
+	final Function<State,Point2D> random = new RandomLocationTransformer<State>(dim);
+	setInitializer(new Function<State,Point2D>() {
+		public Point2D apply(State s) {
+		    final Point2D p = (cache == null) ? null : cache.get(graphName, s.getName());
+		    return (p != null) ? p : random.apply(s);
+		}
+	    });
+	int seeded = 0;
+	for (State s:graph.getVertices()) {
+	    if (cache != null && cache.get(graphName, s.getName()) != null) {
+		lock(s, true);
+		seeded++;
+	    }
+	}
+	if (seeded == graph.getVertexCount()) {
+	    unlockAll();
+	    placed = true;
+	} else if (seeded > 0) {
+	    warm = true;
+	    maxIterations = WARM_ITERATIONS;
+	}
+    }
+
+    public void initialize() {
+	iteration = 0;
+	deadline = System.currentTimeMillis() + BUDGET_MS;
+	final Dimension d = getSize();
+	temperature = (d == null) ? 10 : Math.max(d.getWidth(), d.getHeight()) / 10;
+    }
+
+    /** Computes a fresh layout of all the vertices. */
+    public void reset() {
+	unlockAll();
+	placed = false;
+	maxIterations = FULL_ITERATIONS;
+	initialize();
+    }
+
+    public void warmStart() {
+	boolean all = true;
+	for (State s:getGraph().getVertices()) {
+	    final boolean located = locations.asMap().containsKey(s);
+	    lock(s, located);
+	    all &= located;
+	}
+	if (all) {
+	    unlockAll();
+	    placed = true;
+	} else {
+	    placed = false;
+	    warm = true;
+	    maxIterations = WARM_ITERATIONS;
+	}
+    }
+
+    private void unlockAll() {
+	for (State s:getGraph().getVertices()) lock(s, false);
+	warm = false;
+    }
+
+    public boolean done() {
+	return placed || iteration >= maxIterations || System.currentTimeMillis() > deadline;
+    }
+
+    public synchronized void step() {
+	final long start = System.nanoTime();
+	final Graph<State,Transition> graph = getGraph();
+	final int n;
+	try {
+	    n = snapshot(graph);
+	} catch (ConcurrentModificationException e) {
+	    // The graph is being patched, the next step will see it
+	    return;
+	}
+	if (n > 0) {
+	    final Dimension d = getSize();
+	    k2 = (d.getWidth() * d.getHeight()) / n;
+	    final Node root = buildTree(n);
+	    final RepulsionTask task = new RepulsionTask(root, 0, n);
+	    if (n <= CHUNK) task.compute(); else ForkJoinPool.commonPool().invoke(task);
+	    addAttraction(graph, n);
+	    move(n, d);
+	}
+	iteration += 1;
+	temperature = temperature * (1.0 - 1.0 / Math.max(2, maxIterations - iteration + 1));
+	if (warm && done()) unlockAll();
+	Metrics.record(Metrics.Phase.LAYOUT, System.nanoTime() - start);
+    }
+
+    /** Copies the current positions into the working arrays and returns the number of vertices. */
+    private int snapshot(Graph<State,Transition> graph) {
+	final int n = graph.getVertexCount();
+	if (vertices.length < n) {
+	    vertices = new State[n];
+	    xs = new double[n];
+	    ys = new double[n];
+	    fxs = new double[n];
+	    fys = new double[n];
+	}
+	int i = 0;
+	for (State v:graph.getVertices()) {
+	    if (i == n) break;
+	    final Point2D p = apply(v);
+	    vertices[i] = v;
+	    xs[i] = p.getX();
+	    ys[i] = p.getY();
+	    fxs[i] = 0;
+	    fys[i] = 0;
+	    i++;
+	}
+	return i;
+    }
+
+    private void addAttraction(Graph<State,Transition> graph, int n) {
+	final Map<State,Integer> index = new HashMap<State,Integer>(2 * n);
+	for (int i = 0; i < n; i++) index.put(vertices[i], i);
+	final double k = Math.sqrt(k2);
+	for (Transition t:graph.getEdges()) {
+	    final Integer a = index.get(graph.getSource(t));
+	    final Integer b = index.get(graph.getDest(t));
+	    if (a == null || b == null || a.intValue() == b.intValue()) continue;
+	    final double dx = xs[a] - xs[b];
+	    final double dy = ys[a] - ys[b];
+	    final double d = Math.max(Math.sqrt(dx * dx + dy * dy), 0.01);
+	    final double f = d / k; // (d² / k) / d
+	    fxs[a] -= dx * f;
+	    fys[a] -= dy * f;
+	    fxs[b] += dx * f;
+	    fys[b] += dy * f;
+	}
+    }
+
+    private void move(int n, Dimension d) {
+	for (int i = 0; i < n; i++) {
+	    if (isLocked(vertices[i])) continue;
+	    final double f = Math.sqrt(fxs[i] * fxs[i] + fys[i] * fys[i]);
+	    if (f == 0) continue;
+	    final double disp = Math.min(f, temperature);
+	    final double x = bounce(xs[i] + fxs[i] / f * disp, d.getWidth());
+	    final double y = bounce(ys[i] + fys[i] / f * disp, d.getHeight());
+	    setLocation(vertices[i], x, y);
+	}
+    }
+
+    /** Keeps a coordinate inside the borders, with some jitter so that vertices do not pile up there. */
+    private static double bounce(double v, double max) {
+	final double border = Math.min(25, max / 20);
+	if (v < border) return border + Math.random() * border * 2;
+	if (v > max - border) return max - border - Math.random() * border * 2;
+	return v;
+    }
+
+    // QUADTREE
+
+    private static final class Node {
+	final double x0, y0, size;
+	int count = 0;        // Number of vertices below this node
+	double sx = 0, sy = 0; // Sum of their positions
+	int body = -1;        // The vertex of a leaf holding exactly one
+	Node[] children = null;
+
+	Node(double x0, double y0, double size) {
+	    this.x0 = x0;
+	    this.y0 = y0;
+	    this.size = size;
+	}
+    }
+
+    private Node buildTree(int n) {
+	double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+	for (int i = 0; i < n; i++) {
+	    minX = Math.min(minX, xs[i]);
+	    minY = Math.min(minY, ys[i]);
+	    maxX = Math.max(maxX, xs[i]);
+	    maxY = Math.max(maxY, ys[i]);
+	}
+	final Node root = new Node(minX, minY, Math.max(Math.max(maxX - minX, maxY - minY), 1) * 1.001);
+	for (int i = 0; i < n; i++) insert(root, i);
+	return root;
+    }
+
+    private void insert(Node node, int i) {
+	for (int depth = 0; ; depth++) {
+	    if (node.children == null) {
+		if (node.count == 0 || depth >= MAX_DEPTH) {
+		    node.body = (node.count == 0) ? i : -1;
+		    node.count += 1;
+		    node.sx += xs[i];
+		    node.sy += ys[i];
+		    return;
+		}
+		// Split the leaf, moving its vertex down
+		final int old = node.body;
+		node.body = -1;
+		node.children = new Node[4];
+		final Node c = child(node, old);
+		c.body = old;
+		c.count = 1;
+		c.sx = xs[old];
+		c.sy = ys[old];
+	    }
+	    node.count += 1;
+	    node.sx += xs[i];
+	    node.sy += ys[i];
+	    node = child(node, i);
+	}
+    }
+
+    private Node child(Node node, int i) {
+	final double half = node.size / 2;
+	final int q = ((xs[i] >= node.x0 + half) ? 1 : 0) + ((ys[i] >= node.y0 + half) ? 2 : 0);
+	if (node.children[q] == null) {
+	    node.children[q] = new Node(node.x0 + ((q & 1) != 0 ? half : 0), node.y0 + ((q & 2) != 0 ? half : 0), half);
+	}
+	return node.children[q];
+    }
+
+    /** Adds to the force of the vertex the repulsion (k² / d per vertex) of the vertices below the node. */
+    private void repulse(Node node, int i) {
+	if (node == null || node.count == 0 || node.body == i) return;
+	final double cx = node.sx / node.count;
+	final double cy = node.sy / node.count;
+	double dx = xs[i] - cx;
+	double dy = ys[i] - cy;
+	double d2 = dx * dx + dy * dy;
+	if (node.children == null || node.size * node.size < THETA * THETA * d2) {
+	    if (d2 < 1e-4) {
+		// Coincident vertices: push apart in a direction depending on the vertex
+		dx = Math.cos(i);
+		dy = Math.sin(i);
+		d2 = 1e-2;
+	    }
+	    final double f = node.count * k2 / d2; // (k² / d) / d
+	    fxs[i] += dx * f;
+	    fys[i] += dy * f;
+	} else {
+	    for (Node c:node.children) repulse(c, i);
+	}
+    }
+
+    private final class RepulsionTask extends RecursiveAction {
+	private final Node root;
+	private final int from, to;
+
+	RepulsionTask(Node root, int from, int to) {
+	    this.root = root;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	protected void compute() {
+	    if (to - from <= CHUNK) {
+		for (int i = from; i < to; i++) repulse(root, i);
+	    } else {
+		final int mid = (from + to) >>> 1;
+		invokeAll(new RepulsionTask(root, from, mid), new RepulsionTask(root, mid, to));
+	    }
+	}
+    }
+}
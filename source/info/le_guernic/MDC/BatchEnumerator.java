@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.FileSystems;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.ErrorWarning;
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.parser.CompUtil;
+import edu.mit.csail.sdg.alloy4compiler.translator.*;
+
+/**
+ * Headless enumeration of the solutions of a command. Solutions are
+ * streamed to a sink as soon as they are extracted and are not kept, so
+ * the memory footprint does not grow with the number of solutions.
+ */
+
+public class BatchEnumerator {
+
+    private static final long REPORT_PERIOD_MS = 5000;
+
+    private final Module alloyWorld;
+    private final A4Options options;
+    private final A4Reporter reporter;
+    private SolverBackend backend;
+
+    public BatchEnumerator(Module alloyWorld, A4Options options, A4Reporter reporter) {
+	this.alloyWorld = alloyWorld;
+	this.options = options;
+	this.reporter = reporter;
+	this.backend = new AlloyBackend(alloyWorld, options);
+    }
+
+    /** Sets the backend solving the commands, the Alloy one by default. */
+    public void setBackend(SolverBackend backend) {
+	this.backend = backend;
+    }
+
+    /** Returns the command whose label or position (starting at 0) is given, or null. */
+    public static Command findCommand(Module alloyWorld, String labelOrIndex) {
+	final List<Command> commands = alloyWorld.getAllCommands();
+	for (Command cmd:commands) {
+	    if (cmd.label.equals(labelOrIndex)) return cmd;
+	}
+	try {
+	    int idx = Integer.parseInt(labelOrIndex);
+	    if (idx >= 0 && idx < commands.size()) return commands.get(idx);
+	} catch (NumberFormatException e) {
+	    // not an index
+	}
+	return null;
+    }
+
+    /**
+     * Writes up to maxSolutions solutions of the command to the sinks (all of
+     * them if maxSolutions is negative) and returns how many were written.
+     */
+    public int enumerate(Command cmd, int maxSolutions, SolutionSink... sinks) throws Err, IOException {
+	final long start = System.nanoTime();
+	long lastReport = start;
+	System.err.println("=========== Executing command '" + cmd + "' with the " + backend.getName() + " backend =============");
+	final Metrics.CommandStats stats = Metrics.beginCommand(cmd.label + " (" + backend.getName() + ")");
+	final SolutionEnumerator enumerator;
+	try {
+	    enumerator = backend.solve(cmd, reporter);
+	} catch (Err | RuntimeException e) {
+	    Metrics.endCommand(stats);
+	    throw e;
+	}
+	for (SolutionSink sink:sinks) {
+	    if (sink instanceof ExportPipeline && ((ExportPipeline) sink).needsAlloyXml()) enumerator.setAlloyXmlKept(true);
+	}
+	int count = 0;
+	try {
+	    while (maxSolutions < 0 || count < maxSolutions) {
+		PreparedSolution sol = enumerator.next();
+		if (sol == null) break;
+		if (count == 0) System.err.println("First solution after " + ((System.nanoTime() - start) / 1000000) + " ms");
+		for (SolutionSink sink:sinks) {
+		    sink.write(sol);
+		}
+		count++;
+		final long now = System.nanoTime();
+		if ((now - lastReport) / 1000000 >= REPORT_PERIOD_MS) {
+		    reportThroughput(count, enumerator.getSkippedCount(), now - start);
+		    lastReport = now;
+		}
+	    }
+	} finally {
+	    enumerator.close();
+	    reportThroughput(count, enumerator.getSkippedCount(), System.nanoTime() - start);
+	    Metrics.endCommand(stats);
+	}
+	return count;
+    }
+
+    /**
+     * Enumerates up to maxSolutions solutions of the command with each of the
+     * backends, translation included, and reports their throughputs side by
+     * side. The backends may not count the same solutions: the explicit-state
+     * one leaves out those padded with unrelated atoms.
+     */
+    public void compare(Command cmd, int maxSolutions, SolverBackend... backends) throws Err, IOException {
+	final SolverBackend previous = backend;
+	final StringBuilder report = new StringBuilder("=========== Backends on '" + cmd + "' =============\n");
+	for (SolverBackend b:backends) {
+	    setBackend(b);
+	    final long start = System.nanoTime();
+	    final int count = enumerate(cmd, maxSolutions);
+	    final double seconds = (System.nanoTime() - start) / 1e9;
+	    report.append(String.format("%-10s %8d solutions in %7.1f s (%.1f solutions/s)%n",
+					b.getName(), count, seconds, (seconds > 0) ? count / seconds : 0.0));
+	}
+	setBackend(previous);
+	System.err.print(report);
+    }
+
+    private static void reportThroughput(int count, int skipped, long elapsedNs) {
+	final double seconds = elapsedNs / 1e9;
+	System.err.format("%d solutions in %.1f s (%.1f solutions/s), %d isomorphic solutions skipped%n",
+			  count, seconds, (seconds > 0) ? count / seconds : 0.0, skipped);
+    }
+
+    /** Opens a solution store if the file name ends with ".mdcs", a text file otherwise ("-" for the standard output). */
+    public static SolutionSink openSink(String outFile) throws IOException {
+	if (outFile.endsWith(SolutionStoreWriter.SUFFIX)) {
+	    return new SolutionStoreWriter(outFile);
+	} else {
+	    return new TextSolutionSink(outFile);
+	}
+    }
+
+    private static void usage() {
+	System.out.println("Usage: Visualizer -batch alsFile [-command labelOrIndex] [-n maxSolutions] [-o outFile|store.mdcs]");
+	System.out.println("                 [-export xml,dot,json,png,svg] [-exportDir dir] [-backend alloy|explicit] [-compare]");
+    }
+
+    public static void main(String[] args) throws Err {
+	// Graphs are drawn to images without any display
+	if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+	String filename = null;
+	String cmdName = "0";
+	int maxSolutions = -1;
+	String outFile = "-";
+	String exportFormats = null;
+	String exportDir = "exports";
+	String backendName = System.getProperty("mdc.backend", "alloy");
+	boolean compare = false;
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals("-command") && i + 1 < args.length) {
+		cmdName = args[++i];
+	    } else if (args[i].equals("-n") && i + 1 < args.length) {
+		try {
+		    maxSolutions = Integer.parseInt(args[++i]);
+		} catch (NumberFormatException e) {
+		    usage();
+		    return;
+		}
+	    } else if (args[i].equals("-o") && i + 1 < args.length) {
+		outFile = args[++i];
+	    } else if (args[i].equals("-export") && i + 1 < args.length) {
+		exportFormats = args[++i];
+	    } else if (args[i].equals("-exportDir") && i + 1 < args.length) {
+		exportDir = args[++i];
+	    } else if (args[i].equals("-backend") && i + 1 < args.length) {
+		backendName = args[++i];
+	    } else if (args[i].equals("-compare")) {
+		compare = true;
+	    } else if (filename == null && !args[i].startsWith("-")) {
+		filename = args[i];
+	    } else {
+		usage();
+		return;
+	    }
+	}
+	if (filename == null) {
+	    usage();
+	    return;
+	}
+
+	A4Options options = new A4Options();
+	options.solver = A4Options.SatSolver.SAT4J;
+	A4Reporter reporter = new A4Reporter() {
+	    @Override public void warning(ErrorWarning msg) {
+		System.err.print("Relevance Warning:\n"+(msg.toString().trim())+"\n\n");
+		System.err.flush();
+	    }
+	    @Override public void translate(String solver, int bitwidth, int maxseq, int skolemDepth, int symmetry) {
+		Metrics.translationStarted();
+	    }
+	    @Override public void solve(int primaryVars, int totalVars, int clauses) {
+		Metrics.translated(primaryVars, totalVars, clauses);
+	    }
+	    @Override public void resultSAT(Object command, long solvingTime, Object solution) {
+		Metrics.solved(solvingTime);
+	    }
+	    @Override public void resultUNSAT(Object command, long solvingTime, Object solution) {
+		Metrics.solved(solvingTime);
+	    }
+	};
+
+	System.err.println("=========== Parsing+Typechecking '"+filename+"' =============");
+	Module alloyWorld;
+	try (Metrics.Timer t = Metrics.time(Metrics.Phase.PARSE)) {
+	    alloyWorld = CompUtil.parseEverything_fromFile(reporter, null, filename);
+	}
+	Command cmd = findCommand(alloyWorld, cmdName);
+	if (cmd == null) {
+	    System.out.println("No command '" + cmdName + "' in " + filename);
+	    return;
+	}
+	BatchEnumerator batch = new BatchEnumerator(alloyWorld, options, reporter);
+	if (compare) {
+	    try {
+		batch.compare(cmd, maxSolutions, SolverBackend.create("alloy", alloyWorld, options),
+			      SolverBackend.create("explicit", alloyWorld, options));
+	    } catch (IOException e) {
+		Log.error("Comparison of the backends failed: " + e);
+	    }
+	    return;
+	}
+	batch.setBackend(SolverBackend.create(backendName, alloyWorld, options));
+	try (SolutionSink sink = openSink(outFile)) {
+	    if (exportFormats == null) {
+		batch.enumerate(cmd, maxSolutions, sink);
+	    } else {
+		try (ExportPipeline exporter = ExportPipeline.create(exportFormats, FileSystems.getDefault().getPath(exportDir), cmd.label, 64)) {
+		    batch.enumerate(cmd, maxSolutions, sink, exporter);
+		}
+	    }
+	} catch (IOException e) {
+	    Log.error("Enumeration of the solutions failed: " + e);
+	}
+    }
+}
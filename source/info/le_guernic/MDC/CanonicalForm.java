@@ -0,0 +1,378 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Certificate of an MDCSolution up to the renaming of its atoms: two
+ * solutions have the same certificate if and only if one is the other with
+ * its states, labels, transitions, executions and traces renamed.
+ *
+ * The solution is turned into a graph whose vertices are its atoms, colored
+ * by kind, and whose edges are colored by relation (and position, for the
+ * sequences). A canonical labelling of this graph is searched for with color
+ * refinement and individualization, as in nauty-like tools, and the
+ * certificate is a hash of the graph relabelled with it.
+ */
+
+public class CanonicalForm {
+
+    private static final int MAX_LEAVES = Integer.getInteger("mdc.canonical.maxLeaves", 5000);
+
+    // Edge colors: relation in the high bits, position in the low ones
+    private static final long PRE = 1L << 32;
+    private static final long POST = 2L << 32;
+    private static final long TRIGGER = 3L << 32;
+    private static final long EFFECT = 4L << 32;
+    private static final long INITIAL = 5L << 32;
+    private static final long STEP = 6L << 32;
+    private static final long CONTENT = 7L << 32;
+    private static final long MEMBER = 8L << 32;
+    private static final long COMPONENT = 9L << 32;
+
+    // Graph of the solution
+    private final List<String> vertexKinds = new ArrayList<String>();
+    private final List<List<long[]>> outEdges = new ArrayList<List<long[]>>();
+    private final List<List<long[]>> inEdges = new ArrayList<List<long[]>>();
+    private int edgeCount = 0;
+
+    // Search state
+    private long[] best = null;
+    private int[] bestColors = null;
+    private int leaves = 0;
+    private int[] orbits = null; // Union-find of the vertices related by the automorphisms found
+
+    private CanonicalForm() {}
+
+    /**
+     * Returns the certificate of the solution, or null if the search for a
+     * canonical labelling gave up on a too symmetric solution.
+     */
+    public static String certificate(MDCSolution mdc) {
+	final byte[] hash = hash(mdc);
+	if (hash == null) return null;
+	final StringBuilder sb = new StringBuilder();
+	for (byte b:hash) sb.append(String.format("%02x", b & 0xFF));
+	return sb.toString();
+    }
+
+    /**
+     * The first 128 bits of the certificate, as two longs, or null when
+     * certificate returns null.
+     */
+    public static long[] digest(MDCSolution mdc) {
+	final byte[] hash = hash(mdc);
+	if (hash == null) return null;
+	final long[] digest = new long[2];
+	for (int i = 0; i < 16; i++) digest[i / 8] = (digest[i / 8] << 8) | (hash[i] & 0xFF);
+	return digest;
+    }
+
+    private static byte[] hash(MDCSolution mdc) {
+	final CanonicalForm cf = new CanonicalForm();
+	cf.build(mdc);
+	final long[] cert = cf.canonicalCertificate();
+	return (cert == null) ? null : hash(cert, cf.vertexKinds);
+    }
+
+    // GRAPH
+
+    private int vertex(String kind) {
+	vertexKinds.add(kind);
+	outEdges.add(new ArrayList<long[]>());
+	inEdges.add(new ArrayList<long[]>());
+	return vertexKinds.size() - 1;
+    }
+
+    private void edge(int from, long color, int to) {
+	outEdges.get(from).add(new long[] { color, to });
+	inEdges.get(to).add(new long[] { color, from });
+	edgeCount++;
+    }
+
+    private void build(MDCSolution mdc) {
+	final int states = 0;
+	for (int s = 0; s < mdc.stateCount(); s++) vertex("State");
+	final int labels = vertexKinds.size();
+	for (int l = 0; l < mdc.labelCount(); l++) vertex(mdc.isEmptyLabel(l) ? "EmptyLabel" : mdc.isNoLabel(l) ? "NoLabel" : "Label");
+	final int transitions = vertexKinds.size();
+	for (int t = 0; t < mdc.transitionCount(); t++) vertex("Transition");
+	final int executions = vertexKinds.size();
+	for (int e = 0; e < mdc.executionCount(); e++) vertex("Execution");
+	final int traces = vertexKinds.size();
+	for (int r = 0; r < mdc.traceCount(); r++) vertex("Trace");
+
+	for (int t = 0; t < mdc.transitionCount(); t++) {
+	    if (mdc.preState(t) != MDCSolution.NONE) edge(transitions + t, PRE, states + mdc.preState(t));
+	    if (mdc.postState(t) != MDCSolution.NONE) edge(transitions + t, POST, states + mdc.postState(t));
+	    if (mdc.trigger(t) != MDCSolution.NONE) edge(transitions + t, TRIGGER, labels + mdc.trigger(t));
+	    if (mdc.effect(t) != MDCSolution.NONE) edge(transitions + t, EFFECT, labels + mdc.effect(t));
+	}
+	for (int e = 0; e < mdc.executionCount(); e++) {
+	    if (mdc.initialState(e) != MDCSolution.NONE) edge(executions + e, INITIAL, states + mdc.initialState(e));
+	    for (int i = 0; i < mdc.executionLength(e); i++) {
+		edge(executions + e, STEP | i, transitions + mdc.executionStep(e, i));
+	    }
+	}
+	for (int r = 0; r < mdc.traceCount(); r++) {
+	    for (int i = 0; i < mdc.traceLength(r); i++) {
+		edge(traces + r, CONTENT | i, labels + mdc.traceLabel(r, i));
+	    }
+	}
+
+	// Skolem variables keep their names; the atoms they refer to are renamed like the others
+	final Map<String,Integer> others = new HashMap<String,Integer>();
+	for (Map.Entry<String,Set<String>> v:mdc.getVariablesMapping().entrySet()) {
+	    final int var = vertex("Variable " + v.getKey());
+	    for (String tuple:v.getValue()) {
+		final String[] atoms = tuple.split("->");
+		if (atoms.length == 1) {
+		    edge(var, MEMBER, atomVertex(mdc, atoms[0], others, states, labels, transitions, executions, traces));
+		} else {
+		    final int t = vertex("Tuple " + v.getKey());
+		    edge(var, MEMBER, t);
+		    for (int i = 0; i < atoms.length; i++) {
+			edge(t, COMPONENT | i, atomVertex(mdc, atoms[i], others, states, labels, transitions, executions, traces));
+		    }
+		}
+	    }
+	}
+    }
+
+    private int atomVertex(MDCSolution mdc, String atom, Map<String,Integer> others,
+			   int states, int labels, int transitions, int executions, int traces) {
+	int id;
+	if ((id = mdc.stateId(atom)) != MDCSolution.NONE) return states + id;
+	if ((id = mdc.labelId(atom)) != MDCSolution.NONE) return labels + id;
+	if ((id = mdc.transitionId(atom)) != MDCSolution.NONE) return transitions + id;
+	if ((id = mdc.executionId(atom)) != MDCSolution.NONE) return executions + id;
+	if ((id = mdc.traceId(atom)) != MDCSolution.NONE) return traces + id;
+	// Atoms of other signatures (e.g. integers) are kept as they are
+	Integer v = others.get(atom);
+	if (v == null) {
+	    v = vertex("Atom " + atom);
+	    others.put(atom, v);
+	}
+	return v;
+    }
+
+    // SEARCH
+
+    private long[] canonicalCertificate() {
+	final int n = vertexKinds.size();
+	// Initial colors: ranks of the kinds
+	final TreeSet<String> kinds = new TreeSet<String>(vertexKinds);
+	final Map<String,Integer> kindRank = new HashMap<String,Integer>();
+	for (String k:kinds) kindRank.put(k, kindRank.size());
+	final int[] colors = new int[n];
+	for (int v = 0; v < n; v++) colors[v] = kindRank.get(vertexKinds.get(v));
+	orbits = new int[n];
+	for (int v = 0; v < n; v++) orbits[v] = v;
+	search(colors, 0);
+	return (leaves > MAX_LEAVES) ? null : best;
+    }
+
+    private void search(int[] colors, int depth) {
+	if (leaves > MAX_LEAVES) return;
+	final int[] refined = refine(colors);
+	final int n = refined.length;
+	// Target cell: the first color shared by several vertices
+	final int[] cellSizes = new int[n];
+	for (int v = 0; v < n; v++) cellSizes[refined[v]]++;
+	int target = -1;
+	for (int c = 0; c < n && target < 0; c++) {
+	    if (cellSizes[c] > 1) target = c;
+	}
+	if (target < 0) {
+	    leaves++;
+	    final long[] cert = relabelledEdges(refined);
+	    final int c = (best == null) ? -1 : compare(cert, best);
+	    if (c < 0) {
+		best = cert;
+		bestColors = refined;
+	    } else if (c == 0) {
+		// Both labellings give the same graph: they differ by an automorphism
+		final int[] vertexOfColor = new int[n];
+		for (int u = 0; u < n; u++) vertexOfColor[bestColors[u]] = u;
+		for (int v = 0; v < n; v++) union(vertexOfColor[refined[v]], v);
+	    }
+	    return;
+	}
+	// Vertices with the same neighbours can be swapped, only one of them is tried.
+	// At the root, neither are vertices in the orbit of a tried one.
+	final Set<String> tried = new HashSet<String>();
+	final List<Integer> triedRoots = new ArrayList<Integer>();
+	for (int v = 0; v < n; v++) {
+	    if (refined[v] != target) continue;
+	    if (!tried.add(neighbourhood(v))) continue;
+	    if (depth == 0) {
+		boolean inOrbit = false;
+		for (int u:triedRoots) inOrbit |= (find(u) == find(v));
+		if (inOrbit) continue;
+		triedRoots.add(v);
+	    }
+	    final int[] individualized = new int[n];
+	    for (int u = 0; u < n; u++) individualized[u] = 2 * refined[u] + 1;
+	    individualized[v] = 2 * refined[v];
+	    search(individualized, depth + 1);
+	}
+    }
+
+    private int find(int v) {
+	while (orbits[v] != v) {
+	    orbits[v] = orbits[orbits[v]];
+	    v = orbits[v];
+	}
+	return v;
+    }
+
+    private void union(int u, int v) {
+	orbits[find(u)] = find(v);
+    }
+
+    private String neighbourhood(int v) {
+	final List<String> out = new ArrayList<String>();
+	for (long[] e:outEdges.get(v)) out.add(e[0] + ">" + e[1]);
+	final List<String> in = new ArrayList<String>();
+	for (long[] e:inEdges.get(v)) in.add(e[0] + "<" + e[1]);
+	Collections.sort(out);
+	Collections.sort(in);
+	return out + "|" + in;
+    }
+
+    /**
+     * Color refinement: splits the colors according to the colors of the
+     * neighbours until it is stable. The new colors are ranks of isomorphism
+     * invariant signatures, and refine the order of the given ones.
+     */
+    private int[] refine(int[] colors) {
+	final int n = colors.length;
+	int[] current = colors;
+	int classes = countClasses(current);
+	while (true) {
+	    final long[][] signatures = new long[n][];
+	    for (int v = 0; v < n; v++) signatures[v] = signature(v, current);
+	    final Integer[] order = new Integer[n];
+	    for (int v = 0; v < n; v++) order[v] = v;
+	    Arrays.sort(order, (a, b) -> compare(signatures[a], signatures[b]));
+	    final int[] next = new int[n];
+	    int rank = 0;
+	    for (int i = 0; i < n; i++) {
+		if (i > 0 && compare(signatures[order[i - 1]], signatures[order[i]]) != 0) rank = i;
+		next[order[i]] = rank;
+	    }
+	    final int nextClasses = countClasses(next);
+	    current = next;
+	    if (nextClasses == classes) return current;
+	    classes = nextClasses;
+	}
+    }
+
+    private static int countClasses(int[] colors) {
+	final BitSet seen = new BitSet();
+	for (int c:colors) seen.set(c);
+	return seen.cardinality();
+    }
+
+    private long[] signature(int v, int[] colors) {
+	final List<long[]> out = outEdges.get(v);
+	final List<long[]> in = inEdges.get(v);
+	final long[] sig = new long[3 + 2 * (out.size() + in.size())];
+	sig[0] = colors[v];
+	sig[1] = out.size();
+	sig[2] = in.size();
+	final long[][] pairs = new long[out.size() + in.size()][];
+	int i = 0;
+	for (long[] e:out) pairs[i++] = new long[] { e[0], colors[(int) e[1]] };
+	for (long[] e:in) pairs[i++] = new long[] { -1 - e[0], colors[(int) e[1]] };
+	Arrays.sort(pairs, 0, out.size(), CanonicalForm::compare);
+	Arrays.sort(pairs, out.size(), pairs.length, CanonicalForm::compare);
+	i = 3;
+	for (long[] p:pairs) {
+	    sig[i++] = p[0];
+	    sig[i++] = p[1];
+	}
+	return sig;
+    }
+
+    /** The edges of the graph with the vertices replaced by their (discrete) colors, sorted. */
+    private long[] relabelledEdges(int[] colors) {
+	final long[][] edges = new long[edgeCount][];
+	int i = 0;
+	for (int v = 0; v < outEdges.size(); v++) {
+	    for (long[] e:outEdges.get(v)) edges[i++] = new long[] { colors[v], e[0], colors[(int) e[1]] };
+	}
+	Arrays.sort(edges, CanonicalForm::compare);
+	final long[] cert = new long[3 * edgeCount + colors.length];
+	i = 0;
+	for (long[] e:edges) {
+	    cert[i++] = e[0];
+	    cert[i++] = e[1];
+	    cert[i++] = e[2];
+	}
+	// Kind of each vertex, in label order
+	final int[] kindOf = new int[colors.length];
+	final List<String> kinds = new ArrayList<String>(new TreeSet<String>(vertexKinds));
+	for (int v = 0; v < colors.length; v++) kindOf[colors[v]] = Collections.binarySearch(kinds, vertexKinds.get(v));
+	for (int k:kindOf) cert[i++] = k;
+	return cert;
+    }
+
+    private static int compare(long[] a, long[] b) {
+	for (int i = 0; i < Math.min(a.length, b.length); i++) {
+	    if (a[i] != b[i]) return Long.compare(a[i], b[i]);
+	}
+	return Integer.compare(a.length, b.length);
+    }
+
+    private static byte[] hash(long[] cert, List<String> vertexKinds) {
+	try {
+	    final MessageDigest md = MessageDigest.getInstance("SHA-256");
+	    for (String k:new TreeSet<String>(vertexKinds)) {
+		md.update(k.getBytes(StandardCharsets.UTF_8));
+		md.update((byte) 0);
+	    }
+	    final byte[] buf = new byte[8];
+	    for (long l:cert) {
+		for (int i = 0; i < 8; i++) buf[i] = (byte) (l >>> (8 * i));
+		md.update(buf);
+	    }
+	    return md.digest();
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException("SHA-256 is not available", e);
+	}
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Command line client of the SolverDaemon. It turns its arguments into a
+ * request, prints the response lines and exits with status 1 if the
+ * request failed. With "-" as operation, request lines are read from the
+ * standard input instead.
+ */
+
+public class DaemonClient implements Closeable {
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    public DaemonClient(int port) throws IOException {
+	socket = new Socket(InetAddress.getLoopbackAddress(), port);
+	in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends a request line and passes the lines of the response to the
+     * handler. Returns the final response, which has an "ok" member.
+     */
+    public Map<String,Object> request(String json, PrintStream handler) throws IOException {
+	out.write(json);
+	out.write('\n');
+	out.flush();
+	String line;
+	while ((line = in.readLine()) != null) {
+	    handler.println(line);
+	    final Map<String,Object> response = Json.parseObject(line);
+	    if (response.containsKey("ok")) return response;
+	}
+	throw new EOFException("connection closed by the daemon");
+    }
+
+    public void close() throws IOException {
+	socket.close();
+    }
+
+    // COMMAND LINE
+
+    private static void usage() {
+	System.out.println("Usage: Visualizer -client [-port N] ping|shutdown|-");
+	System.out.println("       Visualizer -client [-port N] load alsFile");
+	System.out.println("       Visualizer -client [-port N] run alsFile [labelOrIndex] [-backend alloy|explicit]");
+	System.out.println("       Visualizer -client [-port N] next|close session");
+	System.out.println("       Visualizer -client [-port N] enumerate alsFile [labelOrIndex] [-n maxSolutions] [-backend alloy|explicit]");
+	System.out.println("       Visualizer -client [-port N] export alsFile [labelOrIndex] [-n maxSolutions] [-backend alloy|explicit]");
+	System.out.println("                                  [-export xml,dot,json,png,svg] [-exportDir dir]");
+    }
+
+    /** Builds the request described by the arguments, or returns null if they are invalid. */
+    static String buildRequest(String op, List<String> args) {
+	final StringBuilder sb = new StringBuilder("{\"op\":");
+	Json.quote(sb, op);
+	final List<String> positional = new ArrayList<String>();
+	for (int i = 0; i < args.size(); i++) {
+	    final String a = args.get(i);
+	    if (a.equals("-n") && i + 1 < args.size()) {
+		sb.append(",\"max\":").append(Integer.parseInt(args.get(++i)));
+	    } else if (a.equals("-backend") && i + 1 < args.size()) {
+		Json.quote(sb.append(",\"backend\":"), args.get(++i));
+	    } else if (a.equals("-export") && i + 1 < args.size()) {
+		Json.quote(sb.append(",\"formats\":"), args.get(++i));
+	    } else if (a.equals("-exportDir") && i + 1 < args.size()) {
+		// Paths are resolved by the daemon, which may run elsewhere
+		Json.quote(sb.append(",\"dir\":"), new File(args.get(++i)).getAbsolutePath());
+	    } else if (!a.startsWith("-")) {
+		positional.add(a);
+	    } else {
+		return null;
+	    }
+	}
+	switch (op) {
+	case "ping" :
+	case "shutdown" :
+	    if (!positional.isEmpty()) return null;
+	    break;
+	case "next" :
+	case "close" :
+	    if (positional.size() != 1) return null;
+	    Json.quote(sb.append(",\"session\":"), positional.get(0));
+	    break;
+	case "load" :
+	case "run" :
+	case "enumerate" :
+	case "export" :
+	    if (positional.isEmpty() || positional.size() > 2) return null;
+	    Json.quote(sb.append(",\"model\":"), new File(positional.get(0)).getAbsolutePath());
+	    if (positional.size() == 2) Json.quote(sb.append(",\"command\":"), positional.get(1));
+	    break;
+	default :
+	    return null;
+	}
+	return sb.append('}').toString();
+    }
+
+    public static void main(String[] args) {
+	int port = SolverDaemon.DEFAULT_PORT;
+	int first = 0;
+	if (args.length >= 2 && args[0].equals("-port")) {
+	    port = Integer.parseInt(args[1]);
+	    first = 2;
+	}
+	if (first >= args.length) {
+	    usage();
+	    return;
+	}
+	final String op = args[first];
+	boolean failed = false;
+	try (DaemonClient client = new DaemonClient(port)) {
+	    if (op.equals("-")) {
+		final BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		String line;
+		while ((line = stdin.readLine()) != null) {
+		    if (line.trim().isEmpty()) continue;
+		    failed |= !Boolean.TRUE.equals(client.request(line, System.out).get("ok"));
+		}
+	    } else {
+		final String request = buildRequest(op, Arrays.asList(args).subList(first + 1, args.length));
+		if (request == null) {
+		    usage();
+		    return;
+		}
+		failed = !Boolean.TRUE.equals(client.request(request, System.out).get("ok"));
+	    }
+	} catch (IOException e) {
+	    Log.error("Request to the solver daemon failed: " + e);
+	    failed = true;
+	}
+	if (failed) System.exit(1);
+    }
+}
@@ -35,55 +35,64 @@ import java.io.*;
 import java.nio.file.*;
 import java.nio.charset.*;
 
+/** View of an execution atom of an MDCSolution; its transitions are stored as a sequence of identifiers. */
+
 public class Execution {
-    
-    private String name = null;
-    private State initialState = null;
-    private State finalState = null;
-    private final List<Transition> transitions = new ArrayList<Transition>();
-
-    protected Execution(String name) {
-	this.name = name;
+
+    private final MDCSolution owner;
+    private final int id;
+
+    protected Execution(MDCSolution owner, int id) {
+	this.owner = owner;
+	this.id = id;
     }
 
     public void initWith(State s) {
-	this.initialState = s;
-	this.finalState = s;
+	owner.initExecution(id, s.id);
     }
 
     public void step(Transition t) {
-	if (t.getPrestate() != this.finalState) {
+	if (owner.preState(t.id) != owner.finalState(id)) {
 	    // Should handle this case ... that should never arise
 	} else {
-	    this.transitions.add(t);
-	    this.finalState = t.getPoststate();
+	    owner.stepExecution(id, t.id);
 	}
     }
 
-    public String getName() { return this.name; }
-    public String getGUIName() { return getName().replace("Execution$","E"); }
+    /** Dense identifier of the execution in its solution. */
+    public int getId() { return this.id; }
+
+    public String getName() { return owner.executionName(id); }
+    public String getGUIName() { return toGUIName(getName()); }
+
+    static String toGUIName(String name) { return name.replace("Execution$","E"); }
+
+    public State getInitialState() { return owner.stateView(owner.initialState(id)); }
 
     public Collection<State> getStates() {
 	Collection<State> states = (Collection<State>) new HashSet<State>();
+	State initialState = getInitialState();
 	if (initialState != null) states.add(initialState);
-	for (Transition t:this.transitions) {
-	    // states.add(t.getPrestate());
-	    states.add(t.getPoststate());
+	for (int i = 0; i < owner.executionLength(id); i++) {
+	    states.add(owner.stateView(owner.postState(owner.executionStep(id, i))));
 	}
 	return states;
     }
 
     public List<Transition> getTransitions() {
-	return ((List<Transition>) transitions);
+	return new AbstractList<Transition>() {
+	    public Transition get(int i) { return owner.transitionView(owner.executionStep(id, i)); }
+	    public int size() { return owner.executionLength(id); }
+	};
     }
-    
+
     public void outputToDotFile(String dotFilePathStr) {
 	Path dotFilePath = FileSystems.getDefault().getPath(dotFilePathStr);
 	try (BufferedWriter writer = Files.newBufferedWriter(dotFilePath, StandardCharsets.UTF_8)) {
-	    writer.write("digraph " + this.name.replace("$","") + " {\n");
+	    writer.write("digraph " + getName().replace("$","") + " {\n");
 	    int stepNb = 0;
-	    writer.write("  state" + stepNb + " [label=\"" + this.initialState.getDotName() + "\"];\n");
-	    for (Transition t:this.transitions) {
+	    writer.write("  state" + stepNb + " [label=\"" + getInitialState().getDotName() + "\"];\n");
+	    for (Transition t:getTransitions()) {
 		stepNb += 1;
 		writer.write("  state" + stepNb + " [label=\"" + t.getPoststate().getDotName() + "\"];\n");
 		String trigger = t.getTrigger().getDotName();
@@ -93,16 +102,17 @@ public class Execution {
 	    writer.write("}\n");
 	    writer.close();
 	} catch (IOException e) {
-	    System.err.format("IOException: %s%n", e);
+	    Log.error("Writing of the dot file failed: " + e);
 	}
     }
 
     public String toString() {
-	String res = this.name + ": " + this.initialState.toString();
-	for (Transition t:this.transitions) {
-	    res = res + " --(" + t.getName() + ": " + t.getTrigger() + " | " + t.getEffect() + " )--> " + t.getPoststate();
+	final StringBuilder res = new StringBuilder(getName()).append(": ").append(getInitialState());
+	for (Transition t:getTransitions()) {
+	    res.append(" --(").append(t.getName()).append(": ").append(t.getTrigger()).append(" | ")
+		.append(t.getEffect()).append(" )--> ").append(t.getPoststate());
 	}
-	return res;
+	return res.toString();
     }
 
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.util.function.Supplier;
+import javax.swing.JPanel;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/**
+ * Tab of an execution. It only holds the way to get the execution graph
+ * until it is shown; its pane can then be released and built again.
+ */
+
+class ExecutionTab extends JPanel {
+
+    private final String execName;
+    private Supplier<Graph<State,Transition>> graphSupplier;
+    private MDCGraphPane pane = null;
+
+    ExecutionTab(String execName, Supplier<Graph<State,Transition>> graphSupplier) {
+	super(new BorderLayout());
+	this.execName = execName;
+	this.graphSupplier = graphSupplier;
+    }
+
+    String getExecName() {
+	return execName;
+    }
+
+    /** The graph shown from now on, e.g. the one of the next solution. */
+    void setGraphSupplier(Supplier<Graph<State,Transition>> graphSupplier) {
+	this.graphSupplier = graphSupplier;
+    }
+
+    Supplier<Graph<State,Transition>> getGraphSupplier() {
+	return graphSupplier;
+    }
+
+    /** The pane of the execution, or null if it is not built. */
+    MDCGraphPane getPane() {
+	return pane;
+    }
+
+    boolean isBuilt() {
+	return pane != null;
+    }
+
+    /** Builds the pane, laid out from the precomputed layouts if they place the graph, from the cache otherwise. */
+    void build(Dimension dim, LayoutCache cache, LayoutCache precomputed) {
+	if (pane != null) return;
+	pane = new MDCGraphPane(graphSupplier.get(), dim, cache, execName, precomputed);
+	add(pane, BorderLayout.CENTER);
+	revalidate();
+    }
+
+    /** Drops the pane, keeping its layout in the cache it was built with. */
+    void release() {
+	if (pane == null) return;
+	pane.dispose();
+	remove(pane);
+	pane = null;
+    }
+}
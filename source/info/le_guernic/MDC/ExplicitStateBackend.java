@@ -0,0 +1,480 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.ErrorFatal;
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.parser.CompUtil;
+
+/**
+ * Enumerates the solutions of the run commands of MDC.als directly, without
+ * translating them to SAT. An execution is built step by step from the
+ * initial state, within the scopes of the command; a step takes either a
+ * transition already in the solution or a new one. New atoms are numbered
+ * in their order of first appearance along the execution, so that exactly
+ * one solution of each class of solutions equal up to the renaming of
+ * states, labels and transitions is produced.
+ *
+ * Solutions only contain the atoms the predicate needs (the execution, its
+ * transitions, their states and labels, NoLabel and the traces); Alloy
+ * would also list the same solutions padded with unrelated atoms.
+ *
+ * The executions starting with each possible first transition are
+ * explored in parallel. Commands whose predicate is not known, or whose
+ * body differs from the one of MDC.als, are solved by the Alloy backend.
+ */
+
+public class ExplicitStateBackend implements SolverBackend {
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final AlloyBackend fallback;
+
+    public ExplicitStateBackend(AlloyBackend fallback) {
+	this.fallback = fallback;
+    }
+
+    public String getName() {
+	return "explicit";
+    }
+
+    public SolutionEnumerator solve(Command cmd, A4Reporter reporter) throws Err {
+	final Goal goal = cmd.check ? null : Goal.of(cmd, fallback.getModule());
+	if (goal == null) {
+	    Log.warn(">>> WARNING <<< No explicit-state semantics for '" + cmd + "', using the Alloy backend");
+	    return fallback.solve(cmd, reporter);
+	}
+	return new Enumeration(Scope.of(cmd), goal);
+    }
+
+    // SCOPES
+
+    /** Number of atoms of each signature, and maximal length of the sequences. */
+    static class Scope {
+	final int states, labels, transitions, executions, traces, maxseq;
+
+	Scope(int states, int labels, int transitions, int executions, int traces, int maxseq) {
+	    this.states = states;
+	    this.labels = labels;
+	    this.transitions = transitions;
+	    this.executions = executions;
+	    this.traces = traces;
+	    this.maxseq = maxseq;
+	}
+
+	static Scope of(Command cmd) {
+	    final int overall = (cmd.overall < 0) ? 3 : cmd.overall;
+	    final int bitwidth = (cmd.bitwidth < 0) ? 4 : cmd.bitwidth;
+	    // Sequence indices are integers of the bitwidth
+	    final int maxseq = Math.min((cmd.maxseq < 0) ? overall : cmd.maxseq, 1 << (bitwidth - 1));
+	    // One label is NoLabel, which never labels a transition
+	    return new Scope(scopeOf(cmd, "State", overall), scopeOf(cmd, "Label", overall) - 1,
+			     scopeOf(cmd, "Transition", overall), scopeOf(cmd, "Execution", overall),
+			     scopeOf(cmd, "Trace", overall), maxseq);
+	}
+
+	private static int scopeOf(Command cmd, String sigName, int overall) {
+	    if (cmd.scope != null) {
+		for (CommandScope cs:cmd.scope) {
+		    if (cs.sig != null && cs.sig.label.equals("this/" + sigName)) return cs.startingScope;
+		}
+	    }
+	    return overall;
+	}
+
+	public String toString() {
+	    return states + " State, " + (labels + 1) + " Label, " + transitions + " Transition, "
+		+ executions + " Execution, " + traces + " Trace, " + maxseq + " seq";
+	}
+    }
+
+    // PREDICATES
+
+    /** The run predicates of MDC.als, evaluated on the executions built. */
+    enum Goal {
+	SOME_LONG_EXECUTION("someLongExecution", 0,
+			    "some e : Execution | #(e.transitions.elems.preState) > 4"),
+	WITH_TRACE("someLongExecutionWithItsTrace", 1,
+		   "some e : Execution, te : Trace | #(e.transitions.elems.preState) > 4 and executionTrace[e,te]"),
+	WITH_PROJECTED_TRACE("someLongExecutionWithItsProjectedTrace", 2,
+			     "some e : Execution, te,tp : Trace, l : set Label | #(e.transitions.elems.preState) > 4"
+			     + " and executionTrace[e,te] and projection[te,l,tp] and #(tp.content.elems) < #(te.content.elems)");
+
+	final String name;
+	final int traces;
+	// Body of the predicate in MDC.als
+	final String body;
+
+	Goal(String name, int traces, String body) {
+	    this.name = name;
+	    this.traces = traces;
+	    this.body = body;
+	}
+
+	/**
+	 * The goal of the command, if its predicate has the name of one of
+	 * MDC.als and the same body once resolved in the module, null otherwise.
+	 */
+	static Goal of(Command cmd, Module world) {
+	    final Goal goal = forName(cmd.label);
+	    if (goal == null || world == null) return null;
+	    try {
+		final String expected = CompUtil.parseOneExpression_fromString(world, goal.body).toString();
+		for (Func f:world.getAllFunc()) {
+		    if (!f.label.equals("this/" + cmd.label)) continue;
+		    if (f.getBody().toString().equals(expected)) return goal;
+		    Log.warn(">>> WARNING <<< The predicate " + cmd.label + " differs from the one of MDC.als");
+		    return null;
+		}
+	    } catch (Err e) {
+		Log.warn(">>> WARNING <<< Unable to compare " + cmd.label + " with the predicate of MDC.als: " + e.getMessage());
+	    }
+	    return null;
+	}
+
+	static Goal forName(String name) {
+	    for (Goal g:values()) {
+		if (g.name.equals(name)) return g;
+	    }
+	    return null;
+	}
+
+	boolean accepts(int distinctPreStates) {
+	    return distinctPreStates > 4;
+	}
+
+	/** Hands to the sink the solutions made of the execution and of the traces the predicate asks for. */
+	void complete(Generator gen, Scope scope, Consumer<MDCSolution> sink) {
+	    if (traces > scope.traces) return;
+	    MDCSolution mdc = gen.build();
+	    final String skolem = "$" + name + "_";
+	    if (this == SOME_LONG_EXECUTION) {
+		mdc.getVariablesMapping().put(skolem + "e", Collections.singleton("Execution$0"));
+		sink.accept(mdc);
+		return;
+	    }
+	    final int[] te = TraceSemantics.executionTrace(mdc, 0);
+	    if (te == null || te.length > scope.maxseq) return;
+	    if (this == WITH_TRACE) {
+		addTrace(mdc, "Trace$0", te);
+		mdc.getVariablesMapping().put(skolem + "e", Collections.singleton("Execution$0"));
+		mdc.getVariablesMapping().put(skolem + "te", Collections.singleton("Trace$0"));
+		sink.accept(mdc);
+		return;
+	    }
+	    // Projections on the subsets of the labels of the trace that leave some out
+	    final int[] elems = distinct(te);
+	    for (int mask = 0; mask < (1 << elems.length) - 1; mask++) {
+		if (mdc == null) mdc = gen.build();
+		final BitSet onLabels = new BitSet();
+		final Set<String> onNames = new TreeSet<String>();
+		for (int i = 0; i < elems.length; i++) {
+		    if ((mask & (1 << i)) == 0) continue;
+		    onLabels.set(elems[i]);
+		    onNames.add(mdc.labelName(elems[i]));
+		}
+		addTrace(mdc, "Trace$0", te);
+		addTrace(mdc, "Trace$1", TraceSemantics.projection(mdc, te, onLabels));
+		mdc.getVariablesMapping().put(skolem + "e", Collections.singleton("Execution$0"));
+		mdc.getVariablesMapping().put(skolem + "te", Collections.singleton("Trace$0"));
+		mdc.getVariablesMapping().put(skolem + "tp", Collections.singleton("Trace$1"));
+		mdc.getVariablesMapping().put(skolem + "l", onNames);
+		sink.accept(mdc);
+		mdc = null;
+	    }
+	}
+
+	private static void addTrace(MDCSolution mdc, String name, int[] content) {
+	    final int tr = mdc.internTrace(name);
+	    for (int l:content) mdc.appendToTrace(tr, l);
+	}
+
+	private static int[] distinct(int[] trace) {
+	    final BitSet seen = new BitSet();
+	    for (int l:trace) seen.set(l);
+	    return seen.stream().toArray();
+	}
+    }
+
+    // GENERATION
+
+    /**
+     * Depth-first construction of the executions, undoing each step on the
+     * way back. If rootChoice is not negative, only the executions starting
+     * with the first step of that rank are explored.
+     */
+    static class Generator {
+
+	private static final int T = 1, E = 2, EMPTY = 3; // Roles of the labels
+
+	private final Scope scope;
+	private final Goal goal;
+	private final Consumer<MDCSolution> sink;
+	private final int rootChoice;
+	private int rootCount = 0;
+	private volatile boolean stopped = false;
+
+	private int nStates = 1; // State 0 is the initial state
+	private int nLabels = 0;
+	private final int[] labelRole;
+	private int emptyLabel = MDCSolution.NONE;
+	private int nTransitions = 0;
+	private final int[] pre, post, trigger, effect;
+	private final int[] path;
+	private int length = 0;
+	private final int[] preCount;
+	private int distinctPreStates = 0;
+	private int traceLength = 0;
+
+	Generator(Scope scope, Goal goal, Consumer<MDCSolution> sink, int rootChoice) {
+	    this.scope = scope;
+	    this.goal = goal;
+	    this.sink = sink;
+	    this.rootChoice = rootChoice;
+	    labelRole = new int[Math.max(scope.labels, 0)];
+	    pre = new int[scope.transitions];
+	    post = new int[scope.transitions];
+	    trigger = new int[scope.transitions];
+	    effect = new int[scope.transitions];
+	    path = new int[scope.maxseq];
+	    preCount = new int[Math.max(scope.states, 1)];
+	}
+
+	/** Number of possible first steps, i.e. of independent subtrees. */
+	static int countRoots(Scope scope) {
+	    final Generator gen = new Generator(scope, null, null, -2);
+	    gen.run();
+	    return gen.rootCount;
+	}
+
+	void stop() {
+	    stopped = true;
+	}
+
+	void run() {
+	    if (scope.states < 1 || scope.executions < 1) return;
+	    visit();
+	}
+
+	private boolean takes() {
+	    if (length > 0 || rootChoice == -1) return true;
+	    return rootCount++ == rootChoice;
+	}
+
+	private void explore() {
+	    if (stopped || length == path.length) return;
+	    final int s = (length == 0) ? 0 : post[path[length - 1]];
+	    for (int t = 0; t < nTransitions; t++) {
+		if (pre[t] == s && takes()) step(t);
+	    }
+	    if (nTransitions == pre.length) return;
+	    final int t = nTransitions;
+	    pre[t] = s;
+	    for (int p = 0; p <= nStates && p < scope.states; p++) {
+		post[t] = p;
+		final int statesBefore = nStates;
+		if (p == nStates) nStates++;
+		final int labelsBefore = nLabels, emptyBefore = emptyLabel;
+		for (int tr = 0; tr <= nLabels + 1; tr++) {
+		    // An existing label, a new one or a new empty label
+		    if (!pickLabel(tr, T, labelsBefore)) continue;
+		    trigger[t] = (tr < labelsBefore) ? tr : nLabels - 1;
+		    final int labelsMid = nLabels, emptyMid = emptyLabel;
+		    for (int ef = 0; ef <= nLabels + 1; ef++) {
+			if (!pickLabel(ef, E, labelsMid)) continue;
+			effect[t] = (ef < labelsMid) ? ef : nLabels - 1;
+			if (takes()) {
+			    nTransitions++;
+			    step(t);
+			    nTransitions--;
+			}
+			nLabels = labelsMid;
+			emptyLabel = emptyMid;
+		    }
+		    nLabels = labelsBefore;
+		    emptyLabel = emptyBefore;
+		}
+		nStates = statesBefore;
+	    }
+	}
+
+	/**
+	 * Makes the choice of rank c for a label of the given role: one of the
+	 * existing labels, then a new label, then a new empty label. Returns
+	 * false if the choice is not possible.
+	 */
+	private boolean pickLabel(int c, int role, int existing) {
+	    if (c < existing) return labelRole[c] == role || labelRole[c] == EMPTY;
+	    if (c > existing + 1 || nLabels == labelRole.length) return false;
+	    if (c == existing + 1) {
+		if (emptyLabel != MDCSolution.NONE) return false;
+		emptyLabel = nLabels;
+		labelRole[nLabels++] = EMPTY;
+	    } else {
+		labelRole[nLabels++] = role;
+	    }
+	    return true;
+	}
+
+	private void step(int t) {
+	    path[length++] = t;
+	    if (preCount[pre[t]]++ == 0) distinctPreStates++;
+	    final int labels = ((trigger[t] == emptyLabel) ? 0 : 1) + ((effect[t] == emptyLabel) ? 0 : 1);
+	    traceLength += labels;
+	    // Traces only grow along an execution, so a too long one can not be completed
+	    if (goal == null || goal.traces == 0 || traceLength <= scope.maxseq) visit();
+	    traceLength -= labels;
+	    if (--preCount[pre[t]] == 0) distinctPreStates--;
+	    length--;
+	}
+
+	private void visit() {
+	    if (goal != null && length > 0 && goal.accepts(distinctPreStates)) goal.complete(this, scope, sink);
+	    explore();
+	}
+
+	/** Solution made of the current execution, its transitions, their states and labels, and NoLabel. */
+	MDCSolution build() {
+	    final MDCSolution mdc = new MDCSolution();
+	    for (int s = 0; s < nStates; s++) mdc.internState("State$" + s);
+	    for (int l = 0; l < nLabels; l++) mdc.internLabel("Label$" + l);
+	    if (emptyLabel != MDCSolution.NONE) mdc.setEmptyLabel(emptyLabel, true);
+	    mdc.setNoLabel(mdc.internLabel("NoLabel$0"));
+	    for (int t = 0; t < nTransitions; t++) {
+		mdc.internTransition("Transition$" + t);
+		mdc.setPreState(t, pre[t]);
+		mdc.setPostState(t, post[t]);
+		mdc.setTrigger(t, trigger[t]);
+		mdc.setEffect(t, effect[t]);
+	    }
+	    final int e = mdc.internExecution("Execution$0");
+	    mdc.initExecution(e, 0);
+	    for (int i = 0; i < length; i++) mdc.stepExecution(e, path[i]);
+	    return mdc;
+	}
+    }
+
+    // ENUMERATION
+
+    /** Solutions of the subtrees, explored in parallel but delivered in the order of their first step. */
+    static class Enumeration implements SolutionEnumerator {
+
+	private static final MDCSolution END = new MDCSolution();
+
+	private final List<BlockingQueue<MDCSolution>> queues = new ArrayList<BlockingQueue<MDCSolution>>();
+	private final List<Generator> generators = new ArrayList<Generator>();
+	private final ExecutorService pool;
+	private int current = 0;
+	private int nextIndex = 0;
+	private volatile boolean closed = false;
+	private volatile Throwable failure = null;
+
+	Enumeration(Scope scope, Goal goal) {
+	    final int roots = Generator.countRoots(scope);
+	    pool = Executors.newFixedThreadPool(
+		Math.max(1, Math.min(roots, Runtime.getRuntime().availableProcessors())),
+		new ThreadFactory() {
+		    public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "MDC-explicit-" + threadCounter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		    }
+		});
+	    for (int i = 0; i < roots; i++) {
+		final BlockingQueue<MDCSolution> queue = new ArrayBlockingQueue<MDCSolution>(QUEUE_CAPACITY);
+		final Generator gen = new Generator(scope, goal, (mdc) -> {
+			try {
+			    queue.put(mdc);
+			} catch (InterruptedException e) {
+			    throw new CancellationException();
+			}
+		    }, i);
+		queues.add(queue);
+		generators.add(gen);
+		pool.execute(() -> {
+			try {
+			    gen.run();
+			} catch (CancellationException e) {
+			    // closed
+			} catch (RuntimeException | Error e) {
+			    if (!closed && failure == null) failure = e;
+			} finally {
+			    try {
+				if (!closed) queue.put(END);
+			    } catch (InterruptedException e) {
+				// closed while the queue was full
+			    }
+			}
+		    });
+	    }
+	    pool.shutdown();
+	}
+
+	public PreparedSolution next() throws Err {
+	    try {
+		while (current < queues.size()) {
+		    final MDCSolution mdc = queues.get(current).take();
+		    if (mdc == END) {
+			final Throwable f = failure;
+			if (f != null) throw new ErrorFatal(f + " while generating solutions", f);
+			queues.set(current++, null);
+			continue;
+		    }
+		    Metrics.count("solutions", 1);
+		    return new PreparedSolution(nextIndex++, null, mdc);
+		}
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    return null;
+	}
+
+	/** Symmetric solutions are never generated, so none is skipped. */
+	public int getSkippedCount() {
+	    return 0;
+	}
+
+	public void close() {
+	    closed = true;
+	    for (Generator gen:generators) gen.stop();
+	    pool.shutdownNow();
+	}
+    }
+}
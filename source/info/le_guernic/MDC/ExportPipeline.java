@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+/**
+ * Writes solutions to files on a background thread. Solutions wait in a
+ * bounded queue; when it is full, write() blocks until the exporter has
+ * caught up, so a fast enumeration can not exhaust the heap.
+ *
+ * The GUI exports nothing unless the "mdc.export" system property lists
+ * formats among xml, dot, json, png and svg. Files go to "mdc.export.dir" (default
+ * "exports") and are named after the command and the solution index.
+ */
+
+public class ExportPipeline implements SolutionSink {
+
+    private static final PreparedSolution END = new PreparedSolution(-1, null, null);
+
+    private final List<SolutionSink> sinks;
+    private final BlockingQueue<PreparedSolution> queue;
+    private final Thread thread;
+
+    public ExportPipeline(List<SolutionSink> sinks, int queueCapacity) {
+	this.sinks = sinks;
+	this.queue = new ArrayBlockingQueue<PreparedSolution>(Math.max(1, queueCapacity));
+	this.thread = new Thread(new Runnable() {
+		public void run() { export(); }
+	    }, "MDC-exporter");
+	this.thread.setDaemon(true);
+	this.thread.start();
+    }
+
+    /** Creates the sinks of the given comma separated formats (xml, dot, json, png, svg) writing in dir. */
+    public static ExportPipeline create(String formats, Path dir, String prefix, int queueCapacity) throws IOException {
+	Files.createDirectories(dir);
+	final List<SolutionSink> sinks = new ArrayList<SolutionSink>();
+	final Set<GraphRenderer.Format> images = EnumSet.noneOf(GraphRenderer.Format.class);
+	for (String format:formats.split(",")) {
+	    switch (format.trim().toLowerCase()) {
+	    case "xml" : sinks.add(new XmlExportSink(dir, prefix)); break;
+	    case "dot" : sinks.add(new DotExportSink(dir, prefix)); break;
+	    case "json" : sinks.add(new JsonExportSink(dir, prefix)); break;
+	    case "png" : images.add(GraphRenderer.Format.PNG); break;
+	    case "svg" : images.add(GraphRenderer.Format.SVG); break;
+	    case "" : break;
+	    default : throw new IOException("Unknown export format '" + format + "' (expected xml, dot, json, png or svg)");
+	    }
+	}
+	// Both image formats are drawn from the same layout
+	if (!images.isEmpty()) sinks.add(new ImageExportSink(dir, prefix, images));
+	return new ExportPipeline(sinks, queueCapacity);
+    }
+
+    /** Whether solutions must keep their Alloy XML form to be exported. */
+    public boolean needsAlloyXml() {
+	for (SolutionSink sink:sinks) {
+	    if (sink instanceof XmlExportSink) return true;
+	}
+	return false;
+    }
+
+    /** Returns the pipeline configured by the system properties, or null if export is off. */
+    public static ExportPipeline fromSystemProperties(String prefix) {
+	final String formats = System.getProperty("mdc.export", "");
+	if (formats.trim().isEmpty()) return null;
+	try {
+	    return create(formats, FileSystems.getDefault().getPath(System.getProperty("mdc.export.dir", "exports")),
+			  prefix, Integer.getInteger("mdc.export.queue", 16));
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Export disabled: " + e.getMessage());
+	    return null;
+	}
+    }
+
+    /** Name of the file of a solution: prefix-000042suffix. */
+    static Path fileFor(Path dir, String prefix, int index, String suffix) {
+	return dir.resolve(String.format("%s-%06d%s", prefix, index, suffix));
+    }
+
+    private void export() {
+	try {
+	    while (true) {
+		final PreparedSolution sol = queue.take();
+		if (sol == END) break;
+		for (SolutionSink sink:sinks) {
+		    try {
+			sink.write(sol);
+		    } catch (IOException | RuntimeException e) {
+			Log.error("Export of solution " + sol.getIndex() + " failed: " + e);
+		    }
+		}
+	    }
+	} catch (InterruptedException e) {
+	    // Closed without draining
+	}
+    }
+
+    /** Queues the solution for export, waiting while the queue is full. */
+    public void write(PreparedSolution sol) throws IOException {
+	if (!thread.isAlive()) throw new IOException("Export pipeline is closed");
+	try {
+	    queue.put(sol);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted while waiting for the export queue");
+	}
+    }
+
+    /** Waits for the queued solutions to be exported, then closes the sinks. */
+    public void close() throws IOException {
+	try {
+	    queue.put(END);
+	    thread.join();
+	} catch (InterruptedException e) {
+	    thread.interrupt();
+	    Thread.currentThread().interrupt();
+	}
+	for (SolutionSink sink:sinks) {
+	    sink.close();
+	}
+    }
+}
@@ -32,13 +32,17 @@ package info.le_guernic.MDC;
 import info.le_guernic.MDC.*;
 
 import edu.uci.ics.jung.graph.*;
+import edu.uci.ics.jung.algorithms.layout.Layout;
 
 import java.util.*;
+import java.awt.geom.Point2D;
 
 public class GraphGenerator {
 
+    /** The graph of all the transitions, parallel ones included. */
     public static Graph<State,Transition> generateTransitionsGraph(MDCSolution mdc) {
-	DirectedGraph<State,Transition> graph = new DirectedSparseGraph<State,Transition>();
+	final long start = System.nanoTime();
+	DirectedGraph<State,Transition> graph = new DirectedSparseMultigraph<State,Transition>();
 	// Adding vertices
 	Collection<State> states = mdc.getStates();
 	for (State s:states) {
@@ -51,11 +55,61 @@ public class GraphGenerator {
 	    State to = t.getPoststate();
 	    graph.addEdge(t, from, to);
 	}
-	System.out.println("Generated graph is: " + graph.toString());
+	Metrics.record(Metrics.Phase.GRAPH, System.nanoTime() - start);
+	Log.trace(() -> "Generated graph is: " + graph.toString());
+	return graph;
+    }
+
+    /**
+     * The graph of the transitions where all those going from one state to
+     * another are collapsed into a single AggregatedTransition. Transitions
+     * without parallel ones are kept as they are.
+     */
+    public static Graph<State,Transition> generateAggregatedTransitionsGraph(MDCSolution mdc) {
+	final long start = System.nanoTime();
+	DirectedGraph<State,Transition> graph = new DirectedSparseMultigraph<State,Transition>();
+	// Adding vertices
+	Collection<State> states = mdc.getStates();
+	for (State s:states) {
+	    graph.addVertex(s);
+	}
+	// Grouping transitions by pre-state and post-state
+	final Map<Long,List<Transition>> groups = new LinkedHashMap<Long,List<Transition>>();
+	for (Transition t:mdc.getTransitions()) {
+	    final long key = ((long) t.getPrestate().getId() << 32) | t.getPoststate().getId();
+	    List<Transition> group = groups.get(key);
+	    if (group == null) {
+		group = new ArrayList<Transition>(1);
+		groups.put(key, group);
+	    }
+	    group.add(t);
+	}
+	// Adding edges
+	for (List<Transition> group:groups.values()) {
+	    final Transition t = (group.size() == 1) ? group.get(0) : new AggregatedTransition(group);
+	    graph.addEdge(t, t.getPrestate(), t.getPoststate());
+	}
+	Metrics.record(Metrics.Phase.GRAPH, System.nanoTime() - start);
+	Log.trace(() -> "Generated graph is: " + graph.toString());
 	return graph;
     }
 
+    /**
+     * Replaces, in the graph, the aggregated transition by the transitions
+     * it is made of. Returns whether the graph was modified.
+     */
+    public static boolean expand(Graph<State,Transition> graph, AggregatedTransition aggregate) {
+	final State from = graph.getSource(aggregate);
+	final State to = graph.getDest(aggregate);
+	if (from == null || !graph.removeEdge(aggregate)) return false;
+	for (Transition t:aggregate.getMembers()) {
+	    graph.addEdge(t, from, to);
+	}
+	return true;
+    }
+
     public static Graph<State,Transition> generateExecutionGraph(Execution exec) {
+	final long start = System.nanoTime();
 	DirectedGraph<State,Transition> graph = new DirectedSparseGraph<State,Transition>();
 	// Adding vertices
 	Collection<State> states = exec.getStates();
@@ -70,8 +124,60 @@ public class GraphGenerator {
 	    State to = t.getPoststate();
 	    graph.addEdge((Transition) t, from, to);
 	}
-	System.out.println("Generated graph is: " + graph.toString());
+	Metrics.record(Metrics.Phase.GRAPH, System.nanoTime() - start);
+	Log.trace(() -> "Generated graph is: " + graph.toString());
 	return graph;
     }
-    
+
+    /**
+     * Makes the shown graph equal to the target one, comparing vertices by
+     * state name and edges by name, description and end states. All the
+     * vertices and edges are replaced by those of the target, so that the
+     * shown graph only refers to the solution of the target; the positions
+     * of the states present in both are moved to their new vertices in the
+     * given layout, if any. Returns whether the structure of the shown
+     * graph was modified.
+     */
+    public static boolean patchGraph(Graph<State,Transition> shown, Graph<State,Transition> target, Layout<State,Transition> layout) {
+	final Set<String> shownStates = new HashSet<String>();
+	for (State s:shown.getVertices()) shownStates.add(s.getName());
+	final Set<String> shownEdges = new HashSet<String>();
+	for (Transition t:shown.getEdges()) shownEdges.add(edgeKey(t));
+
+	final Set<String> targetStates = new HashSet<String>();
+	for (State s:target.getVertices()) targetStates.add(s.getName());
+	final Set<String> targetEdges = new HashSet<String>();
+	for (Transition t:target.getEdges()) targetEdges.add(edgeKey(t));
+
+	final Map<String,Point2D> positions = new HashMap<String,Point2D>();
+	if (layout != null) {
+	    for (State s:shown.getVertices()) {
+		if (targetStates.contains(s.getName())) positions.put(s.getName(), new Point2D.Double(layout.apply(s).getX(), layout.apply(s).getY()));
+	    }
+	}
+	for (Transition t:new ArrayList<Transition>(shown.getEdges())) shown.removeEdge(t);
+	for (State s:new ArrayList<State>(shown.getVertices())) shown.removeVertex(s);
+	for (State s:target.getVertices()) {
+	    shown.addVertex(s);
+	    final Point2D p = positions.get(s.getName());
+	    if (p != null) layout.setLocation(s, p);
+	}
+	for (Transition t:target.getEdges()) {
+	    shown.addEdge(t, target.getEndpoints(t), target.getEdgeType(t));
+	}
+	return !(shownStates.equals(targetStates) && shownEdges.equals(targetEdges));
+    }
+
+    /** A graph with the same vertices and edges as the given one, which may be patched without changing it. */
+    public static Graph<State,Transition> copyGraph(Graph<State,Transition> graph) {
+	final Graph<State,Transition> copy = new DirectedSparseMultigraph<State,Transition>();
+	for (State s:graph.getVertices()) copy.addVertex(s);
+	for (Transition t:graph.getEdges()) copy.addEdge(t, graph.getEndpoints(t), graph.getEdgeType(t));
+	return copy;
+    }
+
+    private static String edgeKey(Transition t) {
+	return t.getName() + " " + t.getGUIEdgeDescription() + " " + t.getPrestate().getName() + " " + t.getPoststate().getName();
+    }
+
 }
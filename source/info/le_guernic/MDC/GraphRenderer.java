@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import com.google.common.base.Function;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.algorithms.layout.StaticLayout;
+import edu.uci.ics.jung.visualization.VisualizationImageServer;
+
+/**
+ * Lays out and draws graphs to PNG or SVG files without any window. Each
+ * graph is laid out once, with the algorithm of the graph panes, and
+ * drawn with the labels of the panes. Graphs are rendered in parallel on
+ * a pool of "mdc.render.threads" threads; at most a few graphs per thread
+ * wait for it, submitting more blocks.
+ *
+ * Images are "mdc.render.width" by "mdc.render.height" pixels (800x600).
+ */
+
+public class GraphRenderer implements Closeable {
+
+    public enum Format {
+	PNG(".png"),
+	SVG(".svg");
+
+	final String suffix;
+
+	Format(String suffix) {
+	    this.suffix = suffix;
+	}
+    }
+
+    public static final Dimension DEFAULT_SIZE = new Dimension(Integer.getInteger("mdc.render.width", 800),
+							       Integer.getInteger("mdc.render.height", 600));
+
+    /** Whether the transitions graphs of solutions are drawn with their parallel transitions collapsed. */
+    static final boolean AGGREGATE = Boolean.getBoolean("mdc.render.aggregate");
+
+    // Shapes of the default JUNG renderer, reproduced in the SVG files
+
+    private static final double VERTEX_RADIUS = 10;
+    private static final double CURVE_OFFSET = 20;
+    private static final double ARROW_LENGTH = 10;
+    private static final double ARROW_WIDTH = 8;
+    private static final int MARGIN = 30;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final Dimension size;
+    private final ExecutorService pool;
+    private final Semaphore slots;
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public GraphRenderer(Dimension size, int nbThreads) {
+	this.size = size;
+	this.pool = Executors.newFixedThreadPool(nbThreads, (r) -> {
+		Thread t = new Thread(r, "MDC-renderer-" + threadCounter.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	    });
+	this.slots = new Semaphore(4 * nbThreads);
+    }
+
+    public GraphRenderer() {
+	this(DEFAULT_SIZE, Integer.getInteger("mdc.render.threads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Number of graphs whose rendering failed so far. */
+    public int getFailureCount() {
+	return failures.get();
+    }
+
+    // RENDERING
+
+    /** Lays out the graph and draws it to a file per format, named base + the suffix of the format. */
+    public static void render(Graph<State,Transition> graph, Dimension size, Path base, Collection<Format> formats) throws IOException {
+	final Layout<State,Transition> layout = layOut(graph, size);
+	for (Format f:formats) {
+	    final Path file = base.resolveSibling(base.getFileName() + f.suffix);
+	    switch (f) {
+	    case PNG : writePNG(layout, size, file); break;
+	    case SVG : writeSVG(layout, size, file); break;
+	    }
+	}
+    }
+
+    /** Queues the rendering of a graph, waiting while the pool is saturated. */
+    public void submit(final Graph<State,Transition> graph, final Path base, final Collection<Format> formats) throws InterruptedIOException {
+	try {
+	    slots.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted while waiting for the renderer");
+	}
+	try {
+	    pool.execute(() -> {
+		    try {
+			render(graph, size, base, formats);
+		    } catch (IOException | RuntimeException e) {
+			failures.incrementAndGet();
+			Log.error("Rendering of " + base + " failed: " + e);
+		    } finally {
+			slots.release();
+		    }
+		});
+	} catch (RejectedExecutionException e) {
+	    slots.release();
+	    throw new InterruptedIOException("Renderer is closed");
+	}
+    }
+
+    /** Queues the transitions graph and the graph of every execution of the solution. */
+    public void submit(PreparedSolution sol, Path dir, String prefix, Collection<Format> formats) throws InterruptedIOException {
+	submit(sol.getTransitionsGraph(AGGREGATE), ExportPipeline.fileFor(dir, prefix, sol.getIndex(), "-transitions"), formats);
+	for (Execution e:sol.getMDCSolution().getExecutions()) {
+	    // The graphs of the solution are shared with the display, which draws copies of them
+	    submit(sol.getExecutionGraph(e),
+		   ExportPipeline.fileFor(dir, prefix, sol.getIndex(), "-" + e.getName().replace("$","")), formats);
+	}
+    }
+
+    /** Waits for the queued graphs to be rendered. */
+    public void close() throws IOException {
+	pool.shutdown();
+	try {
+	    while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+		Log.info("Waiting for the rendering of the graphs");
+	    }
+	} catch (InterruptedException e) {
+	    pool.shutdownNow();
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted while rendering");
+	}
+    }
+
+    /** Runs the layout algorithm of the graph panes to completion and returns the final positions. */
+    static Layout<State,Transition> layOut(Graph<State,Transition> graph, Dimension size) {
+	// Laid out inside the margins, so that vertices and loops on the border are not cut
+	final Dimension inner = new Dimension(Math.max(1, size.width - 2 * MARGIN), Math.max(1, size.height - 2 * MARGIN));
+	final AbstractLayout<State,Transition> layout = LayoutPrecomputer.relax(LayoutAlgorithm.forGraph(graph).create(graph, inner, null, null));
+	// A static copy, which the image server will not try to relax
+	return new StaticLayout<State,Transition>(graph, new Function<State,Point2D>() {
+		public Point2D apply(State s) {
+		    final Point2D p = layout.apply(s);
+		    return new Point2D.Double(p.getX() + MARGIN, p.getY() + MARGIN);
+		}
+	    }, size);
+    }
+
+    // PNG
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+
+    private static void writePNG(Layout<State,Transition> layout, Dimension size, Path file) throws IOException {
+	final VisualizationImageServer<State,Transition> server = new VisualizationImageServer<State,Transition>(layout, size);
+	GraphStyle.apply(server);
+	server.setBackground(Color.WHITE);
+	final BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_3BYTE_BGR);
+	final Graphics2D g = image.createGraphics();
+	g.setRenderingHints(server.getRenderingHints());
+	server.paint(g);
+	g.dispose();
+	try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+	    encodePNG(image, out);
+	}
+    }
+
+    /**
+     * Writes a PNG of an image of type TYPE_3BYTE_BGR. Rows are not filtered
+     * and are compressed with the fastest deflate level: for these mostly
+     * blank images, the files are about as small as the ones of ImageIO,
+     * which tries every filter on every row, and are written three times
+     * faster.
+     */
+    static void encodePNG(BufferedImage image, OutputStream os) throws IOException {
+	final int w = image.getWidth(), h = image.getHeight();
+	final byte[] bgr = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	final DataOutputStream out = new DataOutputStream(os);
+	out.write(PNG_SIGNATURE);
+	final ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+	final DataOutputStream hd = new DataOutputStream(header);
+	hd.writeInt(w);
+	hd.writeInt(h);
+	hd.write(new byte[] {8, 2, 0, 0, 0}); // 8 bits RGB, deflate, no filter, not interlaced
+	writeChunk(out, "IHDR", header.toByteArray(), 13);
+	final ByteArrayOutputStream data = new ByteArrayOutputStream(64 * 1024);
+	final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	try (DeflaterOutputStream z = new DeflaterOutputStream(data, deflater, 64 * 1024)) {
+	    final byte[] row = new byte[1 + 3 * w]; // filter type 0, then RGB
+	    for (int y = 0; y < h; y++) {
+		for (int x = 0, i = 3 * w * y; x < w; x++, i += 3) {
+		    row[1 + 3 * x] = bgr[i + 2];
+		    row[2 + 3 * x] = bgr[i + 1];
+		    row[3 + 3 * x] = bgr[i];
+		}
+		z.write(row);
+	    }
+	} finally {
+	    deflater.end();
+	}
+	writeChunk(out, "IDAT", data.toByteArray(), data.size());
+	writeChunk(out, "IEND", new byte[0], 0);
+	out.flush();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+	final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+	final CRC32 crc = new CRC32();
+	crc.update(typeBytes);
+	crc.update(data, 0, length);
+	out.writeInt(length);
+	out.write(typeBytes);
+	out.write(data, 0, length);
+	out.writeInt((int) crc.getValue());
+    }
+
+    // SVG
+
+    private static void writeSVG(Layout<State,Transition> layout, Dimension size, Path file) throws IOException {
+	final Graph<State,Transition> graph = layout.getGraph();
+	final StringBuilder sb = new StringBuilder(4096);
+	sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+	sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(size.width).append("\" height=\"").append(size.height)
+	    .append("\" viewBox=\"0 0 ").append(size.width).append(' ').append(size.height).append("\"")
+	    .append(" font-family=\"sans-serif\" font-size=\"12\">\n");
+	sb.append("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+	sb.append("<g stroke=\"black\" fill=\"none\">\n");
+	final StringBuilder labels = new StringBuilder();
+	for (Transition t:graph.getEdges()) {
+	    final State from = graph.getSource(t);
+	    final State to = graph.getDest(t);
+	    final List<Transition> parallel = new ArrayList<Transition>(graph.findEdgeSet(from, to));
+	    final int index = Math.max(0, parallel.indexOf(t));
+	    final Point2D p = layout.apply(from);
+	    final Point2D q = layout.apply(to);
+	    double lx, ly;
+	    if (from.equals(to)) {
+		// Loop above the vertex, larger for each parallel loop
+		final double r = VERTEX_RADIUS * (1 + 0.5 * index);
+		final double cy = p.getY() - VERTEX_RADIUS - r;
+		sb.append("<circle cx=\"").append(fmt(p.getX())).append("\" cy=\"").append(fmt(cy))
+		    .append("\" r=\"").append(fmt(r)).append("\"/>\n");
+		lx = p.getX();
+		ly = cy - r;
+	    } else {
+		// Quadratic curve bent to the left, further for each parallel edge
+		final double dx = q.getX() - p.getX(), dy = q.getY() - p.getY();
+		final double len = Math.max(1e-9, Math.hypot(dx, dy));
+		final double off = CURVE_OFFSET * (index + 1);
+		final double cx = (p.getX() + q.getX()) / 2 + dy / len * off;
+		final double cy = (p.getY() + q.getY()) / 2 - dx / len * off;
+		// The arrow ends on the border of the target vertex, along the tangent
+		final double tx = q.getX() - cx, ty = q.getY() - cy;
+		final double tlen = Math.max(1e-9, Math.hypot(tx, ty));
+		final double ux = tx / tlen, uy = ty / tlen;
+		final double ex = q.getX() - ux * VERTEX_RADIUS, ey = q.getY() - uy * VERTEX_RADIUS;
+		final double bx = ex - ux * ARROW_LENGTH, by = ey - uy * ARROW_LENGTH;
+		sb.append("<path d=\"M").append(fmt(p.getX())).append(',').append(fmt(p.getY()))
+		    .append(" Q").append(fmt(cx)).append(',').append(fmt(cy))
+		    .append(' ').append(fmt(bx)).append(',').append(fmt(by)).append("\"/>\n");
+		sb.append("<polygon fill=\"black\" points=\"").append(fmt(ex)).append(',').append(fmt(ey))
+		    .append(' ').append(fmt(bx - uy * ARROW_WIDTH / 2)).append(',').append(fmt(by + ux * ARROW_WIDTH / 2))
+		    .append(' ').append(fmt(bx + uy * ARROW_WIDTH / 2)).append(',').append(fmt(by - ux * ARROW_WIDTH / 2))
+		    .append("\"/>\n");
+		final double c = GraphStyle.EDGE_LABEL_CLOSENESS;
+		lx = (1 - c) * (1 - c) * p.getX() + 2 * c * (1 - c) * cx + c * c * q.getX();
+		ly = (1 - c) * (1 - c) * p.getY() + 2 * c * (1 - c) * cy + c * c * q.getY();
+	    }
+	    text(labels, lx, ly, GraphStyle.EDGE_LABEL.apply(t));
+	}
+	sb.append("</g>\n<g stroke=\"black\" fill=\"red\">\n");
+	for (State s:graph.getVertices()) {
+	    final Point2D p = layout.apply(s);
+	    sb.append("<circle cx=\"").append(fmt(p.getX())).append("\" cy=\"").append(fmt(p.getY()))
+		.append("\" r=\"").append(fmt(VERTEX_RADIUS)).append("\"/>\n");
+	    text(labels, p.getX(), p.getY() + 4, GraphStyle.VERTEX_LABEL.apply(s));
+	}
+	sb.append("</g>\n<g text-anchor=\"middle\">\n").append(labels).append("</g>\n</svg>\n");
+	Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void text(StringBuilder sb, double x, double y, String s) {
+	sb.append("<text x=\"").append(fmt(x)).append("\" y=\"").append(fmt(y)).append("\">");
+	for (int i = 0; i < s.length(); i++) {
+	    final char c = s.charAt(i);
+	    switch (c) {
+	    case '&' : sb.append("&amp;"); break;
+	    case '<' : sb.append("&lt;"); break;
+	    case '>' : sb.append("&gt;"); break;
+	    default : sb.append(c);
+	    }
+	}
+	sb.append("</text>\n");
+    }
+
+    private static String fmt(double v) {
+	return String.format(Locale.ROOT, "%.1f", v);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import com.google.common.base.Function;
+
+import edu.uci.ics.jung.visualization.BasicVisualizationServer;
+import edu.uci.ics.jung.visualization.renderers.Renderer;
+import edu.uci.ics.jung.visualization.decorators.ConstantDirectionalEdgeValueTransformer;
+
+/** Labels of the graphs, shared by the graph panes and the GraphRenderer. */
+
+final class GraphStyle {
+
+    static final Function<State,String> VERTEX_LABEL = new Function<State,String>(){
+	public String apply(State s) { return s.getGUIName(); }
+    };
+
+    static final Function<Transition,String> EDGE_LABEL = new Function<Transition,String>(){
+	public String apply(Transition t) { return t.getGUIEdgeDescription(); }
+    };
+
+    static final Function<Transition,String> EDGE_TOOLTIP = new Function<Transition,String>(){
+	public String apply(Transition t) { return t.getGUIName(); }
+    };
+
+    /** Position of the edge labels along the edges. */
+    static final double EDGE_LABEL_CLOSENESS = .5;
+
+    private GraphStyle() {}
+
+    static void apply(BasicVisualizationServer<State,Transition> server) {
+	server.getRenderContext().setVertexLabelTransformer(VERTEX_LABEL);
+	server.getRenderer().getVertexLabelRenderer().setPosition(Renderer.VertexLabel.Position.CNTR);
+	server.getRenderContext().setEdgeLabelTransformer(EDGE_LABEL);
+	server.getRenderContext().setEdgeLabelClosenessTransformer(
+		new ConstantDirectionalEdgeValueTransformer<State,Transition>(EDGE_LABEL_CLOSENESS, .4)
+	    );
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+
+/** Draws the transitions graph and the execution graphs of each solution to PNG or SVG files. */
+
+public class ImageExportSink implements SolutionSink {
+
+    private final Path dir;
+    private final String prefix;
+    private final Set<GraphRenderer.Format> formats;
+    private final GraphRenderer renderer = new GraphRenderer();
+
+    public ImageExportSink(Path dir, String prefix, Set<GraphRenderer.Format> formats) {
+	this.dir = dir;
+	this.prefix = prefix;
+	this.formats = formats;
+    }
+
+    public void write(PreparedSolution sol) throws IOException {
+	renderer.submit(sol, dir, prefix, formats);
+    }
+
+    /** Waits for the images of the written solutions. */
+    public void close() throws IOException {
+	renderer.close();
+	if (renderer.getFailureCount() > 0) {
+	    Log.warn(">>> WARNING <<< " + renderer.getFailureCount() + " graphs could not be rendered");
+	}
+    }
+}
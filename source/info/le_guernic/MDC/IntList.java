@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+
+import java.util.Arrays;
+
+/** Growable sequence of unboxed ints. */
+
+class IntList {
+
+    private int[] values;
+    private int size = 0;
+
+    IntList() {
+	this(8);
+    }
+
+    IntList(int capacity) {
+	values = new int[Math.max(1, capacity)];
+    }
+
+    void add(int v) {
+	if (size == values.length) values = Arrays.copyOf(values, 2 * size);
+	values[size++] = v;
+    }
+
+    int get(int i) {
+	if (i >= size) throw new IndexOutOfBoundsException("Index " + i + " >= size " + size);
+	return values[i];
+    }
+
+    void set(int i, int v) {
+	if (i >= size) throw new IndexOutOfBoundsException("Index " + i + " >= size " + size);
+	values[i] = v;
+    }
+
+    int size() {
+	return size;
+    }
+
+    int last() {
+	return values[size - 1];
+    }
+
+    int[] toArray() {
+	return Arrays.copyOf(values, size);
+    }
+}
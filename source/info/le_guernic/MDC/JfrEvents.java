@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.lang.reflect.*;
+
+/**
+ * JFR events of the Metrics registry: "info.le_guernic.MDC.Phase" for each
+ * measured phase and "info.le_guernic.MDC.SolverStatistics" for each SAT
+ * translation. The sources target Java 8, whose API has no jdk.jfr, so the
+ * event types are defined at run time through jdk.jfr.EventFactory when
+ * the JVM provides it; otherwise events are silently dropped.
+ */
+
+final class JfrEvents {
+
+    private static final Object PHASE;  // jdk.jfr.EventFactory, or null
+    private static final Object SOLVER;
+    private static final Method NEW_EVENT, SET, COMMIT, IS_ENABLED;
+
+    static {
+	Object phase = null, solver = null;
+	Method newEvent = null, set = null, commit = null, isEnabled = null;
+	try {
+	    final Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+	    final Class<?> event = Class.forName("jdk.jfr.Event");
+	    newEvent = factory.getMethod("newEvent");
+	    set = event.getMethod("set", int.class, Object.class);
+	    commit = event.getMethod("commit");
+	    isEnabled = event.getMethod("isEnabled");
+	    final Method create = factory.getMethod("create", List.class, List.class);
+	    phase = create.invoke(null, eventAnnotations("info.le_guernic.MDC.Phase", "MDC Phase"),
+				  Arrays.asList(field(String.class, "phase", null),
+						field(String.class, "command", null),
+						field(long.class, "elapsed", "jdk.jfr.Timespan")));
+	    solver = create.invoke(null, eventAnnotations("info.le_guernic.MDC.SolverStatistics", "MDC Solver Statistics"),
+				   Arrays.asList(field(String.class, "command", null),
+						 field(int.class, "primaryVars", null),
+						 field(int.class, "totalVars", null),
+						 field(int.class, "clauses", null),
+						 field(long.class, "solveTime", "jdk.jfr.Timespan")));
+	} catch (ReflectiveOperationException | RuntimeException e) {
+	    // No JFR in this JVM
+	    phase = solver = null;
+	}
+	PHASE = phase;
+	SOLVER = solver;
+	NEW_EVENT = newEvent;
+	SET = set;
+	COMMIT = commit;
+	IS_ENABLED = isEnabled;
+    }
+
+    private JfrEvents() {}
+
+    private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+	final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+	return annotationElement.getConstructor(Class.class, Object.class).newInstance(Class.forName(type), value);
+    }
+
+    private static List<Object> eventAnnotations(String name, String label) throws ReflectiveOperationException {
+	return Arrays.asList(annotation("jdk.jfr.Name", name),
+			     annotation("jdk.jfr.Label", label),
+			     annotation("jdk.jfr.Category", new String[] {"BDM Metamodel Explorer"}));
+    }
+
+    /** Field of an event; Timespan fields are in nanoseconds for phases and milliseconds for solving. */
+    private static Object field(Class<?> type, String name, String timespan) throws ReflectiveOperationException {
+	final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+	final List<Object> annotations = new ArrayList<Object>();
+	if (timespan != null) {
+	    annotations.add(annotation(timespan, name.equals("solveTime") ? "MILLISECONDS" : "NANOSECONDS"));
+	}
+	return valueDescriptor.getConstructor(Class.class, String.class, List.class).newInstance(type, name, annotations);
+    }
+
+    private static void commit(Object factory, Object... values) {
+	if (factory == null) return;
+	try {
+	    final Object event = NEW_EVENT.invoke(factory);
+	    if (!(Boolean) IS_ENABLED.invoke(event)) return;
+	    for (int i = 0; i < values.length; i++) SET.invoke(event, i, values[i]);
+	    COMMIT.invoke(event);
+	} catch (ReflectiveOperationException e) {
+	    // The event is lost, nothing else to do
+	}
+    }
+
+    static void phase(String phase, String command, long nanos) {
+	commit(PHASE, phase, command, nanos);
+    }
+
+    static void solver(String command, int primaryVars, int totalVars, int clauses, long solveMs) {
+	commit(SOLVER, command, primaryVars, totalVars, clauses, solveMs);
+    }
+}
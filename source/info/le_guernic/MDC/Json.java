@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+
+import java.util.*;
+
+/**
+ * Minimal JSON helpers, to avoid depending on a JSON library. Parsed
+ * objects are Maps, arrays Lists, numbers Longs or Doubles.
+ */
+
+public class Json {
+
+    private Json() {}
+
+    /** Appends the JSON string literal of s (or null) to sb. */
+    public static StringBuilder quote(StringBuilder sb, String s) {
+	if (s == null) return sb.append("null");
+	sb.append('"');
+	for (int i = 0; i < s.length(); i++) {
+	    final char c = s.charAt(i);
+	    switch (c) {
+	    case '"' : sb.append("\\\""); break;
+	    case '\\' : sb.append("\\\\"); break;
+	    case '\n' : sb.append("\\n"); break;
+	    case '\r' : sb.append("\\r"); break;
+	    case '\t' : sb.append("\\t"); break;
+	    default :
+		if (c < 0x20) {
+		    sb.append(String.format("\\u%04x", (int) c));
+		} else {
+		    sb.append(c);
+		}
+	    }
+	}
+	return sb.append('"');
+    }
+
+    /** Appends a JSON array of string literals to sb. */
+    public static StringBuilder quoteAll(StringBuilder sb, Iterable<String> strings) {
+	sb.append('[');
+	boolean first = true;
+	for (String s:strings) {
+	    if (!first) sb.append(',');
+	    quote(sb, s);
+	    first = false;
+	}
+	return sb.append(']');
+    }
+
+    // PARSING
+
+    /** Parses a JSON document, throwing an IllegalArgumentException if it is malformed. */
+    public static Object parse(String text) {
+	final Parser p = new Parser(text);
+	final Object value = p.value();
+	p.skipSpaces();
+	if (p.pos != text.length()) throw p.error("trailing characters");
+	return value;
+    }
+
+    /** Parses a JSON object. */
+    @SuppressWarnings("unchecked")
+    public static Map<String,Object> parseObject(String text) {
+	final Object value = parse(text);
+	if (!(value instanceof Map)) throw new IllegalArgumentException("not a JSON object");
+	return (Map<String,Object>) value;
+    }
+
+    private static class Parser {
+	private final String text;
+	int pos = 0;
+
+	Parser(String text) {
+	    this.text = text;
+	}
+
+	IllegalArgumentException error(String msg) {
+	    return new IllegalArgumentException("JSON: " + msg + " at " + pos);
+	}
+
+	void skipSpaces() {
+	    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+	}
+
+	private void expect(String word) {
+	    if (!text.startsWith(word, pos)) throw error("expected " + word);
+	    pos += word.length();
+	}
+
+	Object value() {
+	    skipSpaces();
+	    if (pos >= text.length()) throw error("unexpected end");
+	    final char c = text.charAt(pos);
+	    switch (c) {
+	    case '{' : return object();
+	    case '[' : return array();
+	    case '"' : return string();
+	    case 't' : expect("true"); return Boolean.TRUE;
+	    case 'f' : expect("false"); return Boolean.FALSE;
+	    case 'n' : expect("null"); return null;
+	    default :
+		if (c == '-' || (c >= '0' && c <= '9')) return number();
+		throw error("unexpected '" + c + "'");
+	    }
+	}
+
+	private Map<String,Object> object() {
+	    final Map<String,Object> map = new LinkedHashMap<String,Object>();
+	    pos++;
+	    skipSpaces();
+	    if (pos < text.length() && text.charAt(pos) == '}') {
+		pos++;
+		return map;
+	    }
+	    while (true) {
+		skipSpaces();
+		if (pos >= text.length() || text.charAt(pos) != '"') throw error("expected a key");
+		final String key = string();
+		skipSpaces();
+		expect(":");
+		map.put(key, value());
+		skipSpaces();
+		if (pos >= text.length()) throw error("unexpected end");
+		if (text.charAt(pos++) == '}') return map;
+		if (text.charAt(pos - 1) != ',') throw error("expected , or }");
+	    }
+	}
+
+	private List<Object> array() {
+	    final List<Object> list = new ArrayList<Object>();
+	    pos++;
+	    skipSpaces();
+	    if (pos < text.length() && text.charAt(pos) == ']') {
+		pos++;
+		return list;
+	    }
+	    while (true) {
+		list.add(value());
+		skipSpaces();
+		if (pos >= text.length()) throw error("unexpected end");
+		if (text.charAt(pos++) == ']') return list;
+		if (text.charAt(pos - 1) != ',') throw error("expected , or ]");
+	    }
+	}
+
+	private String string() {
+	    final StringBuilder sb = new StringBuilder();
+	    pos++;
+	    while (true) {
+		if (pos >= text.length()) throw error("unterminated string");
+		final char c = text.charAt(pos++);
+		if (c == '"') return sb.toString();
+		if (c != '\\') {
+		    sb.append(c);
+		    continue;
+		}
+		if (pos >= text.length()) throw error("unterminated string");
+		final char e = text.charAt(pos++);
+		switch (e) {
+		case 'n' : sb.append('\n'); break;
+		case 'r' : sb.append('\r'); break;
+		case 't' : sb.append('\t'); break;
+		case 'b' : sb.append('\b'); break;
+		case 'f' : sb.append('\f'); break;
+		case 'u' :
+		    if (pos + 4 > text.length()) throw error("bad escape");
+		    try {
+			sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+		    } catch (NumberFormatException ex) {
+			throw error("bad escape");
+		    }
+		    pos += 4;
+		    break;
+		default : sb.append(e);
+		}
+	    }
+	}
+
+	private Object number() {
+	    final int start = pos;
+	    boolean integral = true;
+	    if (text.charAt(pos) == '-') pos++;
+	    while (pos < text.length()) {
+		final char c = text.charAt(pos);
+		if (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-') {
+		    integral = false;
+		} else if (c < '0' || c > '9') {
+		    break;
+		}
+		pos++;
+	    }
+	    final String s = text.substring(start, pos);
+	    try {
+		return integral ? (Object) Long.valueOf(s) : (Object) Double.valueOf(s);
+	    } catch (NumberFormatException e) {
+		throw error("bad number " + s);
+	    }
+	}
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.*;
+
+/** Writes each solution as a JSON document. */
+
+public class JsonExportSink implements SolutionSink {
+
+    private final Path dir;
+    private final String prefix;
+
+    public JsonExportSink(Path dir, String prefix) {
+	this.dir = dir;
+	this.prefix = prefix;
+    }
+
+    public void write(PreparedSolution sol) throws IOException {
+	final Path p = ExportPipeline.fileFor(dir, prefix, sol.getIndex(), ".json");
+	try (BufferedWriter writer = Files.newBufferedWriter(p, StandardCharsets.UTF_8)) {
+	    writer.write(toJson(sol.getIndex(), sol.getMDCSolution()));
+	    writer.write('\n');
+	}
+    }
+
+    public void close() {}
+
+    /** JSON form of a solution, also used by other tools reading solutions. */
+    public static String toJson(int index, MDCSolution mdc) {
+	final StringBuilder sb = new StringBuilder(1024);
+	sb.append("{\"index\":").append(index);
+	sb.append(",\"states\":[");
+	String sep = "";
+	for (State s:mdc.getStates()) {
+	    sb.append(sep);
+	    Json.quote(sb, s.getName());
+	    sep = ",";
+	}
+	sb.append("],\"labels\":[");
+	sep = "";
+	for (Label l:mdc.getLabels()) {
+	    sb.append(sep).append("{\"name\":");
+	    Json.quote(sb, l.getName());
+	    sb.append(",\"empty\":").append(l.isEmpty()).append('}');
+	    sep = ",";
+	}
+	sb.append("],\"transitions\":[");
+	sep = "";
+	for (Transition t:mdc.getTransitions()) {
+	    sb.append(sep).append("{\"name\":");
+	    Json.quote(sb, t.getName());
+	    sb.append(",\"pre\":");
+	    Json.quote(sb, (t.getPrestate() == null) ? null : t.getPrestate().getName());
+	    sb.append(",\"post\":");
+	    Json.quote(sb, (t.getPoststate() == null) ? null : t.getPoststate().getName());
+	    sb.append(",\"trigger\":");
+	    Json.quote(sb, (t.getTrigger() == null) ? null : t.getTrigger().getName());
+	    sb.append(",\"effect\":");
+	    Json.quote(sb, (t.getEffect() == null) ? null : t.getEffect().getName());
+	    sb.append('}');
+	    sep = ",";
+	}
+	sb.append("],\"executions\":[");
+	sep = "";
+	for (Execution e:mdc.getExecutions()) {
+	    sb.append(sep).append("{\"name\":");
+	    Json.quote(sb, e.getName());
+	    sb.append(",\"initialState\":");
+	    Json.quote(sb, (e.getInitialState() == null) ? null : e.getInitialState().getName());
+	    sb.append(",\"transitions\":");
+	    final List<String> names = new ArrayList<String>();
+	    for (Transition t:e.getTransitions()) names.add(t.getName());
+	    Json.quoteAll(sb, names);
+	    sb.append('}');
+	    sep = ",";
+	}
+	sb.append("],\"traces\":[");
+	sep = "";
+	for (Trace t:mdc.getTraces()) {
+	    sb.append(sep).append("{\"name\":");
+	    Json.quote(sb, t.getName());
+	    sb.append(",\"labels\":");
+	    final List<String> names = new ArrayList<String>();
+	    for (Label l:t.getLabelsSequence()) names.add(l.getName());
+	    Json.quoteAll(sb, names);
+	    sb.append('}');
+	    sep = ",";
+	}
+	sb.append("],\"variables\":{");
+	sep = "";
+	for (Map.Entry<String,Set<String>> v:mdc.getVariablesMapping().entrySet()) {
+	    sb.append(sep);
+	    Json.quote(sb, v.getKey()).append(':');
+	    Json.quoteAll(sb, v.getValue());
+	    sep = ",";
+	}
+	sb.append("}}");
+	return sb.toString();
+    }
+}
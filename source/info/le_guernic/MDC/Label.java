@@ -33,28 +33,44 @@ package info.le_guernic.MDC;
 
 // import java.util.*;
 
+/** View of a label atom of an MDCSolution. */
+
 public class Label {
-    
-    private String name = null;
-    private boolean isEmpty = false;
 
-    protected Label(String name) {
-	this.name = name;
+    final MDCSolution owner;
+    final int id;
+
+    protected Label(MDCSolution owner, int id) {
+	this.owner = owner;
+	this.id = id;
+    }
+
+    /** Dense identifier of the label in its solution. */
+    public int getId() {
+	return id;
     }
 
     public void setEmpty(boolean isEmpty) {
-	this.isEmpty = isEmpty;
+	owner.setEmptyLabel(id, isEmpty);
     }
 
     public boolean isEmpty() {
-	return this.isEmpty;
+	return owner.isEmptyLabel(id);
+    }
+
+    public boolean isNoLabel() {
+	return owner.isNoLabel(id);
+    }
+
+    public String getName() {
+	return owner.labelName(id);
     }
 
     public String getDotName() {
-	if (isEmpty) {
+	if (isEmpty()) {
 	    return "ε";
 	} else {
-	    return name.replace("Label$","L");
+	    return getName().replace("Label$","L");
 	}
     }
 
@@ -63,10 +79,10 @@ public class Label {
     }
 
     public String toString() {
-	if (isEmpty) {
+	if (isEmpty()) {
 	    return "ε";
 	} else {
-	    return name;
+	    return getName();
 	}
-    }	
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.awt.Dimension;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+
+/**
+ * Layout algorithms of the graph panes. The property "mdc.layout" forces
+ * one of them ("fr" or "barneshut"); by default graphs with at least
+ * "mdc.layout.barnesHutThreshold" vertices (150) use Barnes-Hut.
+ */
+
+enum LayoutAlgorithm {
+    FR,
+    BARNES_HUT;
+
+    private static final int THRESHOLD = Integer.getInteger("mdc.layout.barnesHutThreshold", 150);
+
+    static LayoutAlgorithm forGraph(Graph<State,Transition> graph) {
+	final String forced = System.getProperty("mdc.layout", "auto");
+	if (forced.equalsIgnoreCase("fr")) return FR;
+	if (forced.equalsIgnoreCase("barneshut")) return BARNES_HUT;
+	return (graph.getVertexCount() >= THRESHOLD) ? BARNES_HUT : FR;
+    }
+
+    LayoutAlgorithm other() {
+	return (this == FR) ? BARNES_HUT : FR;
+    }
+
+    AbstractLayout<State,Transition> create(Graph<State,Transition> graph, Dimension dim, LayoutCache cache, String graphName) {
+	switch (this) {
+	case BARNES_HUT: return new BarnesHutLayout(graph, dim, cache, graphName);
+	default: return new WarmStartLayout(graph, dim, cache, graphName);
+	}
+    }
+}
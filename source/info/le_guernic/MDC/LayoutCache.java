@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.awt.geom.Point2D;
+
+import edu.uci.ics.jung.algorithms.layout.Layout;
+
+/**
+ * Last known positions of the vertices of the displayed graphs, keyed by
+ * graph name ("transitions" or an execution name) and by state name, so
+ * that the layouts of the next solutions can start from them. Positions can
+ * be saved to a properties file, one per model and command.
+ */
+
+public class LayoutCache {
+
+    public static final String TRANSITIONS = "transitions";
+
+    private final Map<String,Map<String,Point2D>> positions = new HashMap<String,Map<String,Point2D>>();
+    private final Path file;
+
+    /** A cache kept in memory only. */
+    public LayoutCache() {
+	this.file = null;
+    }
+
+    /** A cache saved to the given file, and initialized from it if it exists. */
+    public LayoutCache(Path file) {
+	this.file = file;
+	if (file != null && Files.isRegularFile(file)) load();
+    }
+
+    /** The cache of the layouts of a command, in the "layouts" directory of the solution cache. */
+    public static LayoutCache forKey(SolutionCache cache, String key) {
+	if (cache == null || key == null) return new LayoutCache();
+	return new LayoutCache(cache.layoutPath(key));
+    }
+
+    public synchronized Point2D get(String graph, String state) {
+	final Map<String,Point2D> g = positions.get(graph);
+	final Point2D p = (g == null) ? null : g.get(state);
+	return (p == null) ? null : new Point2D.Double(p.getX(), p.getY());
+    }
+
+    /** Records the current positions of all the vertices of the layout. */
+    public synchronized void record(String graph, Layout<State,Transition> layout) {
+	Map<String,Point2D> g = positions.get(graph);
+	if (g == null) {
+	    g = new HashMap<String,Point2D>();
+	    positions.put(graph, g);
+	}
+	for (State s:layout.getGraph().getVertices()) {
+	    final Point2D p = layout.apply(s);
+	    g.put(s.getName(), new Point2D.Double(p.getX(), p.getY()));
+	}
+    }
+
+    private void load() {
+	final Properties props = new Properties();
+	try (Reader in = Files.newBufferedReader(file)) {
+	    props.load(in);
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not read the layouts of " + file + ": " + e);
+	    return;
+	}
+	for (String key:props.stringPropertyNames()) {
+	    final int sep = key.lastIndexOf('|');
+	    final String[] xy = props.getProperty(key).split(" ");
+	    if (sep < 0 || xy.length != 2) continue;
+	    try {
+		final Point2D p = new Point2D.Double(Double.parseDouble(xy[0]), Double.parseDouble(xy[1]));
+		Map<String,Point2D> g = positions.get(key.substring(0, sep));
+		if (g == null) {
+		    g = new HashMap<String,Point2D>();
+		    positions.put(key.substring(0, sep), g);
+		}
+		g.put(key.substring(sep + 1), p);
+	    } catch (NumberFormatException e) {
+		Log.warn(">>> WARNING <<< Ignoring layout entry " + key);
+	    }
+	}
+    }
+
+    /** Writes the positions to the file of the cache, if any. */
+    public synchronized void save() {
+	if (file == null) return;
+	final Properties props = new Properties();
+	for (Map.Entry<String,Map<String,Point2D>> g:positions.entrySet()) {
+	    for (Map.Entry<String,Point2D> e:g.getValue().entrySet()) {
+		props.setProperty(g.getKey() + "|" + e.getKey(), e.getValue().getX() + " " + e.getValue().getY());
+	    }
+	}
+	try {
+	    Files.createDirectories(file.getParent());
+	    final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+	    try (Writer out = Files.newBufferedWriter(tmp)) {
+		props.store(out, "BDM Metamodel Explorer layouts");
+	    }
+	    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not save the layouts to " + file + ": " + e);
+	}
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.awt.Dimension;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.algorithms.util.IterativeContext;
+
+/**
+ * Lays out the graphs of solutions on a fork-join pool, as soon as the
+ * solutions are extracted. The positions are kept by the solution, and the
+ * panes built or patched from them start laid out instead of relaxing
+ * their layouts while being shown. The transitions graph, always shown, is
+ * laid out first; then only the executions whose panes are built, and the
+ * first one, selected when a solution is shown anew, are laid out in the
+ * background.
+ *
+ * Layouts start from the positions of the layout cache of the GUI and are
+ * computed for the last sizes of its panes. The number of threads is read
+ * from "mdc.layout.threads"; "mdc.layout.precompute=false" disables it.
+ */
+
+public final class LayoutPrecomputer {
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("mdc.layout.precompute"));
+    private static final int THREADS = Integer.getInteger("mdc.layout.threads", Runtime.getRuntime().availableProcessors());
+    private static final int MAX_STEPS = 10000;
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ForkJoinPool pool = new ForkJoinPool(
+	Math.max(1, THREADS),
+	new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+	    public ForkJoinWorkerThread newThread(ForkJoinPool p) {
+		final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+		t.setName("MDC-layout-" + threadCounter.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	    }
+	}, null, false);
+
+    private volatile LayoutCache seed = new LayoutCache();
+    private volatile Dimension transitionsSize = GraphRenderer.DEFAULT_SIZE;
+    private volatile Dimension executionsSize = GraphRenderer.DEFAULT_SIZE;
+    private volatile Set<String> shownExecutions = Collections.emptySet();
+
+    /** Positions the next layouts start from. */
+    public void setSeed(LayoutCache cache) {
+	seed = cache;
+    }
+
+    public void setTransitionsSize(Dimension dim) {
+	transitionsSize = new Dimension(dim);
+    }
+
+    public void setExecutionsSize(Dimension dim) {
+	executionsSize = new Dimension(dim);
+    }
+
+    /** GUI names of the executions whose panes are built. */
+    public void setShownExecutions(Collection<String> names) {
+	shownExecutions = new HashSet<String>(names);
+    }
+
+    /** Starts laying out the graphs of the solution, unless it is already done, and returns at once. */
+    public void submit(final PreparedSolution sol) {
+	final LayoutCache from = seed;
+	final Dimension tSize = transitionsSize;
+	final Dimension eSize = executionsSize;
+	final Set<String> shown = shownExecutions;
+	synchronized (sol) {
+	    if (sol.hasLayouts()) return;
+	    sol.setLayouts(pool.submit(() -> layOut(sol, from, tSize, eSize, shown)));
+	}
+    }
+
+    /**
+     * Lays out the transitions graph and returns its positions, to which
+     * the executions to lay out are added once done.
+     */
+    private static LayoutCache layOut(PreparedSolution sol, LayoutCache from, Dimension tSize, Dimension eSize, Set<String> shown) {
+	final long start = System.nanoTime();
+	final LayoutCache result = new LayoutCache();
+	layOut(sol.getTransitionsGraph(), tSize, from, LayoutCache.TRANSITIONS, result);
+	Log.debug(() -> "Solution #" + sol.getIndex() + ": transitions laid out in " + ((System.nanoTime() - start) / 1000000) + " ms");
+	boolean first = true;
+	for (Execution exec:sol.getMDCSolution().getExecutions()) {
+	    if (first || shown.contains(exec.getGUIName())) {
+		ForkJoinTask.adapt(() -> {
+			try {
+			    layOut(sol.getExecutionGraph(exec), eSize, from, exec.getGUIName(), result);
+			} catch (RuntimeException e) {
+			    Log.warn(">>> WARNING <<< Layout of " + exec.getGUIName() + " of solution #" + sol.getIndex() + " failed: " + e);
+			}
+		    }).fork();
+	    }
+	    first = false;
+	}
+	return result;
+    }
+
+    private static Object layOut(Graph<State,Transition> graph, Dimension size, LayoutCache from, String graphName, LayoutCache result) {
+	result.record(graphName, relax(LayoutAlgorithm.forGraph(graph).create(graph, size, from, graphName)));
+	return null;
+    }
+
+    /** Runs the layout algorithm to completion. */
+    static AbstractLayout<State,Transition> relax(AbstractLayout<State,Transition> layout) {
+	layout.initialize();
+	if (layout instanceof IterativeContext) {
+	    final IterativeContext it = (IterativeContext) layout;
+	    for (int i = 0; i < MAX_STEPS && !it.done(); i++) it.step();
+	}
+	return layout;
+    }
+
+    /** Whether the layouts hold a position for every vertex of the graph. */
+    static boolean placesAll(LayoutCache layouts, String graphName, Graph<State,Transition> graph) {
+	if (layouts == null) return false;
+	for (State s:graph.getVertices()) {
+	    if (layouts.get(graphName, s.getName()) == null) return false;
+	}
+	return true;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Context;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.MultiLayerTransformer;
+import edu.uci.ics.jung.visualization.RenderContext;
+import edu.uci.ics.jung.visualization.VisualizationServer;
+import edu.uci.ics.jung.visualization.VisualizationViewer;
+import edu.uci.ics.jung.visualization.renderers.EdgeArrowRenderingSupport;
+import edu.uci.ics.jung.visualization.renderers.Renderer;
+
+/**
+ * Level of detail of a graph pane. Below zoom thresholds edge labels,
+ * then arrows, then vertex labels are not drawn; elements out of the
+ * view are not drawn at all, nor are their labels built; picking goes
+ * through a SpatialPickSupport.
+ * The repaint time is recorded in the Metrics and, with the property
+ * "mdc.gui.showRepaintTime", shown in the corner of the pane with the
+ * number of elements drawn.
+ *
+ * The thresholds are the properties "mdc.gui.edgeLabelZoom" (0.6),
+ * "mdc.gui.arrowZoom" (0.4) and "mdc.gui.vertexLabelZoom" (0.3).
+ */
+
+class LevelOfDetail {
+
+    private static final double EDGE_LABEL_ZOOM = zoomProperty("mdc.gui.edgeLabelZoom", 0.6);
+    private static final double ARROW_ZOOM = zoomProperty("mdc.gui.arrowZoom", 0.4);
+    private static final double VERTEX_LABEL_ZOOM = zoomProperty("mdc.gui.vertexLabelZoom", 0.3);
+    private static final boolean SHOW_REPAINT_TIME = Boolean.getBoolean("mdc.gui.showRepaintTime");
+    // Room left around the view for the labels and curves of elements just out of it, in pixels
+    private static final double VIEW_MARGIN = 80;
+
+    private final VisualizationViewer<State,Transition> viewer;
+    private final SpatialPickSupport pickSupport;
+    // Zoom and visible area of the layout, updated before each repaint
+    private double zoom = 1;
+    private Rectangle2D visible = null;
+    private int drawnVertices, drawnEdges;
+    private long paintStart;
+    private double lastRepaintMs;
+
+    private static double zoomProperty(String name, double defaultValue) {
+	try {
+	    return Double.parseDouble(System.getProperty(name, Double.toString(defaultValue)));
+	} catch (NumberFormatException e) {
+	    Log.warn(">>> WARNING <<< Invalid value of " + name + ", using " + defaultValue);
+	    return defaultValue;
+	}
+    }
+
+    private LevelOfDetail(VisualizationViewer<State,Transition> viewer) {
+	this.viewer = viewer;
+	this.pickSupport = new SpatialPickSupport(viewer);
+    }
+
+    /** Wraps the labels and arrows set on the viewer with the level of detail and installs the culling and picking. */
+    static LevelOfDetail install(VisualizationViewer<State,Transition> viewer) {
+	final LevelOfDetail lod = new LevelOfDetail(viewer);
+	final RenderContext<State,Transition> rc = viewer.getRenderContext();
+
+	// A null label is not drawn
+	final Function<? super State,String> vertexLabel = rc.getVertexLabelTransformer();
+	rc.setVertexLabelTransformer(new Function<State,String>() {
+		public String apply(State s) {
+		    return (lod.zoom < VERTEX_LABEL_ZOOM || !lod.isVisible(s)) ? null : vertexLabel.apply(s);
+		}
+	    });
+	final Function<? super Transition,String> edgeLabel = rc.getEdgeLabelTransformer();
+	rc.setEdgeLabelTransformer(new Function<Transition,String>() {
+		public String apply(Transition t) {
+		    return (lod.zoom < EDGE_LABEL_ZOOM || !lod.isVisible(t)) ? null : edgeLabel.apply(t);
+		}
+	    });
+	final Predicate<Context<Graph<State,Transition>,Transition>> arrow = rc.getEdgeArrowPredicate();
+	rc.setEdgeArrowPredicate(new Predicate<Context<Graph<State,Transition>,Transition>>() {
+		public boolean apply(Context<Graph<State,Transition>,Transition> c) { return lod.zoom >= ARROW_ZOOM && arrow.apply(c); }
+	    });
+	// Culled in the renderers rather than with include predicates, which
+	// would also drop the edges between a shown and a hidden vertex
+	final Renderer<State,Transition> renderer = viewer.getRenderer();
+	final Renderer.Vertex<State,Transition> vertexRenderer = renderer.getVertexRenderer();
+	renderer.setVertexRenderer(new Renderer.Vertex<State,Transition>() {
+		public void paintVertex(RenderContext<State,Transition> rc, Layout<State,Transition> layout, State s) {
+		    if (lod.isVisible(s)) {
+			lod.drawnVertices++;
+			vertexRenderer.paintVertex(rc, layout, s);
+		    }
+		}
+	    });
+	final Renderer.Edge<State,Transition> edgeRenderer = renderer.getEdgeRenderer();
+	renderer.setEdgeRenderer(new Renderer.Edge<State,Transition>() {
+		public void paintEdge(RenderContext<State,Transition> rc, Layout<State,Transition> layout, Transition t) {
+		    if (lod.isVisible(t)) {
+			lod.drawnEdges++;
+			edgeRenderer.paintEdge(rc, layout, t);
+		    }
+		}
+		public EdgeArrowRenderingSupport<State,Transition> getEdgeArrowRenderingSupport() {
+		    return edgeRenderer.getEdgeArrowRenderingSupport();
+		}
+		public void setEdgeArrowRenderingSupport(EdgeArrowRenderingSupport<State,Transition> support) {
+		    edgeRenderer.setEdgeArrowRenderingSupport(support);
+		}
+	    });
+
+	viewer.setPickSupport(lod.pickSupport);
+	// The grid of the picking follows the vertices moved by the layout or dragged
+	viewer.getModel().addChangeListener((e) -> lod.pickSupport.invalidate());
+	viewer.addMouseMotionListener(new MouseAdapter() {
+		@Override public void mouseDragged(MouseEvent e) { lod.pickSupport.invalidate(); }
+	    });
+
+	viewer.prependPreRenderPaintable(new VisualizationServer.Paintable() {
+		public void paint(Graphics g) { lod.frameStarted(); }
+		public boolean useTransform() { return false; }
+	    });
+	viewer.addPostRenderPaintable(new VisualizationServer.Paintable() {
+		public void paint(Graphics g) { lod.frameDone(g); }
+		public boolean useTransform() { return false; }
+	    });
+	return lod;
+    }
+
+    /** Called when vertices have been moved or the graph patched. */
+    void invalidate() {
+	pickSupport.invalidate();
+    }
+
+    private void frameStarted() {
+	paintStart = System.nanoTime();
+	final MultiLayerTransformer mlt = viewer.getRenderContext().getMultiLayerTransformer();
+	zoom = mlt.getTransformer(Layer.LAYOUT).getScale() * mlt.getTransformer(Layer.VIEW).getScale();
+	final Rectangle bounds = viewer.getBounds();
+	final Rectangle2D view = new Rectangle2D.Double(-VIEW_MARGIN, -VIEW_MARGIN,
+						       bounds.getWidth() + 2 * VIEW_MARGIN, bounds.getHeight() + 2 * VIEW_MARGIN);
+	visible = mlt.inverseTransform(view).getBounds2D();
+	drawnVertices = 0;
+	drawnEdges = 0;
+    }
+
+    private void frameDone(Graphics g) {
+	final long elapsed = System.nanoTime() - paintStart;
+	Metrics.record(Metrics.Phase.REPAINT, elapsed);
+	lastRepaintMs = elapsed / 1e6;
+	if (SHOW_REPAINT_TIME) {
+	    final Graph<State,Transition> graph = viewer.getGraphLayout().getGraph();
+	    g.setColor(Color.DARK_GRAY);
+	    g.drawString(String.format("repaint %.1f ms, zoom %.2f, %d/%d vertices, %d/%d edges drawn", lastRepaintMs, zoom,
+				       drawnVertices, graph.getVertexCount(), drawnEdges, graph.getEdgeCount()), 5, 15);
+	}
+    }
+
+    double getLastRepaintMs() {
+	return lastRepaintMs;
+    }
+
+    private boolean isVisible(State v) {
+	final Point2D p = viewer.getGraphLayout().apply(v);
+	return visible == null || p == null || visible.contains(p);
+    }
+
+    private boolean isVisible(Transition t) {
+	if (visible == null) return true;
+	final Layout<State,Transition> layout = viewer.getGraphLayout();
+	final Graph<State,Transition> graph = layout.getGraph();
+	final Point2D p = layout.apply(graph.getSource(t));
+	final Point2D q = layout.apply(graph.getDest(t));
+	if (p == null || q == null) return true;
+	// Straight segment between the ends, the view margin covers the curves
+	return visible.intersectsLine(p.getX(), p.getY(), q.getX(), q.getY()) || visible.contains(p);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * Leveled logging. Messages below the threshold are not built: the
+ * Supplier variants only call their supplier if the level is enabled.
+ * Enabled messages are put in a bounded ring buffer that a daemon thread
+ * drains to the appenders (the console by default), so logging never
+ * waits for the console. When the buffer is full the oldest messages are
+ * overwritten, and the number of dropped messages is logged.
+ *
+ * Configured with the system properties "mdc.log.level" (one of ERROR,
+ * WARN, INFO, DEBUG or TRACE, INFO by default), "mdc.log.bufferSize" and
+ * "mdc.log.async" (false writes messages on the calling thread).
+ */
+
+public final class Log {
+
+    public enum Level { ERROR, WARN, INFO, DEBUG, TRACE }
+
+    /** A logged message. */
+    public static final class Record {
+	public final Level level;
+	public final String message;
+
+	Record(Level level, String message) {
+	    this.level = level;
+	    this.message = message;
+	}
+    }
+
+    /** Receives the drained messages, in order, on the logging thread. */
+    public interface Appender {
+	void append(List<Record> records);
+    }
+
+    private static final Appender CONSOLE = (records) -> {
+	final StringBuilder sb = new StringBuilder();
+	for (Record r:records) sb.append(r.message).append(System.lineSeparator());
+	System.out.print(sb);
+	System.out.flush();
+    };
+
+    private static volatile Level threshold = parseLevel(System.getProperty("mdc.log.level", "INFO"));
+    private static final boolean ASYNC = Boolean.parseBoolean(System.getProperty("mdc.log.async", "true"));
+    private static final List<Appender> appenders = new CopyOnWriteArrayList<Appender>(Collections.singletonList(CONSOLE));
+
+    // Ring buffer, guarded by itself
+    private static final Record[] ring = new Record[Math.max(16, Integer.getInteger("mdc.log.bufferSize", 8192))];
+    private static int head = 0;
+    private static int size = 0;
+    private static long dropped = 0;
+    private static boolean draining = false;
+
+    static {
+	if (ASYNC) {
+	    final Thread writer = new Thread(Log::drainLoop, "MDC log writer");
+	    writer.setDaemon(true);
+	    writer.start();
+	    Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "MDC log flush"));
+	}
+    }
+
+    private Log() {}
+
+    private static Level parseLevel(String name) {
+	try {
+	    return Level.valueOf(name.trim().toUpperCase(Locale.ROOT));
+	} catch (IllegalArgumentException e) {
+	    // The log is not set up yet
+	    System.out.println(">>> WARNING <<< Unknown log level '" + name + "', using INFO");
+	    return Level.INFO;
+	}
+    }
+
+    public static Level getLevel() {
+	return threshold;
+    }
+
+    public static void setLevel(Level level) {
+	threshold = level;
+    }
+
+    public static boolean isEnabled(Level level) {
+	return level.compareTo(threshold) <= 0;
+    }
+
+    public static void addAppender(Appender a) {
+	appenders.add(a);
+    }
+
+    public static void removeAppender(Appender a) {
+	appenders.remove(a);
+    }
+
+    // LOGGING
+
+    public static void log(Level level, String message) {
+	if (!isEnabled(level)) return;
+	final Record r = new Record(level, message);
+	if (!ASYNC) {
+	    dispatch(Collections.singletonList(r));
+	    return;
+	}
+	synchronized (ring) {
+	    if (size == ring.length) {
+		// Overwrite the oldest message
+		ring[head] = r;
+		head = (head + 1) % ring.length;
+		dropped++;
+	    } else {
+		ring[(head + size) % ring.length] = r;
+		size++;
+	    }
+	    ring.notifyAll();
+	}
+    }
+
+    public static void log(Level level, Supplier<String> message) {
+	if (isEnabled(level)) log(level, message.get());
+    }
+
+    public static void error(String message) { log(Level.ERROR, message); }
+    public static void warn(String message) { log(Level.WARN, message); }
+    public static void info(String message) { log(Level.INFO, message); }
+    public static void debug(String message) { log(Level.DEBUG, message); }
+    public static void trace(String message) { log(Level.TRACE, message); }
+
+    public static void error(Supplier<String> message) { log(Level.ERROR, message); }
+    public static void warn(Supplier<String> message) { log(Level.WARN, message); }
+    public static void info(Supplier<String> message) { log(Level.INFO, message); }
+    public static void debug(Supplier<String> message) { log(Level.DEBUG, message); }
+    public static void trace(Supplier<String> message) { log(Level.TRACE, message); }
+
+    // DRAINING
+
+    private static void drainLoop() {
+	while (true) {
+	    final List<Record> batch = new ArrayList<Record>();
+	    synchronized (ring) {
+		while (size == 0) {
+		    draining = false;
+		    ring.notifyAll();
+		    try {
+			ring.wait();
+		    } catch (InterruptedException e) {
+			return;
+		    }
+		}
+		draining = true;
+		if (dropped > 0) {
+		    batch.add(new Record(Level.WARN, ">>> WARNING <<< " + dropped + " log messages dropped"));
+		    dropped = 0;
+		}
+		for (; size > 0; size--) {
+		    batch.add(ring[head]);
+		    ring[head] = null;
+		    head = (head + 1) % ring.length;
+		}
+	    }
+	    dispatch(batch);
+	}
+    }
+
+    private static void dispatch(List<Record> records) {
+	for (Appender a:appenders) {
+	    try {
+		a.append(records);
+	    } catch (RuntimeException e) {
+		System.err.println("Log appender failed: " + e);
+	    }
+	}
+    }
+
+    /** Waits (at most a second) until the messages logged so far have been written. */
+    public static void flush() {
+	if (!ASYNC) return;
+	final long deadline = System.currentTimeMillis() + 1000;
+	synchronized (ring) {
+	    while (size > 0 || draining) {
+		final long left = deadline - System.currentTimeMillis();
+		if (left <= 0) return;
+		try {
+		    ring.wait(left);
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		    return;
+		}
+	    }
+	}
+    }
+}
@@ -34,16 +34,20 @@ import info.le_guernic.MDC.State;
 import info.le_guernic.MDC.Transition;
 
 import java.awt.Dimension;
+import java.awt.geom.Point2D;
 import java.awt.Component;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyListener;
-
-import com.google.common.base.Function;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.HashSet;
+import java.util.Set;
 
 import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.algorithms.layout.Layout;
-import edu.uci.ics.jung.algorithms.layout.FRLayout;
+import edu.uci.ics.jung.algorithms.layout.AbstractLayout;
+import edu.uci.ics.jung.algorithms.layout.util.Relaxer;
 import edu.uci.ics.jung.visualization.VisualizationViewer;
 import edu.uci.ics.jung.visualization.GraphZoomScrollPane;
 import edu.uci.ics.jung.visualization.Layer;
@@ -51,46 +55,71 @@ import edu.uci.ics.jung.visualization.control.AbstractModalGraphMouse;
 import edu.uci.ics.jung.visualization.control.DefaultModalGraphMouse;
 import edu.uci.ics.jung.visualization.control.ScalingControl;
 import edu.uci.ics.jung.visualization.control.CrossoverScalingControl;
-import edu.uci.ics.jung.visualization.renderers.Renderer;
-import edu.uci.ics.jung.visualization.decorators.ConstantDirectionalEdgeValueTransformer;
 
 class MDCGraphPane extends GraphZoomScrollPane {
 
+    private VisualizationViewer<State,Transition> shownViewer = null;
+    private AbstractLayout<State,Transition> layout;
+    private LayoutAlgorithm algorithm;
+    private final LayoutCache layoutCache;
+    private final String graphName;
+    private LevelOfDetail levelOfDetail = null;
+
     protected MDCGraphPane(Graph<State,Transition> graph, Dimension dim) {
+	this(graph, dim, null, null);
+    }
+
+    /** A pane whose layout starts from, and is recorded into, the positions of the cache under the given graph name. */
+    protected MDCGraphPane(Graph<State,Transition> graph, Dimension dim, LayoutCache cache, String graphName) {
+	this(LayoutAlgorithm.forGraph(graph), graph, dim, cache, graphName);
+    }
+
+    /**
+     * A pane whose layout starts from the positions computed ahead in the
+     * given layouts if they place all the vertices, from the cache otherwise.
+     * The pane draws a copy of the graph, so that patching it leaves the
+     * graph of the solution it was taken from unchanged.
+     */
+    protected MDCGraphPane(Graph<State,Transition> graph, Dimension dim, LayoutCache cache, String graphName, LayoutCache precomputed) {
+	this(LayoutAlgorithm.forGraph(graph), GraphGenerator.copyGraph(graph), dim, LayoutPrecomputer.placesAll(precomputed, graphName, graph) ? precomputed : cache, cache, graphName);
+    }
+
+    private MDCGraphPane(LayoutAlgorithm algorithm, Graph<State,Transition> graph, Dimension dim, LayoutCache from, LayoutCache cache, String graphName) {
+	this(algorithm, algorithm.create(graph, dim, from, graphName), cache, graphName);
+    }
+
+    protected MDCGraphPane(LayoutAlgorithm algorithm, Graph<State,Transition> graph, Dimension dim, LayoutCache cache, String graphName) {
+	this(algorithm, algorithm.create(graph, dim, cache, graphName), cache, graphName);
+    }
+
+    private MDCGraphPane(LayoutAlgorithm algorithm, AbstractLayout<State,Transition> layout, LayoutCache cache, String graphName) {
 	super(
-	  new VisualizationViewer<State,Transition>(
-	  	new FRLayout<State,Transition>(graph, dim)	   
-	  )
+	  new VisualizationViewer<State,Transition>(layout)
 	);
+	this.algorithm = algorithm;
+	this.layout = layout;
+	this.layoutCache = cache;
+	this.graphName = graphName;
 	Component c = this.getComponent(0);
 	if (c instanceof VisualizationViewer) {
 	    final VisualizationViewer<State,Transition> viewer = ((VisualizationViewer<State,Transition>) c);
+	    shownViewer = viewer;
+
+	    GraphStyle.apply(viewer);
+	    viewer.setEdgeToolTipTransformer(GraphStyle.EDGE_TOOLTIP);
+
+	    levelOfDetail = LevelOfDetail.install(viewer);
 
-	    viewer.getRenderContext().setVertexLabelTransformer(
-		    new Function<State,String>(){
-			public String apply(State s) { return s.getGUIName(); }
-		    }
-		);
-	    viewer.getRenderer().getVertexLabelRenderer().setPosition(Renderer.VertexLabel.Position.CNTR);
-	    
-	    viewer.getRenderContext().setEdgeLabelTransformer(
-		    new Function<Transition,String>(){
-			public String apply(Transition t) { return t.getGUIEdgeDescription(); }
-		    }
-		);
-	    viewer.getRenderContext().setEdgeLabelClosenessTransformer(
-		    new ConstantDirectionalEdgeValueTransformer<State,Transition>(.5,.4)
-                );
-	    viewer.setEdgeToolTipTransformer(
-		    new Function<Transition,String>(){
-			public String apply(Transition t) { return t.getGUIName(); }
-		    }
-		);
-	    
 	    final AbstractModalGraphMouse gm = new DefaultModalGraphMouse<State,Transition>();
 	    viewer.setGraphMouse(gm);
 	    viewer.addKeyListener(gm.getModeKeyListener());
-	    viewer.addKeyListener(new MDCGraphKeyListener<State,Transition>(viewer));
+	    viewer.addKeyListener(new MDCGraphKeyListener<State,Transition>(viewer, this::switchLayout));
+	    viewer.addMouseListener(new MouseAdapter() {
+		    @Override
+		    public void mouseClicked(MouseEvent e) {
+			if (e.getClickCount() == 2) expandAt(e.getX(), e.getY());
+		    }
+		});
 	    viewer.setToolTipText(
 	      String.join(
 		System.getProperty("line.separator"),
@@ -99,12 +128,14 @@ class MDCGraphPane extends GraphZoomScrollPane {
 		"  Type '-' to zoom out<br/>",
 		"  Type 'r' to reset zoom<br/>",
 		"  Type 's' to reset layout<br/>",
+		"  Type 'l' to switch layout algorithm<br/>",
 		"  Type 'p' for Pick mode<br/>",
 		"  <p style='margin-left: 10px'>",
 		"    +rectangle to select multiple vertices<br/>",
 		"    +shift to add to selection<br/>",
 		"    +ctrl to center view on clicked vertex",
 		"  </p>",
+		"  Double-click an aggregated edge to expand it<br/>",
 		"  Type 't' for Transform mode<br/>",
 		"  <p style='margin-left: 10px'>",
 		"    +shift to rotate<br/>",
@@ -114,41 +145,115 @@ class MDCGraphPane extends GraphZoomScrollPane {
 	      )
 	    );
 	} else {
-	    System.out.println("This case should never arise ! Check " + getClass().getName());
+	    Log.warn(">>> WARNING <<< This case should never arise ! Check " + getClass().getName());
+	}
+    }
+
+    /** The graph displayed by this pane, which may be patched in place before calling graphChanged. */
+    public Graph<State,Transition> getGraph() {
+	return shownViewer.getGraphLayout().getGraph();
+    }
+
+    /**
+     * Rebinds the pane to the given graph, typically the same graph in the
+     * next solution: the states still present keep their positions, and the
+     * new ones are placed from the precomputed layouts, if any. The layout
+     * is only relaxed for the new states these layouts do not place.
+     */
+    public void patch(Graph<State,Transition> target, LayoutCache precomputed) {
+	final Set<String> shown = new HashSet<String>();
+	for (State s:getGraph().getVertices()) shown.add(s.getName());
+	if (!GraphGenerator.patchGraph(getGraph(), target, layout)) {
+	    shownViewer.repaint();
+	    return;
+	}
+	if (precomputed != null) {
+	    for (State s:target.getVertices()) {
+		final Point2D p = shown.contains(s.getName()) ? null : precomputed.get(graphName, s.getName());
+		if (p != null) layout.setLocation(s, p);
+	    }
+	}
+	graphChanged();
+    }
+
+    /** Restarts the layout from the current positions after the graph has been modified. */
+    public void graphChanged() {
+	if (layout instanceof WarmStartable) ((WarmStartable) layout).warmStart();
+	levelOfDetail.invalidate();
+	final Layout<State,Transition> shownLayout = shownViewer.getGraphLayout();
+	shownViewer.getModel().setGraphLayout(shownLayout, shownLayout.getSize());
+	shownViewer.repaint();
+    }
+
+    /** Replaces the aggregated transition drawn at the given view point, if any, by its transitions. */
+    private void expandAt(int x, int y) {
+	final Layout<State,Transition> shownLayout = shownViewer.getGraphLayout();
+	if (shownViewer.getPickSupport().getVertex(shownLayout, x, y) != null) return;
+	final Transition t = shownViewer.getPickSupport().getEdge(shownLayout, x, y);
+	if (t instanceof AggregatedTransition && GraphGenerator.expand(getGraph(), (AggregatedTransition) t)) {
+	    shownViewer.getPickedEdgeState().pick(t, false);
+	    Log.debug(() -> "Expanded " + t.getGUIName());
+	    graphChanged();
 	}
     }
 
+    /** Saves the current positions of the vertices into the layout cache of the pane, if any. */
+    public void recordLayout() {
+	if (layoutCache != null) layoutCache.record(graphName, layout);
+    }
+
+    /** Lays the graph out again with the other algorithm, starting from the current positions. */
+    public void switchLayout() {
+	final LayoutCache current = new LayoutCache();
+	current.record(LayoutCache.TRANSITIONS, layout);
+	algorithm = algorithm.other();
+	Log.debug("Layout: " + algorithm);
+	layout = algorithm.create(layout.getGraph(), layout.getSize(), current, LayoutCache.TRANSITIONS);
+	layout.reset();
+	shownViewer.setGraphLayout(layout);
+	shownViewer.repaint();
+    }
+
+    /** Records the layout and stops its relaxation, before the pane is dropped. */
+    public void dispose() {
+	recordLayout();
+	final Relaxer relaxer = shownViewer.getModel().getRelaxer();
+	if (relaxer != null) relaxer.stop();
+    }
+
     private static class MDCGraphKeyListener<State,Transition> extends KeyAdapter {
 
 	private final VisualizationViewer<State,Transition> viewer;
 	private final ScalingControl scaler = new CrossoverScalingControl();
-	    
-	protected MDCGraphKeyListener(VisualizationViewer<State,Transition> v) {
+	private final Runnable layoutSwitcher;
+
+	protected MDCGraphKeyListener(VisualizationViewer<State,Transition> v, Runnable layoutSwitcher) {
 	    viewer = v;
+	    this.layoutSwitcher = layoutSwitcher;
 	}
 
 	private void resetZoomScale() {
 	    viewer.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.LAYOUT).setToIdentity();
 	    viewer.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.VIEW).setToIdentity();
 	}
-	    
+
 	public void keyTyped(KeyEvent e) {
 	    char c = e.getKeyChar();
 	    switch(c){
 	    case '+' :
-		System.out.println("Zoom in");
+		Log.debug("Zoom in");
 		scaler.scale(viewer, 1.1f, viewer.getCenter());
 		break;
 	    case '-' :
-		System.out.println("Zoom out");
+		Log.debug("Zoom out");
 		scaler.scale(viewer, 1/1.1f, viewer.getCenter());
 		break;
 	    case 'r' :
-		System.out.println("Reset zoom");
+		Log.debug("Reset zoom");
 		resetZoomScale();
 		break;
 	    case 's' :
-		System.out.println("Set zoom");
+		Log.debug("Set zoom");
 		final Dimension dim = viewer.getParent().getParent().getSize(null);
 		dim.setSize(dim.getWidth() * 0.9, dim.getHeight() * 0.9);
 		final Layout<State,Transition> layout = viewer.getGraphLayout();
@@ -157,11 +262,14 @@ class MDCGraphPane extends GraphZoomScrollPane {
 		// layout.reset();
 		resetZoomScale();
 		break;
+	    case 'l' :
+		layoutSwitcher.run();
+		break;
 	    default :
-		System.out.println("Key typed: "+c);
+		Log.debug("Key typed: "+c);
 	    }
 	}
 
     }
-	
+
 }
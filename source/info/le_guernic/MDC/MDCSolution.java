@@ -40,23 +40,64 @@ import edu.mit.csail.sdg.alloy4.Err;
 import edu.mit.csail.sdg.alloy4compiler.ast.*;
 import edu.mit.csail.sdg.alloy4compiler.translator.*;
 
+/**
+ * Solution of an MDC model. Atoms are interned into dense integer identifiers
+ * and transitions are stored column-wise; the State, Label, Transition,
+ * Execution and Trace objects are lightweight views over these columns.
+ */
+
 public class MDCSolution {
 
-    private final Map<String,State> states = new HashMap<String,State>();
-    private final Map<String,Label> labels = new HashMap<String,Label>();
-    private final Map<String,Transition> transitions = new HashMap<String,Transition>();
-    private final Map<String,Execution> executions = new TreeMap<String,Execution>();
-    private final Map<String,Trace> traces = new TreeMap<String,Trace>();
-    //private Label EmptyLabel;
-    //private Label NoLabel;
+    /** Identifier of a missing atom. */
+    public static final int NONE = -1;
+
+    private final SymbolTable stateSymbols = new SymbolTable();
+    private final SymbolTable labelSymbols = new SymbolTable();
+    private final SymbolTable transitionSymbols = new SymbolTable();
+    private final SymbolTable executionSymbols = new SymbolTable();
+    private final SymbolTable traceSymbols = new SymbolTable();
+
+    private final BitSet emptyLabels = new BitSet();
+    private int noLabel = NONE;
+
+    // Transition columns, indexed by transition identifier
+    private int[] preColumn = new int[0];
+    private int[] postColumn = new int[0];
+    private int[] triggerColumn = new int[0];
+    private int[] effectColumn = new int[0];
+
+    // Execution columns, indexed by execution identifier
+    private final IntList executionInitial = new IntList();
+    private final IntList executionFinal = new IntList();
+    private final List<IntList> executionSteps = new ArrayList<IntList>();
+
+    // Trace contents, indexed by trace identifier
+    private final List<IntList> traceContents = new ArrayList<IntList>();
+
+    // Views, created on demand so that each atom has a single view. A
+    // solution is read from several threads (event thread, exporter,
+    // renderers, layouts): views are looked up without locking, and
+    // created and the arrays grown under viewLock.
+    private final Object viewLock = new Object();
+    private volatile State[] stateViews = new State[0];
+    private volatile Label[] labelViews = new Label[0];
+    private volatile Transition[] transitionViews = new Transition[0];
+    private volatile Execution[] executionViews = new Execution[0];
+    private volatile Trace[] traceViews = new Trace[0];
+
+    // Identifiers of executions and traces sorted by name, reset when one is added
+    private volatile int[] executionOrder = null;
+    private volatile int[] traceOrder = null;
+
     private final Map<String,Set<String>> varMapping = new TreeMap<String,Set<String>>();
 
 
+    /** Creates an empty solution, to be filled through the get methods. */
+    MDCSolution() {}
+
     public MDCSolution(Module alloyWorld, A4Solution alloySolution) throws Err {
 	if ( alloySolution.satisfiable() ) {
-	    // You can also write the outcome to an XML file
-	    alloySolution.writeXML("alloy_example_output.xml");
-	    Iterable<ExprVar> atoms = alloySolution.getAllAtoms();
+	    // Writing the outcome to files is done by an ExportPipeline
 	    Map<String,Sig> signatures = new HashMap<String,Sig>();
 	    for (Sig sig:alloySolution.getAllReachableSigs()) {
 		if (sig.label.toString().startsWith("this/")) {
@@ -64,7 +105,6 @@ public class MDCSolution {
 		    signatures.put(sigName,sig);
 		}
 	    }
-	    // System.out.println(">>> " + signatures);
 	    Map<String,Sig.Field> relations = new HashMap<String,Sig.Field>();
 	    for (String sigName : signatures.keySet()) {
 		for (Sig.Field field:signatures.get(sigName).getFields()) {
@@ -72,93 +112,74 @@ public class MDCSolution {
 		    relations.put(sigName+"."+relName,field);
 		}
 	    }
-	    // System.out.println(">>> " + relations);
-	    
-	    A4TupleSet emptyLabels = alloySolution.eval(signatures.get("EmptyLabel"));
-	    for (A4Tuple l:emptyLabels) {
-		getLabel(l.atom(0)).setEmpty(true);
-	    }
-	    
-	    A4TupleSet preStates = alloySolution.eval(relations.get("Transition.preState"));
-	    A4TupleSet postStates = alloySolution.eval(relations.get("Transition.postState"));
-	    A4TupleSet triggers = alloySolution.eval(relations.get("Transition.trigger"));
-	    A4TupleSet effects = alloySolution.eval(relations.get("Transition.effect"));
-	    for (A4Tuple e:preStates) {
-		// System.out.println(">>>>>>>>> " + e.atom(0) + " -> " + e.atom(1));
-		Transition t = getTransition(e.atom(0));
-		t.setPrestate(getState(e.atom(1)));
-	    }
-	    for (A4Tuple e:postStates) {
-		// System.out.println(">>>>>>>>> " + e.atom(0) + " -> " + e.atom(1));
-		Transition t = getTransition(e.atom(0));
-		t.setPoststate(getState(e.atom(1)));
-	    }
-	    for (A4Tuple e:triggers) {
-		// System.out.println(">>>>>>>>> " + e.atom(0) + " -> " + e.atom(1));
-		Transition t = getTransition(e.atom(0));
-		t.setTrigger(getLabel(e.atom(1)));
-	    }
-	    for (A4Tuple e:effects) {
-		// System.out.println(">>>>>>>>> " + e.atom(0) + " -> " + e.atom(1));
-		Transition t = getTransition(e.atom(0));
-		t.setEffect(getLabel(e.atom(1)));
-	    }
-	    
-	    A4TupleSet initSt = alloySolution.eval(relations.get("Execution.initialState"));
-	    Map<String,ArrayList<Transition>> transMap = new HashMap<String,ArrayList<Transition>>();
-	    for (A4Tuple e:initSt) {
-		Execution exec = getExecution(e.atom(0));
-		exec.initWith(getState(e.atom(1)));
-		transMap.put(e.atom(0), new ArrayList<Transition>());
-	    }
-	    A4TupleSet trans = alloySolution.eval(relations.get("Execution.transitions"));
-	    for (A4Tuple r:trans) {
-		Execution exec = getExecution(r.atom(0));
-		int pos = Integer.parseInt(r.atom(1));
-		Transition t = getTransition(r.atom(2));
-		ArrayList<Transition> arr = transMap.get(r.atom(0));
-		arr.ensureCapacity(pos + 1);
-		arr.add(pos,t);
-	    }
-	    transMap.forEach(
-			     (k,v) -> {
-				 Execution exec = getExecution(k);
-				 v.forEach( (t) -> { exec.step(t); } );
-			     }
-			     );
-	    
-	    A4TupleSet traces = alloySolution.eval(signatures.get("Trace"));
-	    Map<String,ArrayList<Label>> labelsMap = new HashMap<String,ArrayList<Label>>();
-	    for (A4Tuple r:traces) {
-		Trace t = getTrace(r.atom(0));
-		labelsMap.put(r.atom(0), new ArrayList<Label>());
+
+	    // Relations are read in bulk from the Kodkod instance when possible
+	    final TupleExtractor tuples = new TupleExtractor(this, alloySolution);
+	    final int S = TupleExtractor.STATE, L = TupleExtractor.LABEL, T = TupleExtractor.TRANSITION;
+	    final int E = TupleExtractor.EXECUTION, R = TupleExtractor.TRACE, I = TupleExtractor.INT;
+
+	    tuples.forEach("this/EmptyLabel", signatures.get("EmptyLabel"),
+			   (ids) -> { setEmptyLabel(ids[0], true); }, L);
+	    tuples.forEach("this/NoLabel", signatures.get("NoLabel"),
+			   (ids) -> { setNoLabel(ids[0]); }, L);
+
+	    tuples.forEach("this/Transition.preState", relations.get("Transition.preState"),
+			   (ids) -> { setPreState(ids[0], ids[1]); }, T, S);
+	    tuples.forEach("this/Transition.postState", relations.get("Transition.postState"),
+			   (ids) -> { setPostState(ids[0], ids[1]); }, T, S);
+	    tuples.forEach("this/Transition.trigger", relations.get("Transition.trigger"),
+			   (ids) -> { setTrigger(ids[0], ids[1]); }, T, L);
+	    tuples.forEach("this/Transition.effect", relations.get("Transition.effect"),
+			   (ids) -> { setEffect(ids[0], ids[1]); }, T, L);
+
+	    tuples.forEach("this/Execution.initialState", relations.get("Execution.initialState"),
+			   (ids) -> { initExecution(ids[0], ids[1]); }, E, S);
+	    // Sequence tuples come in any order, so they are first put at their position
+	    final List<int[]> steps = new ArrayList<int[]>();
+	    tuples.forEach("this/Execution.transitions", relations.get("Execution.transitions"),
+			   (ids) -> { steps.add(ids.clone()); }, E, I, T);
+	    for (int[] seq:orderSequences(executionSymbols.size(), steps)) {
+		if (seq == null) continue;
+		for (int i = 1; i < seq.length; i++) {
+		    if (seq[i] != NONE) stepExecution(seq[0], seq[i]);
+		}
 	    }
-	    A4TupleSet labels = alloySolution.eval(relations.get("Trace.content"));
-	    for (A4Tuple r:labels) {
-		Trace t = getTrace(r.atom(0));
-		int pos = Integer.parseInt(r.atom(1));
-		Label l = getLabel(r.atom(2));
-		ArrayList<Label> arr = labelsMap.get(r.atom(0));
-		arr.ensureCapacity(pos + 1);
-		arr.add(pos,l);
+
+	    tuples.forEach("this/Trace", signatures.get("Trace"), (ids) -> {}, R);
+	    final List<int[]> contents = new ArrayList<int[]>();
+	    tuples.forEach("this/Trace.content", relations.get("Trace.content"),
+			   (ids) -> { contents.add(ids.clone()); }, R, I, L);
+	    for (int[] seq:orderSequences(traceSymbols.size(), contents)) {
+		if (seq == null) continue;
+		for (int i = 1; i < seq.length; i++) {
+		    if (seq[i] != NONE) appendToTrace(seq[0], seq[i]);
+		}
 	    }
-	    labelsMap.forEach(
-			     (k,v) -> {
-				 Trace trace = getTrace(k);
-				 v.forEach( (l) -> { trace.add(l); } );
-			     }
-			     );
+
 	    for (ExprVar skol:alloySolution.getAllSkolems()) {
-		A4TupleSet ts = (A4TupleSet) alloySolution.eval((Expr) skol);
-		Set<String> entities = new HashSet<String>();
-		for (A4Tuple t:ts) {
-		    entities.add(t.toString());
-		}
-		varMapping.put(skol.label, entities);
+		varMapping.put(skol.label, tuples.tupleStrings(skol.label, skol));
 	    }
 	}
     }
 
+    /**
+     * Turns (owner, position, element) triples into one array per owner
+     * holding the owner followed by its elements in position order.
+     */
+    static int[][] orderSequences(int owners, List<int[]> triples) {
+	int[] lengths = new int[owners];
+	for (int[] t:triples) lengths[t[0]] = Math.max(lengths[t[0]], t[1] + 1);
+	int[][] seqs = new int[owners][];
+	for (int o = 0; o < owners; o++) {
+	    if (lengths[o] == 0) continue;
+	    seqs[o] = new int[lengths[o] + 1];
+	    Arrays.fill(seqs[o], NONE);
+	    seqs[o][0] = o;
+	}
+	for (int[] t:triples) seqs[t[0]][t[1] + 1] = t[2];
+	return seqs;
+    }
+
     // OUPUT METHODS
 
     public void outputTransitionsToDotFile(String dotFilePathStr) {
@@ -175,108 +196,278 @@ public class MDCSolution {
 	    writer.write("}\n");
 	    writer.close();
 	} catch (IOException e) {
-	    System.err.format("IOException: %s%n", e);
+	    Log.error("Writing of the dot file failed: " + e);
+	}
+    }
+
+    // COLUMN ACCESS
+
+    int internState(String name) {
+	return stateSymbols.intern(name);
+    }
+
+    int internLabel(String name) {
+	return labelSymbols.intern(name);
+    }
+
+    int internTransition(String name) {
+	final int id = transitionSymbols.intern(name);
+	if (id >= preColumn.length) {
+	    final int capacity = Math.max(16, 2 * preColumn.length);
+	    preColumn = grow(preColumn, capacity);
+	    postColumn = grow(postColumn, capacity);
+	    triggerColumn = grow(triggerColumn, capacity);
+	    effectColumn = grow(effectColumn, capacity);
+	}
+	return id;
+    }
+
+    int internExecution(String name) {
+	final int id = executionSymbols.intern(name);
+	if (id == executionSteps.size()) {
+	    executionInitial.add(NONE);
+	    executionFinal.add(NONE);
+	    executionSteps.add(new IntList());
+	    executionOrder = null;
+	}
+	return id;
+    }
+
+    int internTrace(String name) {
+	final int id = traceSymbols.intern(name);
+	if (id == traceContents.size()) {
+	    traceContents.add(new IntList());
+	    traceOrder = null;
 	}
+	return id;
+    }
+
+    private static int[] grow(int[] column, int capacity) {
+	final int[] res = Arrays.copyOf(column, capacity);
+	Arrays.fill(res, column.length, capacity, NONE);
+	return res;
+    }
+
+    public int stateCount() { return stateSymbols.size(); }
+    public int labelCount() { return labelSymbols.size(); }
+    public int transitionCount() { return transitionSymbols.size(); }
+    public int executionCount() { return executionSymbols.size(); }
+    public int traceCount() { return traceSymbols.size(); }
+
+    public String stateName(int s) { return stateSymbols.name(s); }
+    public String labelName(int l) { return labelSymbols.name(l); }
+    public String transitionName(int t) { return transitionSymbols.name(t); }
+    public String executionName(int e) { return executionSymbols.name(e); }
+    public String traceName(int t) { return traceSymbols.name(t); }
+
+    /** Identifier of the named atom, or NONE if it does not appear in this solution. */
+    public int stateId(String name) { return stateSymbols.lookup(name); }
+    public int labelId(String name) { return labelSymbols.lookup(name); }
+    public int transitionId(String name) { return transitionSymbols.lookup(name); }
+    public int executionId(String name) { return executionSymbols.lookup(name); }
+    public int traceId(String name) { return traceSymbols.lookup(name); }
+
+    public boolean isEmptyLabel(int l) { return emptyLabels.get(l); }
+    void setEmptyLabel(int l, boolean isEmpty) { emptyLabels.set(l, isEmpty); }
+
+    /** Identifier of the NoLabel atom, or NONE if it does not appear in this solution. */
+    public int noLabel() { return noLabel; }
+    public boolean isNoLabel(int l) { return l != NONE && l == noLabel; }
+    void setNoLabel(int l) { noLabel = l; }
+
+    public int preState(int t) { return preColumn[t]; }
+    public int postState(int t) { return postColumn[t]; }
+    public int trigger(int t) { return triggerColumn[t]; }
+    public int effect(int t) { return effectColumn[t]; }
+    void setPreState(int t, int s) { preColumn[t] = s; }
+    void setPostState(int t, int s) { postColumn[t] = s; }
+    void setTrigger(int t, int l) { triggerColumn[t] = l; }
+    void setEffect(int t, int l) { effectColumn[t] = l; }
+
+    public int initialState(int e) { return executionInitial.get(e); }
+    public int finalState(int e) { return executionFinal.get(e); }
+    public int executionLength(int e) { return executionSteps.get(e).size(); }
+    public int executionStep(int e, int i) { return executionSteps.get(e).get(i); }
+
+    void initExecution(int e, int s) {
+	executionInitial.set(e, s);
+	executionFinal.set(e, s);
+    }
+
+    void stepExecution(int e, int t) {
+	executionSteps.get(e).add(t);
+	executionFinal.set(e, postColumn[t]);
+    }
+
+    public int traceLength(int t) { return traceContents.get(t).size(); }
+    public int traceLabel(int t, int i) { return traceContents.get(t).get(i); }
+
+    void appendToTrace(int t, int l) {
+	traceContents.get(t).add(l);
+    }
+
+    // VIEWS
+
+    public State stateView(int s) {
+	if (s == NONE) return null;
+	final State[] views = stateViews;
+	if (s < views.length && views[s] != null) return views[s];
+	synchronized (viewLock) {
+	    if (s >= stateViews.length) stateViews = Arrays.copyOf(stateViews, Math.max(s + 1, 2 * stateViews.length));
+	    if (stateViews[s] == null) stateViews[s] = new State(this, s);
+	    return stateViews[s];
+	}
+    }
+
+    public Label labelView(int l) {
+	if (l == NONE) return null;
+	final Label[] views = labelViews;
+	if (l < views.length && views[l] != null) return views[l];
+	synchronized (viewLock) {
+	    if (l >= labelViews.length) labelViews = Arrays.copyOf(labelViews, Math.max(l + 1, 2 * labelViews.length));
+	    if (labelViews[l] == null) labelViews[l] = new Label(this, l);
+	    return labelViews[l];
+	}
+    }
+
+    public Transition transitionView(int t) {
+	if (t == NONE) return null;
+	final Transition[] views = transitionViews;
+	if (t < views.length && views[t] != null) return views[t];
+	synchronized (viewLock) {
+	    if (t >= transitionViews.length) transitionViews = Arrays.copyOf(transitionViews, Math.max(t + 1, 2 * transitionViews.length));
+	    if (transitionViews[t] == null) transitionViews[t] = new Transition(this, t);
+	    return transitionViews[t];
+	}
+    }
+
+    public Execution executionView(int e) {
+	if (e == NONE) return null;
+	final Execution[] views = executionViews;
+	if (e < views.length && views[e] != null) return views[e];
+	synchronized (viewLock) {
+	    if (e >= executionViews.length) executionViews = Arrays.copyOf(executionViews, Math.max(e + 1, 2 * executionViews.length));
+	    if (executionViews[e] == null) executionViews[e] = new Execution(this, e);
+	    return executionViews[e];
+	}
+    }
+
+    public Trace traceView(int t) {
+	if (t == NONE) return null;
+	final Trace[] views = traceViews;
+	if (t < views.length && views[t] != null) return views[t];
+	synchronized (viewLock) {
+	    if (t >= traceViews.length) traceViews = Arrays.copyOf(traceViews, Math.max(t + 1, 2 * traceViews.length));
+	    if (traceViews[t] == null) traceViews[t] = new Trace(this, t);
+	    return traceViews[t];
+	}
+    }
+
+    /** Identifiers of the symbols of the table, sorted by name. */
+    private static int[] sortedByName(SymbolTable symbols) {
+	Integer[] ids = new Integer[symbols.size()];
+	for (int i = 0; i < ids.length; i++) ids[i] = i;
+	Arrays.sort(ids, (a, b) -> symbols.name(a).compareTo(symbols.name(b)));
+	int[] res = new int[ids.length];
+	for (int i = 0; i < ids.length; i++) res[i] = ids[i];
+	return res;
     }
 
     // STATE RELATED METHODS
 
     public State getState(String name) {
-	if (states.containsKey(name)) {
-	    return states.get(name);
-	} else {
-	    State s = new State(name);
-	    states.put(name, s);
-	    return s;
-	}
+	return stateView(internState(name));
     }
 
     public Collection<State> getStates() {
-	return states.values();
+	return new AbstractList<State>() {
+	    public State get(int i) { return stateView(i); }
+	    public int size() { return stateCount(); }
+	};
     }
 
     public void printStates() {
-	System.out.println(states);
+	System.out.println(getStates());
     }
 
     // LABEL RELATED METHODS
-    
+
     public Label getLabel(String name) {
-	if (labels.containsKey(name)) {
-	    return labels.get(name);
-	} else {
-	    Label s = new Label(name);
-	    labels.put(name, s);
-	    return s;
-	}
+	return labelView(internLabel(name));
+    }
+
+    public Collection<Label> getLabels() {
+	return new AbstractList<Label>() {
+	    public Label get(int i) { return labelView(i); }
+	    public int size() { return labelCount(); }
+	};
     }
 
     public void printLabels() {
-	System.out.println(labels);
+	System.out.println(getLabels());
     }
-    
+
     // TRANSITION RELATED METHODS
 
     public Transition getTransition(String name) {
-	if (transitions.containsKey(name)) {
-	    return transitions.get(name);
-	} else {
-	    Transition s = new Transition(name);
-	    transitions.put(name, s);
-	    return s;
-	}
+	return transitionView(internTransition(name));
     }
 
     public Collection<Transition> getTransitions() {
-	return transitions.values();
+	return new AbstractList<Transition>() {
+	    public Transition get(int i) { return transitionView(i); }
+	    public int size() { return transitionCount(); }
+	};
     }
 
     public void printTransitions() {
-	System.out.println(transitions);
+	System.out.println(getTransitions());
     }
 
     // EXECUTION RELATED METHODS
 
     public Execution getExecution(String name) {
-	if (executions.containsKey(name)) {
-	    return executions.get(name);
-	} else {
-	    Execution s = new Execution(name);
-	    executions.put(name, s);
-	    return s;
-	}
+	return executionView(internExecution(name));
     }
 
+    /** Executions sorted by name. */
     public Collection<Execution> getExecutions() {
-	return executions.values();
+	int[] sorted = executionOrder;
+	if (sorted == null) executionOrder = sorted = sortedByName(executionSymbols);
+	final int[] order = sorted;
+	return new AbstractList<Execution>() {
+	    public Execution get(int i) { return executionView(order[i]); }
+	    public int size() { return order.length; }
+	};
     }
 
     public void printExecutions() {
-	System.out.println(executions);
+	System.out.println(getExecutions());
     }
 
     // TRACE RELATED METHODS
 
     public Trace getTrace(String name) {
-	if (traces.containsKey(name)) {
-	    return traces.get(name);
-	} else {
-	    Trace s = new Trace(name);
-	    traces.put(name, s);
-	    return s;
-	}
+	return traceView(internTrace(name));
     }
 
+    /** Traces sorted by name. */
     public Collection<Trace> getTraces() {
-	return traces.values();
+	int[] sorted = traceOrder;
+	if (sorted == null) traceOrder = sorted = sortedByName(traceSymbols);
+	final int[] order = sorted;
+	return new AbstractList<Trace>() {
+	    public Trace get(int i) { return traceView(order[i]); }
+	    public int size() { return order.length; }
+	};
     }
 
     public void printTraces() {
-	System.out.println(traces);
+	System.out.println(getTraces());
     }
 
     // VARIABLES MAPPING METHODS
-    
+
     public Map<String,Set<String>> getVariablesMapping() {
 	return varMapping;
     }
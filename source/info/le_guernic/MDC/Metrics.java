@@ -0,0 +1,389 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Registry of the time spent in each phase of the processing of commands,
+ * of counters, and of the statistics of the last SAT translation. Phases
+ * and statistics are also emitted as JFR events when the JVM supports
+ * them (see JfrEvents).
+ *
+ * Figures are kept for the whole session and, separately, for each
+ * command. A command is bound to the thread which began it, or resumed it,
+ * so that commands solved concurrently do not mix their figures; threads
+ * without a command of their own (the event thread, the exporters) record
+ * into the command begun last. When the system property "mdc.metrics.dir"
+ * is set, the figures of each command are written there as a JSON file
+ * once the command is over. "mdc.metrics" set to false disables the
+ * registry.
+ */
+
+public final class Metrics {
+
+    public enum Phase { PARSE, TRANSLATION, SAT, EXTRACTION, GRAPH, LAYOUT, REPAINT }
+
+    public static final boolean ENABLED = !"false".equals(System.getProperty("mdc.metrics"));
+    private static final String DUMP_DIR = System.getProperty("mdc.metrics.dir");
+
+    /** Number of measures, total, maximum and last duration of a phase. */
+    public static final class PhaseStats {
+	public long count = 0;
+	public long totalNanos = 0;
+	public long maxNanos = 0;
+	public long lastNanos = 0;
+
+	void add(long nanos) {
+	    count++;
+	    totalNanos += nanos;
+	    maxNanos = Math.max(maxNanos, nanos);
+	    lastNanos = nanos;
+	}
+
+	PhaseStats copy() {
+	    final PhaseStats c = new PhaseStats();
+	    c.count = count;
+	    c.totalNanos = totalNanos;
+	    c.maxNanos = maxNanos;
+	    c.lastNanos = lastNanos;
+	    return c;
+	}
+    }
+
+    /** Statistics delivered by Kodkod through the A4Reporter. */
+    public static final class SolverStats {
+	public int primaryVars = -1;
+	public int totalVars = -1;
+	public int clauses = -1;
+	public long solveMs = -1;
+    }
+
+    /** Figures of one command, from its beginning to its end. */
+    public static final class CommandStats {
+	final String label;
+	final long start = System.currentTimeMillis();
+	final EnumMap<Phase,PhaseStats> phases = newPhases();
+	final Map<String,Long> counters = new TreeMap<String,Long>();
+	SolverStats solver = new SolverStats();
+	boolean ended = false;
+
+	CommandStats(String label) {
+	    this.label = label;
+	}
+
+	public String getLabel() {
+	    return label;
+	}
+    }
+
+    private static final EnumMap<Phase,PhaseStats> session = newPhases();
+    private static final Map<String,Long> sessionCounters = new TreeMap<String,Long>();
+    private static CommandStats lastCommand = null;
+
+    private static final ThreadLocal<CommandStats> threadCommand = new ThreadLocal<CommandStats>();
+    private static final ThreadLocal<Long> translationStart = new ThreadLocal<Long>();
+    private static final ThreadLocal<Long> solvingStart = new ThreadLocal<Long>();
+
+    private Metrics() {}
+
+    private static EnumMap<Phase,PhaseStats> newPhases() {
+	final EnumMap<Phase,PhaseStats> phases = new EnumMap<Phase,PhaseStats>(Phase.class);
+	for (Phase p:Phase.values()) phases.put(p, new PhaseStats());
+	return phases;
+    }
+
+    // MEASURES
+
+    /** Measure of a phase, recorded when closed. */
+    public static final class Timer implements AutoCloseable {
+	private final Phase phase;
+	private final long start;
+
+	private Timer(Phase phase) {
+	    this.phase = phase;
+	    this.start = System.nanoTime();
+	}
+
+	public void close() {
+	    record(phase, System.nanoTime() - start);
+	}
+    }
+
+    /** Starts measuring a phase; use in a try-with-resources statement. */
+    public static Timer time(Phase phase) {
+	return new Timer(phase);
+    }
+
+    /** The command the calling thread records into, if any. Called with the lock held. */
+    private static CommandStats current() {
+	final CommandStats c = threadCommand.get();
+	if (c != null && !c.ended) return c;
+	return (lastCommand != null && !lastCommand.ended) ? lastCommand : null;
+    }
+
+    public static void record(Phase phase, long nanos) {
+	if (!ENABLED) return;
+	final String label;
+	synchronized (Metrics.class) {
+	    session.get(phase).add(nanos);
+	    final CommandStats c = current();
+	    if (c != null) c.phases.get(phase).add(nanos);
+	    label = (c == null) ? null : c.label;
+	}
+	JfrEvents.phase(phase.name(), label, nanos);
+    }
+
+    public static void count(String name, long delta) {
+	if (!ENABLED) return;
+	synchronized (Metrics.class) {
+	    sessionCounters.merge(name, delta, Long::sum);
+	    final CommandStats c = current();
+	    if (c != null) c.counters.merge(name, delta, Long::sum);
+	}
+    }
+
+    // SOLVER, called by the A4Reporter of the solving thread
+
+    public static void translationStarted() {
+	translationStart.set(System.nanoTime());
+    }
+
+    public static void translated(int primaryVars, int totalVars, int clauses) {
+	final Long start = translationStart.get();
+	if (start != null) record(Phase.TRANSLATION, System.nanoTime() - start);
+	translationStart.remove();
+	solvingStart.set(System.nanoTime());
+	synchronized (Metrics.class) {
+	    final CommandStats c = current();
+	    if (c == null) return;
+	    c.solver = new SolverStats();
+	    c.solver.primaryVars = primaryVars;
+	    c.solver.totalVars = totalVars;
+	    c.solver.clauses = clauses;
+	}
+    }
+
+    public static void solved(long solveMs) {
+	final Long start = solvingStart.get();
+	if (start != null) record(Phase.SAT, System.nanoTime() - start);
+	solvingStart.remove();
+	final SolverStats s = new SolverStats();
+	final String label;
+	synchronized (Metrics.class) {
+	    final CommandStats c = current();
+	    if (c != null) {
+		c.solver.solveMs = solveMs;
+		s.primaryVars = c.solver.primaryVars;
+		s.totalVars = c.solver.totalVars;
+		s.clauses = c.solver.clauses;
+	    }
+	    s.solveMs = solveMs;
+	    label = (c == null) ? null : c.label;
+	}
+	if (ENABLED) JfrEvents.solver(label, s.primaryVars, s.totalVars, s.clauses, s.solveMs);
+    }
+
+    /**
+     * Starts measuring the search of the next solution of an enumeration.
+     * Alloy only reports the search of the first solution, the following
+     * ones are measured by the enumerator between this call and solvingEnded.
+     */
+    public static void solvingStarted() {
+	solvingStart.set(System.nanoTime());
+    }
+
+    /** Records the search started by solvingStarted, unless the reporter already did. */
+    public static void solvingEnded() {
+	final Long start = solvingStart.get();
+	if (start == null) return;
+	solvingStart.remove();
+	final long nanos = System.nanoTime() - start;
+	record(Phase.SAT, nanos);
+	synchronized (Metrics.class) {
+	    final CommandStats c = current();
+	    if (c != null) c.solver.solveMs = nanos / 1000000;
+	}
+    }
+
+    // COMMANDS
+
+    /**
+     * Ends the command of the calling thread, if any, and starts measuring
+     * the given one, bound to the calling thread.
+     */
+    public static CommandStats beginCommand(String label) {
+	endCommand(threadCommand.get());
+	final CommandStats c = new CommandStats(label);
+	threadCommand.set(c);
+	synchronized (Metrics.class) {
+	    lastCommand = c;
+	}
+	return c;
+    }
+
+    /**
+     * Binds the given command to the calling thread, which then records
+     * into it; with null, the thread records into the command begun last.
+     */
+    public static void resume(CommandStats c) {
+	if (c == null) {
+	    threadCommand.remove();
+	} else {
+	    threadCommand.set(c);
+	}
+    }
+
+    /** Ends the command of the calling thread or, without one, the command begun last. */
+    public static void endCommand() {
+	final CommandStats c;
+	synchronized (Metrics.class) {
+	    c = current();
+	}
+	endCommand(c);
+    }
+
+    /** Writes the figures of the given command, if not ended yet and if "mdc.metrics.dir" is set. */
+    public static void endCommand(CommandStats c) {
+	if (c == null) return;
+	if (threadCommand.get() == c) threadCommand.remove();
+	final String json;
+	synchronized (Metrics.class) {
+	    if (c.ended) return;
+	    json = toJson(c);
+	    c.ended = true;
+	}
+	if (!ENABLED || DUMP_DIR == null) return;
+	final Path file = FileSystems.getDefault().getPath(DUMP_DIR, c.label.replaceAll("[^A-Za-z0-9_.-]", "_") + "-" + c.start + ".json");
+	try {
+	    Files.createDirectories(file.getParent());
+	    Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not write the metrics to " + file + ": " + e);
+	}
+    }
+
+    // SNAPSHOTS
+
+    /** Label of the command begun last, null if it is over. */
+    public static synchronized String getCommandLabel() {
+	return (lastCommand == null || lastCommand.ended) ? null : lastCommand.label;
+    }
+
+    public static synchronized EnumMap<Phase,PhaseStats> sessionPhases() {
+	return copy(session);
+    }
+
+    /** Phases of the command begun last. */
+    public static synchronized EnumMap<Phase,PhaseStats> commandPhases() {
+	return copy((lastCommand == null) ? newPhases() : lastCommand.phases);
+    }
+
+    public static synchronized Map<String,Long> sessionCounters() {
+	return new TreeMap<String,Long>(sessionCounters);
+    }
+
+    /** Statistics of the last SAT translation of the command begun last. */
+    public static synchronized SolverStats solverStats() {
+	final SolverStats s = new SolverStats();
+	if (lastCommand == null) return s;
+	final SolverStats solver = lastCommand.solver;
+	s.primaryVars = solver.primaryVars;
+	s.totalVars = solver.totalVars;
+	s.clauses = solver.clauses;
+	s.solveMs = solver.solveMs;
+	return s;
+    }
+
+    private static EnumMap<Phase,PhaseStats> copy(EnumMap<Phase,PhaseStats> phases) {
+	final EnumMap<Phase,PhaseStats> c = new EnumMap<Phase,PhaseStats>(Phase.class);
+	for (Map.Entry<Phase,PhaseStats> e:phases.entrySet()) c.put(e.getKey(), e.getValue().copy());
+	return c;
+    }
+
+    /** Figures of the command of the calling thread and of the session, as a JSON object. */
+    public static synchronized String toJson() {
+	final CommandStats c = current();
+	return toJson((c == null) ? new CommandStats(null) : c);
+    }
+
+    private static synchronized String toJson(CommandStats c) {
+	final SolverStats solver = c.solver;
+	final StringBuilder sb = new StringBuilder(1024);
+	sb.append("{\"command\":");
+	Json.quote(sb, c.label);
+	sb.append(",\"start\":").append(c.start);
+	sb.append(",\"solver\":{\"primaryVars\":").append(solver.primaryVars)
+	    .append(",\"totalVars\":").append(solver.totalVars)
+	    .append(",\"clauses\":").append(solver.clauses)
+	    .append(",\"solveMs\":").append(solver.solveMs).append('}');
+	sb.append(",\"phases\":");
+	phasesToJson(sb, c.phases);
+	sb.append(",\"counters\":");
+	countersToJson(sb, c.counters);
+	sb.append(",\"session\":{\"phases\":");
+	phasesToJson(sb, session);
+	sb.append(",\"counters\":");
+	countersToJson(sb, sessionCounters);
+	return sb.append("}}\n").toString();
+    }
+
+    private static void phasesToJson(StringBuilder sb, EnumMap<Phase,PhaseStats> phases) {
+	sb.append('{');
+	boolean first = true;
+	for (Map.Entry<Phase,PhaseStats> e:phases.entrySet()) {
+	    if (!first) sb.append(',');
+	    first = false;
+	    final PhaseStats p = e.getValue();
+	    Json.quote(sb, e.getKey().name().toLowerCase());
+	    sb.append(":{\"count\":").append(p.count)
+		.append(",\"totalNanos\":").append(p.totalNanos)
+		.append(",\"maxNanos\":").append(p.maxNanos)
+		.append(",\"lastNanos\":").append(p.lastNanos).append('}');
+	}
+	sb.append('}');
+    }
+
+    private static void countersToJson(StringBuilder sb, Map<String,Long> counters) {
+	sb.append('{');
+	boolean first = true;
+	for (Map.Entry<String,Long> e:counters.entrySet()) {
+	    if (!first) sb.append(',');
+	    first = false;
+	    Json.quote(sb, e.getKey()).append(':').append(e.getValue());
+	}
+	sb.append('}');
+    }
+}
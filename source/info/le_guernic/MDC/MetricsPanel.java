@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.awt.BorderLayout;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+/** Live view of the Metrics registry, refreshed every second while it is shown. */
+
+public class MetricsPanel extends JPanel {
+
+    private static final int REFRESH_MS = 1000;
+    private static final String[] COLUMNS = {"Phase", "Count", "Total (ms)", "Mean (ms)", "Max (ms)", "Last (ms)",
+					     "Session count", "Session total (ms)"};
+
+    private final PhasesModel phases = new PhasesModel();
+    private final JLabel summary = new JLabel(" ");
+
+    public MetricsPanel() {
+	super(new BorderLayout());
+	add(summary, BorderLayout.NORTH);
+	final JTable table = new JTable(phases);
+	table.setFillsViewportHeight(true);
+	add(new JScrollPane(table), BorderLayout.CENTER);
+	new javax.swing.Timer(REFRESH_MS, (e) -> { if (isShowing()) refresh(); }).start();
+    }
+
+    public void refresh() {
+	phases.update(Metrics.commandPhases(), Metrics.sessionPhases());
+	final Metrics.SolverStats s = Metrics.solverStats();
+	final StringBuilder sb = new StringBuilder();
+	final String label = Metrics.getCommandLabel();
+	sb.append((label == null) ? "No command" : "Command '" + label + "'");
+	if (s.primaryVars >= 0) {
+	    sb.append(" | ").append(s.primaryVars).append(" primary vars, ").append(s.totalVars)
+		.append(" vars, ").append(s.clauses).append(" clauses");
+	}
+	if (s.solveMs >= 0) sb.append(", solved in ").append(s.solveMs).append(" ms");
+	for (Map.Entry<String,Long> c:Metrics.sessionCounters().entrySet()) {
+	    sb.append(" | ").append(c.getValue()).append(' ').append(c.getKey());
+	}
+	summary.setText(sb.toString());
+    }
+
+    private static class PhasesModel extends AbstractTableModel {
+
+	private final Metrics.Phase[] rows = Metrics.Phase.values();
+	private EnumMap<Metrics.Phase,Metrics.PhaseStats> command = null;
+	private EnumMap<Metrics.Phase,Metrics.PhaseStats> session = null;
+
+	void update(EnumMap<Metrics.Phase,Metrics.PhaseStats> command, EnumMap<Metrics.Phase,Metrics.PhaseStats> session) {
+	    this.command = command;
+	    this.session = session;
+	    fireTableRowsUpdated(0, rows.length - 1);
+	}
+
+	public int getRowCount() { return rows.length; }
+	public int getColumnCount() { return COLUMNS.length; }
+	public String getColumnName(int col) { return COLUMNS[col]; }
+
+	public Object getValueAt(int row, int col) {
+	    if (col == 0) return rows[row].name().toLowerCase();
+	    if (command == null) return "";
+	    final Metrics.PhaseStats c = command.get(rows[row]), s = session.get(rows[row]);
+	    switch (col) {
+	    case 1: return c.count;
+	    case 2: return ms(c.totalNanos);
+	    case 3: return (c.count == 0) ? "" : ms(c.totalNanos / c.count);
+	    case 4: return ms(c.maxNanos);
+	    case 5: return ms(c.lastNanos);
+	    case 6: return s.count;
+	    case 7: return ms(s.totalNanos);
+	    default: return null;
+	    }
+	}
+
+	private static String ms(long nanos) {
+	    return String.format("%.2f", nanos / 1e6);
+	}
+    }
+}
@@ -33,7 +33,7 @@ package info.le_guernic.MDC;
 public class NumberedTransition extends Transition {
 
     int number = -1;
-    
+
     protected NumberedTransition(Transition t, int n) {
 	super(t);
 	number = n;
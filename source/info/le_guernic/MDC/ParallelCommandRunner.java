@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.ErrorWarning;
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.parser.CompUtil;
+import edu.mit.csail.sdg.alloy4compiler.translator.*;
+
+/**
+ * Translates and solves several commands of a module at the same time, on
+ * a pool of worker threads. Every command gets its own copy of the options
+ * and its own reporter, which records its translation statistics.
+ */
+
+public class ParallelCommandRunner {
+
+    /** Outcome and timings of one command. */
+    public static class CommandResult {
+	public final Command command;
+	boolean satisfiable = false;
+	long translationMs = 0;
+	long solvingMs = 0;
+	long totalMs = 0;
+	int primaryVars = 0;
+	int totalVars = 0;
+	int clauses = 0;
+	Throwable error = null;
+
+	CommandResult(Command command) {
+	    this.command = command;
+	}
+
+	public boolean isSatisfiable() { return satisfiable; }
+	public long getTranslationMs() { return translationMs; }
+	public long getSolvingMs() { return solvingMs; }
+	public long getTotalMs() { return totalMs; }
+	public int getPrimaryVars() { return primaryVars; }
+	public int getTotalVars() { return totalVars; }
+	public int getClauses() { return clauses; }
+	public Throwable getError() { return error; }
+    }
+
+    /** Records the statistics of a single command. */
+    private class StatsReporter extends A4Reporter {
+
+	private final CommandResult result;
+	private final long start;
+
+	StatsReporter(CommandResult result, long start) {
+	    this.result = result;
+	    this.start = start;
+	}
+
+	private void checkCancelled() {
+	    if (cancelled) throw new CancellationException();
+	}
+
+	@Override public void warning(ErrorWarning msg) {
+	    Log.warn("Relevance Warning (" + result.command.label + "):\n"+(msg.toString().trim())+"\n");
+	}
+
+	@Override public void translate(String solver, int bitwidth, int maxseq, int skolemDepth, int symmetry) {
+	    checkCancelled();
+	    Metrics.translationStarted();
+	}
+
+	@Override public void solve(int primaryVars, int totalVars, int clauses) {
+	    checkCancelled();
+	    Metrics.translated(primaryVars, totalVars, clauses);
+	    result.translationMs = (System.nanoTime() - start) / 1000000;
+	    result.primaryVars = primaryVars;
+	    result.totalVars = totalVars;
+	    result.clauses = clauses;
+	}
+
+	@Override public void resultSAT(Object command, long solvingTime, Object solution) {
+	    Metrics.solved(solvingTime);
+	    result.solvingMs = solvingTime;
+	}
+
+	@Override public void resultUNSAT(Object command, long solvingTime, Object solution) {
+	    Metrics.solved(solvingTime);
+	    result.solvingMs = solvingTime;
+	}
+    }
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final Module alloyWorld;
+    private final A4Options options;
+    private final int nbThreads;
+    private volatile boolean cancelled = false;
+    private volatile ExecutorService pool = null;
+
+    public ParallelCommandRunner(Module alloyWorld, A4Options options, int nbThreads) {
+	this.alloyWorld = alloyWorld;
+	this.options = options;
+	this.nbThreads = Math.max(1, nbThreads);
+    }
+
+    /** Runs the given commands and returns their results, in the same order. */
+    public List<CommandResult> runAll(List<Command> commands) throws InterruptedException {
+	final List<CommandResult> results = new ArrayList<CommandResult>();
+	final List<Future<?>> futures = new ArrayList<Future<?>>();
+	pool = Executors.newFixedThreadPool(
+	    Math.min(nbThreads, Math.max(1, commands.size())),
+	    new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "MDC-command-" + threadCounter.incrementAndGet());
+		    t.setDaemon(true);
+		    return t;
+		}
+	    });
+	try {
+	    for (final Command cmd:commands) {
+		final CommandResult result = new CommandResult(cmd);
+		results.add(result);
+		futures.add(pool.submit(new Runnable() {
+			public void run() { runOne(result); }
+		    }));
+	    }
+	    for (Future<?> f:futures) {
+		try {
+		    f.get();
+		} catch (ExecutionException e) {
+		    // recorded in the result by runOne
+		}
+	    }
+	} finally {
+	    pool.shutdownNow();
+	}
+	return results;
+    }
+
+    private void runOne(CommandResult result) {
+	if (cancelled) return;
+	final long start = System.nanoTime();
+	final A4Options opt = options.dup();
+	final Metrics.CommandStats stats = Metrics.beginCommand(result.command.label);
+	try {
+	    A4Solution sol = TranslateAlloyToKodkod.execute_command(new StatsReporter(result, start), alloyWorld.getAllReachableSigs(), result.command, opt);
+	    result.satisfiable = sol.satisfiable();
+	} catch (Err err) {
+	    result.error = err;
+	} catch (RuntimeException e) {
+	    result.error = e;
+	} finally {
+	    Metrics.endCommand(stats);
+	}
+	result.totalMs = (System.nanoTime() - start) / 1000000;
+    }
+
+    /** Stops the commands at their next reporter callback. */
+    public void cancel() {
+	cancelled = true;
+	final ExecutorService p = pool;
+	if (p != null) p.shutdownNow();
+    }
+
+    /** Formats the results as a table, one line per command. */
+    public static String report(List<CommandResult> results, long wallClockMs) {
+	final StringBuilder sb = new StringBuilder();
+	long cumulatedMs = 0;
+	sb.append(String.format("%-45s %-8s %10s %10s %10s %10s %10s %10s%n",
+				"Command", "Result", "Transl.ms", "Solve ms", "Total ms", "Prim.vars", "Vars", "Clauses"));
+	for (CommandResult r:results) {
+	    final String outcome = (r.error != null) ? "ERROR" : (r.satisfiable ? "SAT" : "UNSAT");
+	    sb.append(String.format("%-45s %-8s %10d %10d %10d %10d %10d %10d%n",
+				    r.command.label, outcome, r.translationMs, r.solvingMs, r.totalMs,
+				    r.primaryVars, r.totalVars, r.clauses));
+	    if (r.error != null) {
+		sb.append("    ").append(r.error.toString().trim()).append('\n');
+	    }
+	    cumulatedMs += r.totalMs;
+	}
+	sb.append(String.format("%d commands in %d ms (%d ms if run one after the other)%n",
+				results.size(), wallClockMs, cumulatedMs));
+	return sb.toString();
+    }
+
+    private static void usage() {
+	System.out.println("Usage: Visualizer -parallel alsFile [-threads N] [commandLabelOrIndex ...]");
+    }
+
+    public static void main(String[] args) throws Err, InterruptedException {
+	String filename = null;
+	int nbThreads = Runtime.getRuntime().availableProcessors();
+	final List<String> cmdNames = new ArrayList<String>();
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals("-threads") && i + 1 < args.length) {
+		try {
+		    nbThreads = Integer.parseInt(args[++i]);
+		} catch (NumberFormatException e) {
+		    nbThreads = 0;
+		}
+		if (nbThreads < 1) {
+		    usage();
+		    return;
+		}
+	    } else if (args[i].startsWith("-")) {
+		usage();
+		return;
+	    } else if (filename == null) {
+		filename = args[i];
+	    } else {
+		cmdNames.add(args[i]);
+	    }
+	}
+	if (filename == null) {
+	    usage();
+	    return;
+	}
+
+	A4Options options = new A4Options();
+	options.solver = A4Options.SatSolver.SAT4J;
+	System.out.println("=========== Parsing+Typechecking '"+filename+"' =============");
+	Module alloyWorld = CompUtil.parseEverything_fromFile(A4Reporter.NOP, null, filename);
+	final List<Command> commands = new ArrayList<Command>();
+	if (cmdNames.isEmpty()) {
+	    commands.addAll(alloyWorld.getAllCommands());
+	} else {
+	    for (String name:cmdNames) {
+		Command cmd = BatchEnumerator.findCommand(alloyWorld, name);
+		if (cmd == null) {
+		    System.out.println("No command '" + name + "' in " + filename);
+		    return;
+		}
+		commands.add(cmd);
+	    }
+	}
+	System.out.println("=========== Running " + commands.size() + " commands on " + nbThreads + " threads =============");
+	final long start = System.nanoTime();
+	List<CommandResult> results = new ParallelCommandRunner(alloyWorld, options, nbThreads).runAll(commands);
+	System.out.print(report(results, (System.nanoTime() - start) / 1000000));
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+
+import edu.mit.csail.sdg.alloy4compiler.translator.A4Solution;
+
+import edu.uci.ics.jung.graph.Graph;
+
+/** A solution extracted and, optionally, turned into graphs ahead of its display. */
+
+public class PreparedSolution {
+
+    private final int index;
+    private final A4Solution alloySolution;
+    private final MDCSolution mdc;
+    private final int skippedBefore;
+    private Graph<State,Transition> transitionsGraph = null;
+    private Map<String,Graph<State,Transition>> executionGraphs = null;
+    private volatile ForkJoinTask<LayoutCache> layouts = null;
+    private volatile String alloyXml = null;
+
+    public PreparedSolution(int index, A4Solution alloySolution, MDCSolution mdc) {
+	this(index, alloySolution, mdc, 0);
+    }
+
+    public PreparedSolution(int index, A4Solution alloySolution, MDCSolution mdc, int skippedBefore) {
+	this.index = index;
+	this.alloySolution = alloySolution;
+	this.mdc = mdc;
+	this.skippedBefore = skippedBefore;
+    }
+
+    /** Builds the transitions graph, unless already done. Execution graphs are built when first asked for. */
+    public synchronized void prepareGraphs() {
+	if (transitionsGraph != null) return;
+	transitionsGraph = GraphGenerator.generateTransitionsGraph(mdc);
+	executionGraphs = new HashMap<String,Graph<State,Transition>>();
+    }
+
+    /** Position of this solution in the enumeration, starting at 0. */
+    public int getIndex() { return index; }
+
+    /** The solver solution, or null if the solution was not produced by the solver (e.g. read from a cache). */
+    public A4Solution getAlloySolution() { return alloySolution; }
+
+    public MDCSolution getMDCSolution() { return mdc; }
+
+    /** The Alloy XML form of the solution, if its enumerator was asked to keep it, or null. */
+    public String getAlloyXml() { return alloyXml; }
+
+    void setAlloyXml(String xml) { alloyXml = xml; }
+
+    /** Number of solutions isomorphic to previous ones that the enumeration skipped before this one. */
+    public int getSkippedBefore() { return skippedBefore; }
+
+    public Graph<State,Transition> getTransitionsGraph() {
+	prepareGraphs();
+	return transitionsGraph;
+    }
+
+    /**
+     * The transitions graph where parallel transitions are collapsed. It is
+     * built anew on each call, as panes expand its edges in place.
+     */
+    public Graph<State,Transition> getAggregatedTransitionsGraph() {
+	return GraphGenerator.generateAggregatedTransitionsGraph(mdc);
+    }
+
+    /** One of the two transitions graphs above. */
+    public Graph<State,Transition> getTransitionsGraph(boolean aggregated) {
+	return aggregated ? getAggregatedTransitionsGraph() : getTransitionsGraph();
+    }
+
+    synchronized boolean hasLayouts() {
+	return layouts != null;
+    }
+
+    synchronized void setLayouts(ForkJoinTask<LayoutCache> layouts) {
+	this.layouts = layouts;
+    }
+
+    /**
+     * Positions of the vertices of the graphs, by graph name, computed ahead
+     * by a LayoutPrecomputer; null until the transitions graph is laid out.
+     * The execution graphs laid out ahead are added as they are done.
+     */
+    public LayoutCache getLayouts() {
+	final ForkJoinTask<LayoutCache> l = layouts;
+	return (l != null && l.isDone() && l.isCompletedNormally()) ? l.join() : null;
+    }
+
+    /** Waits for the layout of the transitions graph being computed, if any. */
+    public void awaitTransitionsLayout() {
+	final ForkJoinTask<LayoutCache> l = layouts;
+	if (l == null) return;
+	l.quietlyJoin();
+	if (l.isCompletedAbnormally()) Log.warn(">>> WARNING <<< Layout of solution #" + index + " failed: " + l.getException());
+    }
+
+    public synchronized Graph<State,Transition> getExecutionGraph(Execution exec) {
+	prepareGraphs();
+	Graph<State,Transition> g = executionGraphs.get(exec.getName());
+	if (g == null) {
+	    g = GraphGenerator.generateExecutionGraph(exec);
+	    executionGraphs.put(exec.getName(), g);
+	}
+	return g;
+    }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.translator.A4Options;
+
+/**
+ * On-disk cache of the first solutions of commands. Entries are keyed by a
+ * hash of the content of the model and of all the modules it opens, of the
+ * command and of the solver options, so that an unchanged model reopens
+ * with its previous solutions. The total size of the cache is bounded and
+ * the least recently used entries are evicted first. The layouts saved for
+ * a command (see LayoutCache) are part of its entry: they are counted in
+ * the size of the cache and deleted with the solutions.
+ *
+ * Configured with the system properties "mdc.cache" (false disables the
+ * cache), "mdc.cache.dir", "mdc.cache.maxBytes" and "mdc.cache.solutions".
+ */
+
+public class SolutionCache {
+
+    private static final int MAGIC = 0x4D444343; // "MDCC"
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".mdcc";
+    private static final String LAYOUTS = "layouts";
+    private static final String LAYOUT_SUFFIX = ".properties";
+
+    public static final int DEFAULT_SOLUTIONS = Integer.getInteger("mdc.cache.solutions", 10);
+
+    private final Path dir;
+    private final long maxBytes;
+
+    public SolutionCache(Path dir, long maxBytes) throws IOException {
+	this.dir = dir;
+	this.maxBytes = maxBytes;
+	Files.createDirectories(dir);
+    }
+
+    /** Returns the cache configured by the system properties, or null if it is disabled or unusable. */
+    public static SolutionCache fromSystemProperties() {
+	if (!Boolean.parseBoolean(System.getProperty("mdc.cache", "true"))) return null;
+	final String dirStr = System.getProperty("mdc.cache.dir",
+						 System.getProperty("user.home") + File.separator + ".bdm-explorer" + File.separator + "cache");
+	final long maxBytes = Long.getLong("mdc.cache.maxBytes", 64L * 1024 * 1024);
+	try {
+	    return new SolutionCache(FileSystems.getDefault().getPath(dirStr), maxBytes);
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Solution cache disabled: " + e);
+	    return null;
+	}
+    }
+
+    public Path getDirectory() {
+	return dir;
+    }
+
+    // KEYS
+
+    /** Hash of the content of the model file and of every module it (transitively) opens. */
+    public static String modelHash(Module alloyWorld) {
+	final MessageDigest md = newDigest();
+	final SortedMap<String,byte[]> contents = new TreeMap<String,byte[]>();
+	for (Module m:alloyWorld.getAllReachableModules()) {
+	    final String filename = m.span().filename;
+	    byte[] content;
+	    try {
+		content = Files.readAllBytes(FileSystems.getDefault().getPath(filename));
+	    } catch (IOException | InvalidPathException e) {
+		// Built-in modules may not be readable as files, their name identifies them
+		content = new byte[0];
+	    }
+	    contents.put(filename, content);
+	}
+	for (Map.Entry<String,byte[]> e:contents.entrySet()) {
+	    // Only the main module is identified by its content alone, not by its path
+	    if (!e.getKey().equals(alloyWorld.span().filename)) {
+		md.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+	    }
+	    md.update(e.getValue());
+	}
+	return toHex(md.digest());
+    }
+
+    /** Key of the solutions of a command of a model with the given hash, solved with the given options. */
+    public static String key(String modelHash, Command cmd, A4Options options) {
+	return key(modelHash, cmd, options, "alloy");
+    }
+
+    /** Key of the solutions of a command of a model with the given hash, solved by the named backend. */
+    public static String key(String modelHash, Command cmd, A4Options options, String backend) {
+	final MessageDigest md = newDigest();
+	final String desc = modelHash + "\n" + cmd.label + "\n" + cmd + "\n"
+	    + options.solver.id() + " symmetry=" + options.symmetry + " skolemDepth=" + options.skolemDepth
+	    + " unrolls=" + options.unrolls + " skipIsomorphic=" + SolutionEnumerator.SKIP_ISOMORPHIC
+	    + (backend.equals("alloy") ? "" : " backend=" + backend);
+	md.update(desc.getBytes(StandardCharsets.UTF_8));
+	return toHex(md.digest());
+    }
+
+    private static MessageDigest newDigest() {
+	try {
+	    return MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException("SHA-256 is not available", e);
+	}
+    }
+
+    private static String toHex(byte[] bytes) {
+	final StringBuilder sb = new StringBuilder(2 * bytes.length);
+	for (byte b:bytes) {
+	    sb.append(String.format("%02x", b & 0xFF));
+	}
+	return sb.toString();
+    }
+
+    private Path entryPath(String key) {
+	return dir.resolve(key + SUFFIX);
+    }
+
+    /** File of the layouts of the graphs of the solutions of the key. */
+    public Path layoutPath(String key) {
+	return dir.resolve(LAYOUTS).resolve(key + LAYOUT_SUFFIX);
+    }
+
+    // ENTRIES
+
+    public boolean contains(String key) {
+	return Files.isRegularFile(entryPath(key));
+    }
+
+    /** Returns the cached solutions, or null if there is no (valid) entry for the key. */
+    public List<MDCSolution> load(String key) {
+	final Path p = entryPath(key);
+	if (!Files.isRegularFile(p)) return null;
+	try {
+	    final List<MDCSolution> solutions = read(p, key);
+	    // Record the access for the LRU eviction
+	    Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+	    return solutions;
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Dropping unreadable cache entry " + p + ": " + e);
+	    delete(p);
+	    return null;
+	}
+    }
+
+    private static List<MDCSolution> read(Path p, String expectedKey) throws IOException {
+	final ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(p));
+	try {
+	    if (in.getInt() != MAGIC || in.getInt() != VERSION) throw new IOException("not a cache entry of version " + VERSION);
+	    final byte[] keyBytes = new byte[in.getShort() & 0xFFFF];
+	    in.get(keyBytes);
+	    if (expectedKey != null && !expectedKey.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+		throw new IOException("key mismatch");
+	    }
+	    final int nb = in.getInt();
+	    final List<MDCSolution> solutions = new ArrayList<MDCSolution>(nb);
+	    for (int i = 0; i < nb; i++) {
+		final int length = in.getInt();
+		final ByteBuffer record = (ByteBuffer) in.slice().limit(length);
+		solutions.add(SolutionCodec.decode(record));
+		in.position(in.position() + length);
+	    }
+	    return solutions;
+	} catch (RuntimeException e) {
+	    throw new IOException("truncated cache entry", e);
+	}
+    }
+
+    /** Stores the solutions under the key, replacing any previous entry, then enforces the size bound. */
+    public void store(String key, List<MDCSolution> solutions) {
+	final Path p = entryPath(key);
+	final Path tmp = dir.resolve(key + SUFFIX + ".tmp");
+	try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+	    out.writeShort(keyBytes.length);
+	    out.write(keyBytes);
+	    out.writeInt(solutions.size());
+	    for (MDCSolution mdc:solutions) {
+		final byte[] record = SolutionCodec.encode(mdc);
+		out.writeInt(record.length);
+		out.write(record);
+	    }
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not write the cache entry " + tmp + ": " + e);
+	    delete(tmp);
+	    return;
+	}
+	try {
+	    Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not write the cache entry " + p + ": " + e);
+	    delete(tmp);
+	    return;
+	}
+	evict();
+    }
+
+    // MAINTENANCE
+
+    /**
+     * Startup check: removes the leftovers of interrupted writes, the
+     * entries that can not be read with this version and the layouts left
+     * without solutions (e.g. of a model since modified), then enforces the
+     * size bound. Returns the number of valid entries.
+     */
+    public int checkOnStartup() {
+	int valid = 0;
+	try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+	    for (Path p:entries) {
+		final String name = p.getFileName().toString();
+		if (name.endsWith(SUFFIX + ".tmp")) {
+		    delete(p);
+		} else if (name.endsWith(SUFFIX)) {
+		    if (hasValidHeader(p)) {
+			valid++;
+		    } else {
+			Log.warn(">>> WARNING <<< Dropping invalid cache entry " + p);
+			delete(p);
+		    }
+		}
+	    }
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not check the cache in " + dir + ": " + e);
+	}
+	final Path layouts = dir.resolve(LAYOUTS);
+	if (Files.isDirectory(layouts)) {
+	    try (DirectoryStream<Path> files = Files.newDirectoryStream(layouts)) {
+		for (Path p:files) {
+		    final String name = p.getFileName().toString();
+		    if (!name.endsWith(LAYOUT_SUFFIX) || !Files.isRegularFile(entryPath(name.substring(0, name.length() - LAYOUT_SUFFIX.length())))) {
+			delete(p);
+		    }
+		}
+	    } catch (IOException e) {
+		Log.warn(">>> WARNING <<< Could not check the cached layouts in " + layouts + ": " + e);
+	    }
+	}
+	evict();
+	return valid;
+    }
+
+    private static boolean hasValidHeader(Path p) {
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+	    return in.readInt() == MAGIC && in.readInt() == VERSION;
+	} catch (IOException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Deletes the least recently used entries, solutions and layouts, until
+     * the cache fits in its size bound.
+     */
+    public synchronized void evict() {
+	final Map<String,Long> sizes = new HashMap<String,Long>();
+	final Map<String,Long> times = new HashMap<String,Long>();
+	long total = 0;
+	try {
+	    total += scan(dir, SUFFIX, sizes, times);
+	    if (Files.isDirectory(dir.resolve(LAYOUTS))) total += scan(dir.resolve(LAYOUTS), LAYOUT_SUFFIX, sizes, times);
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not evict entries from the cache in " + dir + ": " + e);
+	    return;
+	}
+	if (total <= maxBytes) return;
+	final List<String> keys = new ArrayList<String>(sizes.keySet());
+	Collections.sort(keys, (a, b) -> Long.compare(times.get(a), times.get(b)));
+	for (String key:keys) {
+	    if (total <= maxBytes) break;
+	    delete(entryPath(key));
+	    delete(layoutPath(key));
+	    total -= sizes.get(key);
+	}
+    }
+
+    /** Adds the sizes and last access times of the files of the directory with the suffix, by key; returns their total size. */
+    private static long scan(Path directory, String suffix, Map<String,Long> sizes, Map<String,Long> times) throws IOException {
+	long total = 0;
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+	    for (Path p:stream) {
+		final String name = p.getFileName().toString();
+		final String key = name.substring(0, name.length() - suffix.length());
+		final long size = Files.size(p);
+		sizes.merge(key, size, Long::sum);
+		times.merge(key, Files.getLastModifiedTime(p).toMillis(), Math::max);
+		total += size;
+	    }
+	}
+	return total;
+    }
+
+    private static void delete(Path p) {
+	try {
+	    Files.deleteIfExists(p);
+	} catch (IOException e) {
+	    Log.warn(">>> WARNING <<< Could not delete " + p + ": " + e);
+	}
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary form of an MDCSolution. Atom names are stored once in a
+ * symbol table and every other reference is a variable-length index into
+ * that table.
+ */
+
+public class SolutionCodec {
+
+    private static final int NONE = 0;
+
+    // Flags of labels
+    private static final int EMPTY_LABEL = 1;
+    private static final int NO_LABEL = 2;
+
+    private SolutionCodec() {}
+
+    // ENCODING
+
+    public static byte[] encode(MDCSolution mdc) {
+	final Map<String,Integer> symbols = new LinkedHashMap<String,Integer>();
+	final ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+
+	writeVarInt(body, mdc.getStates().size());
+	for (State s:mdc.getStates()) {
+	    writeSymbol(body, symbols, s.getName());
+	}
+	writeVarInt(body, mdc.getLabels().size());
+	for (Label l:mdc.getLabels()) {
+	    writeSymbol(body, symbols, l.getName());
+	    body.write((l.isEmpty() ? EMPTY_LABEL : 0) | (l.isNoLabel() ? NO_LABEL : 0));
+	}
+	writeVarInt(body, mdc.transitionCount());
+	for (int t = 0; t < mdc.transitionCount(); t++) {
+	    final int pre = mdc.preState(t), post = mdc.postState(t);
+	    final int trigger = mdc.trigger(t), effect = mdc.effect(t);
+	    writeSymbol(body, symbols, mdc.transitionName(t));
+	    writeSymbol(body, symbols, (pre == MDCSolution.NONE) ? null : mdc.stateName(pre));
+	    writeSymbol(body, symbols, (post == MDCSolution.NONE) ? null : mdc.stateName(post));
+	    writeSymbol(body, symbols, (trigger == MDCSolution.NONE) ? null : mdc.labelName(trigger));
+	    writeSymbol(body, symbols, (effect == MDCSolution.NONE) ? null : mdc.labelName(effect));
+	}
+	writeVarInt(body, mdc.getExecutions().size());
+	for (Execution e:mdc.getExecutions()) {
+	    writeSymbol(body, symbols, e.getName());
+	    writeSymbol(body, symbols, (e.getInitialState() == null) ? null : e.getInitialState().getName());
+	    writeVarInt(body, e.getTransitions().size());
+	    for (Transition t:e.getTransitions()) {
+		writeSymbol(body, symbols, t.getName());
+	    }
+	}
+	writeVarInt(body, mdc.getTraces().size());
+	for (Trace t:mdc.getTraces()) {
+	    writeSymbol(body, symbols, t.getName());
+	    writeVarInt(body, t.getLabelsSequence().size());
+	    for (Label l:t.getLabelsSequence()) {
+		writeSymbol(body, symbols, l.getName());
+	    }
+	}
+	writeVarInt(body, mdc.getVariablesMapping().size());
+	for (Map.Entry<String,Set<String>> v:mdc.getVariablesMapping().entrySet()) {
+	    writeSymbol(body, symbols, v.getKey());
+	    writeVarInt(body, v.getValue().size());
+	    for (String tuple:v.getValue()) {
+		writeSymbol(body, symbols, tuple);
+	    }
+	}
+
+	final ByteArrayOutputStream out = new ByteArrayOutputStream(body.size() + 16 * symbols.size() + 8);
+	writeVarInt(out, symbols.size());
+	for (String sym:symbols.keySet()) {
+	    final byte[] bytes = sym.getBytes(StandardCharsets.UTF_8);
+	    writeVarInt(out, bytes.length);
+	    out.write(bytes, 0, bytes.length);
+	}
+	final byte[] bodyBytes = body.toByteArray();
+	out.write(bodyBytes, 0, bodyBytes.length);
+	return out.toByteArray();
+    }
+
+    /** Writes 0 for null, or 1 + the position of the symbol in the table. */
+    private static void writeSymbol(ByteArrayOutputStream out, Map<String,Integer> symbols, String sym) {
+	if (sym == null) {
+	    writeVarInt(out, NONE);
+	    return;
+	}
+	Integer idx = symbols.get(sym);
+	if (idx == null) {
+	    idx = symbols.size();
+	    symbols.put(sym, idx);
+	}
+	writeVarInt(out, idx + 1);
+    }
+
+    static void writeVarInt(OutputStream out, int value) {
+	try {
+	    while ((value & ~0x7F) != 0) {
+		out.write((value & 0x7F) | 0x80);
+		value >>>= 7;
+	    }
+	    out.write(value);
+	} catch (IOException e) {
+	    // Can not happen with a ByteArrayOutputStream
+	    throw new UncheckedIOException(e);
+	}
+    }
+
+    // DECODING
+
+    /** Reads a solution starting at the position of the buffer, and moves the position after it. */
+    public static MDCSolution decode(ByteBuffer in) throws IOException {
+	try {
+	    final String[] symbols = new String[readVarInt(in)];
+	    for (int i = 0; i < symbols.length; i++) {
+		final byte[] bytes = new byte[readVarInt(in)];
+		in.get(bytes);
+		symbols[i] = new String(bytes, StandardCharsets.UTF_8);
+	    }
+	    final MDCSolution mdc = new MDCSolution();
+
+	    int nb = readVarInt(in);
+	    for (int i = 0; i < nb; i++) {
+		mdc.getState(readSymbol(in, symbols));
+	    }
+	    nb = readVarInt(in);
+	    for (int i = 0; i < nb; i++) {
+		Label l = mdc.getLabel(readSymbol(in, symbols));
+		final int flags = in.get();
+		l.setEmpty((flags & EMPTY_LABEL) != 0);
+		if ((flags & NO_LABEL) != 0) mdc.setNoLabel(l.getId());
+	    }
+	    nb = readVarInt(in);
+	    for (int i = 0; i < nb; i++) {
+		final int t = mdc.internTransition(readSymbol(in, symbols));
+		String pre = readSymbol(in, symbols);
+		String post = readSymbol(in, symbols);
+		String trigger = readSymbol(in, symbols);
+		String effect = readSymbol(in, symbols);
+		if (pre != null) mdc.setPreState(t, mdc.internState(pre));
+		if (post != null) mdc.setPostState(t, mdc.internState(post));
+		if (trigger != null) mdc.setTrigger(t, mdc.internLabel(trigger));
+		if (effect != null) mdc.setEffect(t, mdc.internLabel(effect));
+	    }
+	    nb = readVarInt(in);
+	    for (int i = 0; i < nb; i++) {
+		Execution e = mdc.getExecution(readSymbol(in, symbols));
+		String init = readSymbol(in, symbols);
+		if (init != null) e.initWith(mdc.getState(init));
+		int length = readVarInt(in);
+		for (int j = 0; j < length; j++) {
+		    e.step(mdc.getTransition(readSymbol(in, symbols)));
+		}
+	    }
+	    nb = readVarInt(in);
+	    for (int i = 0; i < nb; i++) {
+		Trace t = mdc.getTrace(readSymbol(in, symbols));
+		int length = readVarInt(in);
+		for (int j = 0; j < length; j++) {
+		    t.add(mdc.getLabel(readSymbol(in, symbols)));
+		}
+	    }
+	    nb = readVarInt(in);
+	    for (int i = 0; i < nb; i++) {
+		String var = readSymbol(in, symbols);
+		int size = readVarInt(in);
+		Set<String> entities = new HashSet<String>();
+		for (int j = 0; j < size; j++) {
+		    entities.add(readSymbol(in, symbols));
+		}
+		mdc.getVariablesMapping().put(var, entities);
+	    }
+	    return mdc;
+	} catch (RuntimeException e) {
+	    // BufferUnderflowException, IndexOutOfBoundsException, ...
+	    throw new IOException("Corrupted solution record: " + e, e);
+	}
+    }
+
+    private static String readSymbol(ByteBuffer in, String[] symbols) {
+	final int idx = readVarInt(in);
+	return (idx == NONE) ? null : symbols[idx - 1];
+    }
+
+    static int readVarInt(ByteBuffer in) {
+	int value = 0;
+	for (int shift = 0; shift < 32; shift += 7) {
+	    final byte b = in.get();
+	    value |= (b & 0x7F) << shift;
+	    if ((b & 0x80) == 0) return value;
+	}
+	throw new IllegalStateException("Malformed variable-length integer");
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * Differences between two solutions, compared by atom name. A transition
+ * whose states or labels differ is reported as changed, as is every
+ * execution going through it.
+ */
+
+public class SolutionDiff {
+
+    public final Set<String> addedStates = new TreeSet<String>();
+    public final Set<String> removedStates = new TreeSet<String>();
+    public final Set<String> addedTransitions = new TreeSet<String>();
+    public final Set<String> removedTransitions = new TreeSet<String>();
+    public final Set<String> changedTransitions = new TreeSet<String>();
+    public final Set<String> addedExecutions = new TreeSet<String>();
+    public final Set<String> removedExecutions = new TreeSet<String>();
+    public final Set<String> changedExecutions = new TreeSet<String>();
+    public final Set<String> addedTraces = new TreeSet<String>();
+    public final Set<String> removedTraces = new TreeSet<String>();
+    public final Set<String> changedTraces = new TreeSet<String>();
+
+    private SolutionDiff() {}
+
+    public static SolutionDiff compute(MDCSolution from, MDCSolution to) {
+	final SolutionDiff diff = new SolutionDiff();
+	diffSymbols(from.stateCount(), from::stateName, to::stateId, diff.removedStates);
+	diffSymbols(to.stateCount(), to::stateName, from::stateId, diff.addedStates);
+
+	diffSymbols(from.transitionCount(), from::transitionName, to::transitionId, diff.removedTransitions);
+	for (int t = 0; t < to.transitionCount(); t++) {
+	    final int f = from.transitionId(to.transitionName(t));
+	    if (f == MDCSolution.NONE) {
+		diff.addedTransitions.add(to.transitionName(t));
+	    } else if (!sameState(from, from.preState(f), to, to.preState(t))
+		       || !sameState(from, from.postState(f), to, to.postState(t))
+		       || !sameLabel(from, from.trigger(f), to, to.trigger(t))
+		       || !sameLabel(from, from.effect(f), to, to.effect(t))) {
+		diff.changedTransitions.add(to.transitionName(t));
+	    }
+	}
+
+	diffSymbols(from.executionCount(), from::executionName, to::executionId, diff.removedExecutions);
+	for (int e = 0; e < to.executionCount(); e++) {
+	    final int f = from.executionId(to.executionName(e));
+	    if (f == MDCSolution.NONE) {
+		diff.addedExecutions.add(to.executionName(e));
+	    } else if (!sameExecution(from, f, to, e, diff.changedTransitions)) {
+		diff.changedExecutions.add(to.executionName(e));
+	    }
+	}
+
+	diffSymbols(from.traceCount(), from::traceName, to::traceId, diff.removedTraces);
+	for (int r = 0; r < to.traceCount(); r++) {
+	    final int f = from.traceId(to.traceName(r));
+	    if (f == MDCSolution.NONE) {
+		diff.addedTraces.add(to.traceName(r));
+	    } else if (!sameTrace(from, f, to, r)) {
+		diff.changedTraces.add(to.traceName(r));
+	    }
+	}
+	return diff;
+    }
+
+    /** Adds to missing the names of the first solution that the second one does not know. */
+    private static void diffSymbols(int count, IntFunction<String> name, ToIntFunction<String> otherId,
+				    Set<String> missing) {
+	for (int i = 0; i < count; i++) {
+	    if (otherId.applyAsInt(name.apply(i)) == MDCSolution.NONE) missing.add(name.apply(i));
+	}
+    }
+
+    private static boolean sameState(MDCSolution from, int f, MDCSolution to, int t) {
+	if (f == MDCSolution.NONE || t == MDCSolution.NONE) return f == t;
+	return from.stateName(f).equals(to.stateName(t));
+    }
+
+    private static boolean sameLabel(MDCSolution from, int f, MDCSolution to, int t) {
+	if (f == MDCSolution.NONE || t == MDCSolution.NONE) return f == t;
+	return from.labelName(f).equals(to.labelName(t)) && from.isEmptyLabel(f) == to.isEmptyLabel(t);
+    }
+
+    private static boolean sameExecution(MDCSolution from, int f, MDCSolution to, int e, Set<String> changedTransitions) {
+	if (!sameState(from, from.initialState(f), to, to.initialState(e))) return false;
+	if (from.executionLength(f) != to.executionLength(e)) return false;
+	for (int i = 0; i < to.executionLength(e); i++) {
+	    final String name = to.transitionName(to.executionStep(e, i));
+	    if (!name.equals(from.transitionName(from.executionStep(f, i)))) return false;
+	    if (changedTransitions.contains(name)) return false;
+	}
+	return true;
+    }
+
+    private static boolean sameTrace(MDCSolution from, int f, MDCSolution to, int r) {
+	if (from.traceLength(f) != to.traceLength(r)) return false;
+	for (int i = 0; i < to.traceLength(r); i++) {
+	    if (!sameLabel(from, from.traceLabel(f, i), to, to.traceLabel(r, i))) return false;
+	}
+	return true;
+    }
+
+    /** Whether the transitions graph has to be patched. */
+    public boolean transitionsChanged() {
+	return !(addedStates.isEmpty() && removedStates.isEmpty() && addedTransitions.isEmpty()
+		 && removedTransitions.isEmpty() && changedTransitions.isEmpty());
+    }
+
+    public boolean executionsChanged() {
+	return !(addedExecutions.isEmpty() && removedExecutions.isEmpty() && changedExecutions.isEmpty());
+    }
+
+    public boolean tracesChanged() {
+	return !(addedTraces.isEmpty() && removedTraces.isEmpty() && changedTraces.isEmpty());
+    }
+
+    public boolean isEmpty() {
+	return !(transitionsChanged() || executionsChanged() || tracesChanged());
+    }
+
+    public String toString() {
+	return String.format("states +%d/-%d, transitions +%d/-%d/~%d, executions +%d/-%d/~%d, traces +%d/-%d/~%d",
+			     addedStates.size(), removedStates.size(),
+			     addedTransitions.size(), removedTransitions.size(), changedTransitions.size(),
+			     addedExecutions.size(), removedExecutions.size(), changedExecutions.size(),
+			     addedTraces.size(), removedTraces.size(), changedTraces.size());
+    }
+}
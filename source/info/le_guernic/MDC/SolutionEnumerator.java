@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import edu.mit.csail.sdg.alloy4.Err;
+
+/**
+ * Source of the successive solutions of a command. Not thread-safe: an
+ * enumeration must only be walked by one thread at a time.
+ *
+ * Unless the system property "mdc.skipIsomorphic" is false, solutions that
+ * only differ from a previous one by the names of their atoms are skipped.
+ */
+
+public interface SolutionEnumerator {
+
+    public static final boolean SKIP_ISOMORPHIC = !"false".equals(System.getProperty("mdc.skipIsomorphic"));
+
+    /** Returns the next solution, or null once the solutions are exhausted. */
+    PreparedSolution next() throws Err;
+
+    /** Number of solutions skipped so far because they were isomorphic to a previous one. */
+    int getSkippedCount();
+
+    /**
+     * Whether the Alloy XML form of the solutions is written, on the
+     * enumerating thread, when they are extracted (see PreparedSolution.getAlloyXml).
+     * Backends without Alloy solutions ignore it.
+     */
+    default void setAlloyXmlKept(boolean kept) {}
+
+    /** Releases the resources of the enumeration; next() must not be called afterwards. */
+    void close();
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.ErrorFatal;
+
+/**
+ * Solves, extracts and builds the graphs of the next solutions of an
+ * enumeration in the background, so that "Next" can be served from a
+ * bounded queue. Prefetching pauses while the heap is under pressure.
+ *
+ * The depth is read from the "mdc.prefetch.depth" system property (0
+ * disables prefetching) and the pressure threshold, as a fraction of the
+ * maximum heap, from "mdc.prefetch.maxHeapRatio".
+ */
+
+public class SolutionPrefetcher {
+
+    public static final int DEFAULT_DEPTH = Integer.getInteger("mdc.prefetch.depth", 3);
+    private static final double MAX_HEAP_RATIO = Double.parseDouble(System.getProperty("mdc.prefetch.maxHeapRatio", "0.75"));
+
+    /** Marks the end of the enumeration in the queue. */
+    private static final PreparedSolution END = new PreparedSolution(-1, null, null);
+    // How long stop() waits for the solution being solved before leaving the closing to the thread
+    private static final long STOP_WAIT_MS = 500;
+
+    private final SolutionEnumerator enumerator;
+    private final Consumer<PreparedSolution> preparer;
+    private final BlockingQueue<PreparedSolution> queue;
+    private final Thread thread;
+    private volatile boolean stopped = false;
+    private volatile Throwable failure = null;
+    private boolean closed = false;
+
+    public SolutionPrefetcher(SolutionEnumerator enumerator, int depth) {
+	this(enumerator, depth, PreparedSolution::prepareGraphs);
+    }
+
+    /** The preparer builds what the solutions need to be displayed, at least their graphs. */
+    public SolutionPrefetcher(SolutionEnumerator enumerator, int depth, Consumer<PreparedSolution> preparer) {
+	this.enumerator = enumerator;
+	this.preparer = preparer;
+	if (depth > 0) {
+	    this.queue = new ArrayBlockingQueue<PreparedSolution>(depth);
+	    this.thread = new Thread(new Runnable() {
+		    public void run() { prefetch(); }
+		}, "MDC-prefetcher");
+	    this.thread.setDaemon(true);
+	    this.thread.start();
+	} else {
+	    this.queue = null;
+	    this.thread = null;
+	}
+    }
+
+    private void prefetch() {
+	try {
+	    while (!stopped) {
+		while (!stopped && underMemoryPressure() && !queue.isEmpty()) {
+		    Thread.sleep(100);
+		}
+		PreparedSolution sol = enumerator.next();
+		if (sol == null) break;
+		preparer.accept(sol);
+		queue.put(sol);
+	    }
+	} catch (InterruptedException e) {
+	    // stopped
+	} catch (Err | RuntimeException | Error e) {
+	    if (!stopped) failure = e;
+	} finally {
+	    if (stopped) {
+		// The enumerator is not thread-safe, it is closed once its last call is over
+		closeEnumerator();
+	    } else {
+		try {
+		    queue.put(END);
+		} catch (InterruptedException e) {
+		    // stopped while the queue was full, nobody is waiting anymore
+		    closeEnumerator();
+		}
+	    }
+	}
+    }
+
+    private synchronized void closeEnumerator() {
+	if (closed) return;
+	closed = true;
+	enumerator.close();
+    }
+
+    private static boolean underMemoryPressure() {
+	final Runtime rt = Runtime.getRuntime();
+	final long used = rt.totalMemory() - rt.freeMemory();
+	return used > MAX_HEAP_RATIO * rt.maxMemory();
+    }
+
+    /**
+     * Returns the next solution, waiting for it if it has not been
+     * prefetched yet, or null once the solutions are exhausted.
+     */
+    public PreparedSolution take() throws Err, InterruptedException {
+	if (queue == null) {
+	    PreparedSolution sol = enumerator.next();
+	    if (sol != null) preparer.accept(sol);
+	    return sol;
+	}
+	PreparedSolution sol = queue.take();
+	if (sol == END) {
+	    // Keep answering "no more solutions" to later calls
+	    queue.offer(END);
+	    final Throwable f = failure;
+	    if (f == null) return null;
+	    if (f instanceof Err) throw (Err) f;
+	    if (f instanceof CancellationException) throw (CancellationException) f;
+	    throw new ErrorFatal(f + " while prefetching solutions", f);
+	}
+	return sol;
+    }
+
+    /** Number of solutions ready to be displayed. */
+    public int available() {
+	return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * Stops prefetching. The solution being solved, if any, is dropped. The
+     * enumerator is closed once the prefetching thread is done with it: here
+     * if it ends in time, by the thread itself otherwise.
+     */
+    public void stop() {
+	stopped = true;
+	if (thread == null) {
+	    closeEnumerator();
+	    return;
+	}
+	thread.interrupt();
+	try {
+	    thread.join(STOP_WAIT_MS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	if (!thread.isAlive()) closeEnumerator();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Random access to the solutions of a store written by SolutionStoreWriter.
+ * The file is memory-mapped and only an index of record offsets is built
+ * when opening it; solutions are decoded on demand. A record truncated by
+ * an interrupted write is ignored.
+ */
+
+public class SolutionStoreReader implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int[] offsets = new int[1024];
+    private int size = 0;
+
+    public SolutionStoreReader(String filePathStr) throws IOException {
+	final Path filePath = FileSystems.getDefault().getPath(filePathStr);
+	channel = FileChannel.open(filePath, StandardOpenOption.READ);
+	try {
+	    final long length = channel.size();
+	    if (length > Integer.MAX_VALUE) {
+		throw new IOException(filePathStr + " is too large to be mapped (" + length + " bytes)");
+	    }
+	    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+	    if (length < SolutionStoreWriter.HEADER_SIZE
+		|| buffer.getInt(0) != SolutionStoreWriter.MAGIC
+		|| buffer.getInt(4) != SolutionStoreWriter.VERSION) {
+		throw new IOException(filePathStr + " is not a solution store of version " + SolutionStoreWriter.VERSION);
+	    }
+	    buildIndex();
+	} catch (IOException e) {
+	    channel.close();
+	    throw e;
+	}
+    }
+
+    private void buildIndex() {
+	final int limit = buffer.limit();
+	int pos = SolutionStoreWriter.HEADER_SIZE;
+	while (pos + 8 <= limit) {
+	    final int length = buffer.getInt(pos);
+	    if (length < 0 || pos + 8 + length > limit) break;
+	    if (size == offsets.length) offsets = Arrays.copyOf(offsets, 2 * size);
+	    offsets[size++] = pos;
+	    pos += 8 + length;
+	}
+    }
+
+    /** Number of solutions in the store. */
+    public int size() {
+	return size;
+    }
+
+    /** Position, in its enumeration, of the i-th solution of the store. */
+    public int getEnumerationIndex(int i) {
+	return buffer.getInt(offsets[i] + 4);
+    }
+
+    public MDCSolution get(int i) throws IOException {
+	if (i < 0 || i >= size) throw new IndexOutOfBoundsException("No solution " + i + " in store of " + size);
+	final ByteBuffer record = buffer.duplicate();
+	record.position(offsets[i] + 8);
+	record.limit(offsets[i] + 8 + buffer.getInt(offsets[i]));
+	return SolutionCodec.decode(record.slice());
+    }
+
+    public PreparedSolution getPrepared(int i) throws IOException {
+	return new PreparedSolution(getEnumerationIndex(i), null, get(i));
+    }
+
+    public void close() throws IOException {
+	channel.close();
+    }
+}
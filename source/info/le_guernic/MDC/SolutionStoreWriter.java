@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * Appends solutions to a solution store file. A store starts with a header
+ * and holds one record per solution: its length, its position in the
+ * enumeration and its SolutionCodec form. Writing to an existing store
+ * appends to it, after dropping a last record truncated by an interrupted
+ * write.
+ */
+
+public class SolutionStoreWriter implements SolutionSink {
+
+    static final int MAGIC = 0x4D444353; // "MDCS"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 8;
+    public static final String SUFFIX = ".mdcs";
+
+    private final DataOutputStream out;
+
+    public SolutionStoreWriter(String filePathStr) throws IOException {
+	final Path filePath = FileSystems.getDefault().getPath(filePathStr);
+	final boolean isNew = !Files.exists(filePath) || Files.size(filePath) == 0;
+	if (!isNew) {
+	    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+		// Do not append to something that is not a store
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {}
+		if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+		    throw new IOException(filePathStr + " is not a solution store of version " + VERSION);
+		}
+		// Otherwise the records appended would follow the garbage, and be lost to readers
+		final long end = endOfRecords(channel);
+		if (end < channel.size()) {
+		    Log.warn(">>> WARNING <<< Dropping " + (channel.size() - end) + " bytes of a truncated record at the end of " + filePathStr);
+		    channel.truncate(end);
+		}
+	    }
+	}
+	this.out = new DataOutputStream(new BufferedOutputStream(
+	    Files.newOutputStream(filePath, StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16));
+	if (isNew) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	}
+    }
+
+    /** Position following the last complete record of the store, as SolutionStoreReader indexes them. */
+    private static long endOfRecords(FileChannel channel) throws IOException {
+	final long size = channel.size();
+	final ByteBuffer length = ByteBuffer.allocate(4);
+	long pos = HEADER_SIZE;
+	while (pos + 8 <= size) {
+	    length.clear();
+	    while (length.hasRemaining() && channel.read(length, pos + length.position()) >= 0) {}
+	    final int n = length.getInt(0);
+	    if (n < 0 || pos + 8 + n > size) break;
+	    pos += 8 + n;
+	}
+	return pos;
+    }
+
+    public void write(PreparedSolution sol) throws IOException {
+	final byte[] record = SolutionCodec.encode(sol.getMDCSolution());
+	out.writeInt(record.length);
+	out.writeInt(sol.getIndex());
+	out.write(record);
+    }
+
+    public void flush() throws IOException {
+	out.flush();
+    }
+
+    public void close() throws IOException {
+	out.close();
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.translator.A4Options;
+
+/**
+ * Solves the commands of a model. The backend is chosen with the system
+ * property "mdc.backend": "alloy" (the default) translates the commands
+ * to SAT through Kodkod, "explicit" enumerates the solutions of the
+ * commands it knows directly and hands the other ones to Alloy.
+ */
+
+public interface SolverBackend {
+
+    /** Name of the backend, part of the keys of the solution cache. */
+    String getName();
+
+    /** Starts the enumeration of the solutions of the command. */
+    SolutionEnumerator solve(Command cmd, A4Reporter reporter) throws Err;
+
+    public static SolverBackend create(String name, Module alloyWorld, A4Options options) {
+	final AlloyBackend alloy = new AlloyBackend(alloyWorld, options);
+	if (name.equals("explicit")) return new ExplicitStateBackend(alloy);
+	if (!name.equals("alloy")) {
+	    Log.warn(">>> WARNING <<< Unknown backend '" + name + "', using the Alloy backend");
+	}
+	return alloy;
+    }
+
+    public static SolverBackend fromSystemProperties(Module alloyWorld, A4Options options) {
+	return create(System.getProperty("mdc.backend", "alloy"), alloyWorld, options);
+    }
+}
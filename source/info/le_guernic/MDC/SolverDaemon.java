@@ -0,0 +1,499 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.ErrorWarning;
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.parser.CompUtil;
+import edu.mit.csail.sdg.alloy4compiler.translator.*;
+
+/**
+ * Long-running solver serving requests on a local socket, so that the
+ * JVM, the parsed models and the JIT-compiled solver are reused from one
+ * request to the next. Models are parsed once and parsed again only when
+ * one of their files changes.
+ *
+ * Requests and responses are JSON objects, one per line. Every request
+ * gets a single final response, holding "ok" (and "error" if it failed);
+ * "enumerate" sends one line per solution before it. Operations:
+ *
+ *   {"op":"ping"}
+ *   {"op":"load", "model":path}                  commands of the model
+ *   {"op":"run", "model":path, "command":labelOrIndex, "backend":name}
+ *                                                 first solution and a session
+ *   {"op":"next", "session":id}                  following solution, null at the end
+ *   {"op":"close", "session":id}
+ *   {"op":"enumerate", "model", "command", "max", "backend"}
+ *   {"op":"export", "model", "command", "max", "backend", "formats":"xml,dot,json", "dir":path}
+ *   {"op":"shutdown"}
+ *
+ * An "id" member of a request is copied to its responses. Sessions are
+ * shared by all the connections, so a client may continue an enumeration
+ * started by another one. The number of sessions is bounded, the least
+ * recently used ones are closed first.
+ *
+ * Configured with the system properties "mdc.daemon.port",
+ * "mdc.daemon.threads" (connections served at the same time),
+ * "mdc.daemon.queue" (connections waiting for a thread), "mdc.daemon.idleMs"
+ * and "mdc.daemon.maxSessions".
+ */
+
+public class SolverDaemon implements Closeable {
+
+    public static final int DEFAULT_PORT = Integer.getInteger("mdc.daemon.port", 7733);
+
+    private static final int IDLE_MS = Integer.getInteger("mdc.daemon.idleMs", 300000);
+    private static final int MAX_SESSIONS = Integer.getInteger("mdc.daemon.maxSessions", 64);
+
+    /** A parsed model and the hash of the files it was parsed from. */
+    private static class LoadedModel {
+	final Module module;
+	final String hash;
+
+	LoadedModel(Module module, String hash) {
+	    this.module = module;
+	    this.hash = hash;
+	}
+    }
+
+    /** An enumeration left open between requests. */
+    private static class Session {
+	final Command command;
+	final SolutionEnumerator enumerator;
+	final Metrics.CommandStats stats;
+	int count = 0;
+
+	Session(Command command, SolutionEnumerator enumerator, Metrics.CommandStats stats) {
+	    this.command = command;
+	    this.enumerator = enumerator;
+	    this.stats = stats;
+	}
+
+	/** Called with the lock of the session held. */
+	void close() {
+	    enumerator.close();
+	    Metrics.endCommand(stats);
+	}
+    }
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ServerSocket server;
+    private final ThreadPoolExecutor workers;
+    private final A4Options options;
+    private final A4Reporter reporter;
+    private final Map<String,LoadedModel> models = new HashMap<String,LoadedModel>(); // guarded by itself
+    // Sessions by identifier, in access order for the eviction; guarded by itself
+    private final LinkedHashMap<String,Session> sessions = new LinkedHashMap<String,Session>(16, 0.75f, true);
+    private final AtomicInteger sessionCounter = new AtomicInteger();
+    private volatile boolean running = true;
+
+    public SolverDaemon(int port, int nbThreads, int queueCapacity) throws IOException {
+	this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+	this.workers = new ThreadPoolExecutor(nbThreads, nbThreads, 0L, TimeUnit.MILLISECONDS,
+					      new ArrayBlockingQueue<Runnable>(queueCapacity),
+					      (r) -> {
+						  Thread t = new Thread(r, "MDC-daemon-" + threadCounter.incrementAndGet());
+						  t.setDaemon(true);
+						  return t;
+					      });
+	this.options = new A4Options();
+	this.options.solver = A4Options.SatSolver.SAT4J;
+	this.reporter = new A4Reporter() {
+	    @Override public void warning(ErrorWarning msg) {
+		Log.warn("Relevance Warning:\n"+(msg.toString().trim())+"\n");
+	    }
+	    // Requests are solved on the thread of their command, see Metrics
+	    @Override public void translate(String solver, int bitwidth, int maxseq, int skolemDepth, int symmetry) {
+		Metrics.translationStarted();
+	    }
+	    @Override public void solve(int primaryVars, int totalVars, int clauses) {
+		Metrics.translated(primaryVars, totalVars, clauses);
+	    }
+	    @Override public void resultSAT(Object command, long solvingTime, Object solution) {
+		Metrics.solved(solvingTime);
+	    }
+	    @Override public void resultUNSAT(Object command, long solvingTime, Object solution) {
+		Metrics.solved(solvingTime);
+	    }
+	};
+    }
+
+    public int getPort() {
+	return server.getLocalPort();
+    }
+
+    /** Accepts connections until the daemon is shut down. */
+    public void serve() {
+	Log.info("=========== Solver daemon listening on port " + getPort() + " =============");
+	while (running) {
+	    final Socket socket;
+	    try {
+		socket = server.accept();
+	    } catch (IOException e) {
+		if (running) Log.error("IOException: " + e);
+		continue;
+	    }
+	    try {
+		workers.execute(() -> handle(socket));
+	    } catch (RejectedExecutionException e) {
+		try (Socket s = socket; Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)) {
+		    out.write("{\"ok\":false,\"error\":\"busy\"}\n");
+		} catch (IOException ex) {
+		    // the client is gone anyway
+		}
+	    }
+	}
+    }
+
+    public void close() {
+	running = false;
+	try {
+	    server.close();
+	} catch (IOException e) {
+	    Log.error("IOException: " + e);
+	}
+	workers.shutdownNow();
+	synchronized (sessions) {
+	    for (Session s:sessions.values()) s.close();
+	    sessions.clear();
+	}
+    }
+
+    /**
+     * Parses the model and solves the first command, so that the classes of
+     * the parser, translator and solver are loaded and compiled before the
+     * first request.
+     */
+    public void warmUp(String filename) {
+	final long start = System.nanoTime();
+	try {
+	    final Module world = model(filename);
+	    if (!world.getAllCommands().isEmpty()) {
+		final SolutionEnumerator en = backend(world, null).solve(world.getAllCommands().get(0), reporter);
+		en.next();
+		en.close();
+	    }
+	    Log.info("Warmed up with '" + filename + "' in " + ((System.nanoTime() - start) / 1000000) + " ms");
+	} catch (Err | IOException e) {
+	    Log.warn(">>> WARNING <<< Warm-up with '" + filename + "' failed: " + e);
+	}
+    }
+
+    // MODELS AND SESSIONS
+
+    /** Returns the parsed model, parsing it again if one of its files changed. */
+    private Module model(String filename) throws Err, IOException {
+	final String path = new File(filename).getCanonicalPath();
+	synchronized (models) {
+	    final LoadedModel loaded = models.get(path);
+	    if (loaded != null && loaded.hash.equals(SolutionCache.modelHash(loaded.module))) return loaded.module;
+	    Log.info("=========== Parsing+Typechecking '" + path + "' =============");
+	    final Module world;
+	    try (Metrics.Timer t = Metrics.time(Metrics.Phase.PARSE)) {
+		world = CompUtil.parseEverything_fromFile(reporter, null, path);
+	    }
+	    models.put(path, new LoadedModel(world, SolutionCache.modelHash(world)));
+	    return world;
+	}
+    }
+
+    private SolverBackend backend(Module world, String name) {
+	// Every enumeration gets its own copy of the options
+	return SolverBackend.create((name == null) ? System.getProperty("mdc.backend", "alloy") : name, world, options.dup());
+    }
+
+    private Session session(String id) {
+	synchronized (sessions) {
+	    return sessions.get(id);
+	}
+    }
+
+    private String openSession(Session s) {
+	final String id = "s" + sessionCounter.incrementAndGet();
+	final List<Session> evicted = new ArrayList<Session>();
+	synchronized (sessions) {
+	    sessions.put(id, s);
+	    final Iterator<Session> it = sessions.values().iterator();
+	    while (sessions.size() > MAX_SESSIONS && it.hasNext()) {
+		evicted.add(it.next());
+		it.remove();
+	    }
+	}
+	// Closed out of the lock, they may be busy with a request
+	for (Session old:evicted) {
+	    synchronized (old) {
+		old.close();
+	    }
+	}
+	return id;
+    }
+
+    // REQUESTS
+
+    private void handle(Socket socket) {
+	try (Socket s = socket;
+	     BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+	     Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+	    s.setSoTimeout(IDLE_MS);
+	    String line;
+	    while (running && (line = in.readLine()) != null) {
+		if (line.trim().isEmpty()) continue;
+		Object id = null;
+		StringBuilder response;
+		try {
+		    final Map<String,Object> request = Json.parseObject(line);
+		    id = request.get("id");
+		    response = execute(request, id, out);
+		} catch (Err | IOException | RuntimeException e) {
+		    response = start(id).append(",\"ok\":false,\"error\":");
+		    Json.quote(response, e.toString());
+		} finally {
+		    // The thread serves other sessions next
+		    Metrics.resume(null);
+		}
+		out.write(response.append("}\n").toString());
+		out.flush();
+	    }
+	} catch (SocketTimeoutException e) {
+	    // idle client, its thread is given back to the pool
+	} catch (IOException e) {
+	    Log.error("IOException: " + e);
+	}
+    }
+
+    /** Start of a response to the request with the given id, to which members are appended. */
+    private static StringBuilder start(Object id) {
+	final StringBuilder sb = new StringBuilder("{\"id\":");
+	if (id instanceof String) {
+	    Json.quote(sb, (String) id);
+	} else {
+	    sb.append(id);
+	}
+	return sb;
+    }
+
+    private static StringBuilder ok(Object id) {
+	return start(id).append(",\"ok\":true");
+    }
+
+    private static String string(Map<String,Object> request, String key, String defaultValue) {
+	final Object v = request.get(key);
+	if (v == null) {
+	    if (defaultValue == null) throw new IllegalArgumentException("missing \"" + key + "\"");
+	    return defaultValue;
+	}
+	return v.toString();
+    }
+
+    private static int integer(Map<String,Object> request, String key, int defaultValue) {
+	final Object v = request.get(key);
+	return (v instanceof Number) ? ((Number) v).intValue() : defaultValue;
+    }
+
+    private static void appendSolution(StringBuilder sb, PreparedSolution sol) {
+	sb.append(",\"solution\":");
+	if (sol == null) {
+	    sb.append("null");
+	} else {
+	    sb.append(JsonExportSink.toJson(sol.getIndex(), sol.getMDCSolution()));
+	}
+    }
+
+    private StringBuilder execute(Map<String,Object> request, Object id, Writer out) throws Err, IOException {
+	final String op = string(request, "op", null);
+	switch (op) {
+	case "ping" :
+	    return ok(id);
+	case "load" : {
+	    final List<String> labels = new ArrayList<String>();
+	    for (Command cmd:model(string(request, "model", null)).getAllCommands()) labels.add(cmd.label);
+	    final StringBuilder sb = ok(id).append(",\"commands\":");
+	    Json.quoteAll(sb, labels);
+	    return sb;
+	}
+	case "run" : {
+	    final Module world = model(string(request, "model", null));
+	    final Command cmd = command(world, request);
+	    final Metrics.CommandStats stats = Metrics.beginCommand(cmd.label);
+	    final Session s;
+	    try {
+		s = new Session(cmd, backend(world, (String) request.get("backend")).solve(cmd, reporter), stats);
+	    } catch (Err | RuntimeException e) {
+		Metrics.endCommand(stats);
+		throw e;
+	    }
+	    final String sid = openSession(s);
+	    return next(id, sid, s);
+	}
+	case "next" : {
+	    final String sid = string(request, "session", null);
+	    final Session s = session(sid);
+	    if (s == null) throw new IllegalArgumentException("no session " + sid);
+	    return next(id, sid, s);
+	}
+	case "close" : {
+	    final String sid = string(request, "session", null);
+	    final Session s;
+	    synchronized (sessions) {
+		s = sessions.remove(sid);
+	    }
+	    if (s != null) {
+		synchronized (s) {
+		    s.close();
+		}
+	    }
+	    return ok(id);
+	}
+	case "enumerate" :
+	case "export" : {
+	    final Module world = model(string(request, "model", null));
+	    final Command cmd = command(world, request);
+	    final int max = integer(request, "max", -1);
+	    final Metrics.CommandStats stats = Metrics.beginCommand(cmd.label);
+	    final SolutionEnumerator en;
+	    try {
+		en = backend(world, (String) request.get("backend")).solve(cmd, reporter);
+	    } catch (Err | RuntimeException e) {
+		Metrics.endCommand(stats);
+		throw e;
+	    }
+	    int count = 0;
+	    try (ExportPipeline exporter = op.equals("export")
+		 ? ExportPipeline.create(string(request, "formats", "json"),
+					 FileSystems.getDefault().getPath(string(request, "dir", "exports")), cmd.label, 64)
+		 : null) {
+		if (exporter != null) en.setAlloyXmlKept(exporter.needsAlloyXml());
+		PreparedSolution sol;
+		while ((max < 0 || count < max) && (sol = en.next()) != null) {
+		    if (exporter != null) {
+			exporter.write(sol);
+		    } else {
+			final StringBuilder sb = start(id);
+			appendSolution(sb, sol);
+			out.write(sb.append("}\n").toString());
+		    }
+		    count++;
+		}
+	    } finally {
+		en.close();
+		Metrics.endCommand(stats);
+	    }
+	    return ok(id).append(",\"count\":").append(count).append(",\"skipped\":").append(en.getSkippedCount());
+	}
+	case "shutdown" :
+	    Log.info("=========== Solver daemon shut down by a client =============");
+	    running = false;
+	    server.close();
+	    return ok(id);
+	default :
+	    throw new IllegalArgumentException("unknown operation '" + op + "'");
+	}
+    }
+
+    private static Command command(Module world, Map<String,Object> request) {
+	final String name = string(request, "command", "0");
+	final Command cmd = BatchEnumerator.findCommand(world, name);
+	if (cmd == null) throw new IllegalArgumentException("no command '" + name + "'");
+	return cmd;
+    }
+
+    private static StringBuilder next(Object id, String sid, Session s) throws Err {
+	final PreparedSolution sol;
+	final int count;
+	synchronized (s) {
+	    Metrics.resume(s.stats);
+	    sol = s.enumerator.next();
+	    if (sol != null) s.count++;
+	    count = s.count;
+	}
+	final StringBuilder sb = ok(id).append(",\"session\":");
+	Json.quote(sb, sid).append(",\"count\":").append(count);
+	appendSolution(sb, sol);
+	return sb;
+    }
+
+    // COMMAND LINE
+
+    private static void usage() {
+	System.out.println("Usage: Visualizer -daemon [-port N] [-threads N] [warmUpAlsFile ...]");
+    }
+
+    public static void main(String[] args) {
+	// Graphs are drawn to images without any display
+	if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+	int port = DEFAULT_PORT;
+	int nbThreads = Integer.getInteger("mdc.daemon.threads", Runtime.getRuntime().availableProcessors());
+	final List<String> warmUp = new ArrayList<String>();
+	for (int i = 0; i < args.length; i++) {
+	    if (args[i].equals("-port") && i + 1 < args.length) {
+		try {
+		    port = Integer.parseInt(args[++i]);
+		} catch (NumberFormatException e) {
+		    port = -1;
+		}
+	    } else if (args[i].equals("-threads") && i + 1 < args.length) {
+		try {
+		    nbThreads = Integer.parseInt(args[++i]);
+		} catch (NumberFormatException e) {
+		    nbThreads = 0;
+		}
+	    } else if (!args[i].startsWith("-")) {
+		warmUp.add(args[i]);
+	    } else {
+		usage();
+		return;
+	    }
+	}
+	if (port < 0 || port > 65535 || nbThreads < 1) {
+	    usage();
+	    return;
+	}
+	try (SolverDaemon daemon = new SolverDaemon(port, nbThreads, Math.max(1, Integer.getInteger("mdc.daemon.queue", 16)))) {
+	    for (String filename:warmUp) daemon.warmUp(filename);
+	    daemon.serve();
+	} catch (IOException e) {
+	    Log.error("IOException: " + e);
+	}
+	Log.flush();
+    }
+}
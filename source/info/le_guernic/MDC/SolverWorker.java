@@ -0,0 +1,574 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4.ErrorWarning;
+import edu.mit.csail.sdg.alloy4compiler.ast.*;
+import edu.mit.csail.sdg.alloy4compiler.translator.*;
+
+/**
+ * Runs the commands requested by the GUI on a background thread, so that
+ * translation and solving never block the Swing event dispatch thread.
+ * Once a command has a solution, the following ones are prefetched. When
+ * a cache is given, the first solutions of a command are saved to it and
+ * shown straight from it the next time the unchanged command is run.
+ */
+
+public class SolverWorker {
+
+    /** Receives the outcome of submitted commands. Methods are called on the worker thread. */
+    public interface Listener {
+	void progress(String msg);
+	void solutionFound(PreparedSolution sol);
+	void reportReady(String report);
+	void noSolution(String msg);
+	void failed(String msg, Throwable cause);
+	void cancelled();
+    }
+
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final Module alloyWorld;
+    private final A4Options options;
+    private final Listener listener;
+    private final SolutionCache cache;
+    private final String modelHash;
+    private final SolverBackend backend;
+
+    private volatile Thread workerThread = null;
+    private ExecutorService executor = newExecutor();
+    // Worker threads left inside a SAT search by cancel()
+    private final List<Thread> abandoned = new ArrayList<Thread>();
+    private Task currentTask = null;
+    // Source of the live solutions following the displayed one. It is
+    // still pending while cached solutions are shown and the command is
+    // solved in the background.
+    private CompletableFuture<SolutionPrefetcher> source = null;
+    private Task backgroundTask = null;
+    private final Deque<PreparedSolution> cachedSolutions = new ArrayDeque<PreparedSolution>();
+    private int lastShownIndex = -1;
+    private Recorder recorder = null;
+    private ExportPipeline exporter = null;
+    private volatile LayoutPrecomputer layouts = null;
+
+    public SolverWorker(Module alloyWorld, A4Options options, Listener listener) {
+	this(alloyWorld, options, listener, null);
+    }
+
+    /** The first solutions of the commands are read from and saved to the cache, if not null. */
+    public SolverWorker(Module alloyWorld, A4Options options, Listener listener, SolutionCache cache) {
+	this.alloyWorld = alloyWorld;
+	this.options = options;
+	this.listener = listener;
+	this.cache = cache;
+	this.modelHash = (cache == null) ? null : SolutionCache.modelHash(alloyWorld);
+	this.backend = SolverBackend.fromSystemProperties(alloyWorld, options);
+    }
+
+    private ExecutorService newExecutor() {
+	return Executors.newSingleThreadExecutor(
+	    new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "MDC-solver-" + threadCounter.incrementAndGet());
+		    t.setDaemon(true);
+		    workerThread = t;
+		    return t;
+		}
+	    });
+    }
+
+    /** Lays out the graphs of the solutions as soon as they are extracted. */
+    public void setLayoutPrecomputer(LayoutPrecomputer layouts) {
+	this.layouts = layouts;
+    }
+
+    /** Builds the graphs of the solution and starts laying them out. */
+    private void prepare(PreparedSolution sol) {
+	sol.prepareGraphs();
+	final LayoutPrecomputer l = layouts;
+	if (l != null) l.submit(sol);
+    }
+
+    /** Key of the command in the cache, or null if there is no cache. */
+    public String getCacheKey(Command cmd) {
+	return (cache == null) ? null : SolutionCache.key(modelHash, cmd, options, backend.getName());
+    }
+
+    /** Returns the commands of the module that have solutions in the cache. */
+    public List<Command> getCachedCommands() {
+	final List<Command> commands = new ArrayList<Command>();
+	if (cache != null) {
+	    for (Command cmd:alloyWorld.getAllCommands()) {
+		if (cache.contains(SolutionCache.key(modelHash, cmd, options, backend.getName()))) commands.add(cmd);
+	    }
+	}
+	return commands;
+    }
+
+    // COMMANDS
+
+    public void submitRun(final Command cmd) {
+	synchronized (this) {
+	    // The previous command is left behind
+	    if (backgroundTask != null) backgroundTask.cancelled = true;
+	    backgroundTask = null;
+	    cachedSolutions.clear();
+	    lastShownIndex = -1;
+	}
+	submit(new Task("Executing command '" + cmd + "'") {
+		void execute() throws Err {
+		    Metrics.beginCommand(cmd.label);
+		    flushRecorder();
+		    replaceExporter(ExportPipeline.fromSystemProperties(cmd.label));
+		    final String key = getCacheKey(cmd);
+		    final List<MDCSolution> hits = (key == null) ? null : cache.load(key);
+		    if (hits != null && !hits.isEmpty()) {
+			runFromCache(this, cmd, hits);
+			return;
+		    }
+		    SolutionEnumerator enumerator = backend.solve(cmd, reporter);
+		    enumerator.setAlloyXmlKept(exportsAlloyXml());
+		    listener.progress("Extracting solution");
+		    PreparedSolution first = enumerator.next();
+		    if (first == null) {
+			enumerator.close();
+			deliver(this, null, CompletableFuture.completedFuture((SolutionPrefetcher) null), "No solution!");
+		    } else {
+			prepare(first);
+			synchronized (SolverWorker.this) {
+			    if (key != null && !cancelled) recorder = new Recorder(key, SolutionCache.DEFAULT_SOLUTIONS);
+			}
+			SolutionPrefetcher prefetcher = new SolutionPrefetcher(enumerator, SolutionPrefetcher.DEFAULT_DEPTH, SolverWorker.this::prepare);
+			deliver(this, first, CompletableFuture.completedFuture(prefetcher), null);
+		    }
+		}
+	    });
+    }
+
+    /**
+     * Displays the cached solutions of the command at once, and solves it on
+     * a background thread so that the enumeration can go on after them.
+     */
+    private void runFromCache(Task task, final Command cmd, List<MDCSolution> hits) {
+	Log.info(">>> " + hits.size() + " solutions of '" + cmd + "' read from the cache <<<");
+	final CompletableFuture<SolutionPrefetcher> live = new CompletableFuture<SolutionPrefetcher>();
+	final PreparedSolution first = new PreparedSolution(0, null, hits.get(0));
+	prepare(first);
+	final Task background = new Task("Solving '" + cmd + "' in the background", true) {
+		void execute() throws Err {
+		    final SolutionEnumerator enumerator = backend.solve(cmd, reporter);
+		    enumerator.setAlloyXmlKept(exportsAlloyXml());
+		    final SolutionPrefetcher prefetcher = new SolutionPrefetcher(enumerator, SolutionPrefetcher.DEFAULT_DEPTH, SolverWorker.this::prepare);
+		    if (cancelled && prefetcher != null) prefetcher.stop();
+		    live.complete(prefetcher);
+		}
+		@Override void finished() {
+		    // Unblock a "Next" waiting for the live solutions, even on failure
+		    if (!live.isDone()) live.completeExceptionally((failure != null) ? failure : new CancellationException());
+		}
+	    };
+	final PreparedSolution second;
+	synchronized (this) {
+	    if (task.cancelled) return;
+	    for (int i = 1; i < hits.size(); i++) {
+		cachedSolutions.add(new PreparedSolution(i, null, hits.get(i)));
+	    }
+	    second = cachedSolutions.peek();
+	    backgroundTask = background;
+	}
+	if (second != null) prepare(second);
+	Thread t = new Thread(background, "MDC-solver-" + threadCounter.incrementAndGet());
+	t.setDaemon(true);
+	t.start();
+	deliver(task, first, live, null);
+    }
+
+    public void submitNext() {
+	final PreparedSolution cached;
+	final PreparedSolution following;
+	synchronized (this) {
+	    cached = cachedSolutions.poll();
+	    following = cachedSolutions.peek();
+	    if (cached != null) lastShownIndex = cached.getIndex();
+	}
+	if (cached != null) {
+	    // No solving involved, but its graphs are still built off the caller's thread
+	    final PreparedSolution sol = cached;
+	    submit(new Task("Showing cached solution #" + sol.getIndex()) {
+		    void execute() {
+			prepare(sol);
+			deliver(this, sol, getSource(), null);
+			// Get the following one ready meanwhile
+			if (following != null) prepare(following);
+		    }
+		});
+	    return;
+	}
+	submit(new Task("Looking for next solution") {
+		void execute() throws Err {
+		    CompletableFuture<SolutionPrefetcher> pending = getSource();
+		    if (pending == null) {
+			listener.noSolution("No command has been run yet!");
+			return;
+		    }
+		    PreparedSolution sol;
+		    try {
+			SolutionPrefetcher prefetcher = pending.get();
+			if (prefetcher == null) {
+			    deliver(this, null, pending, "No more solutions!");
+			    return;
+			}
+			final int skipUntil = getLastShownIndex();
+			do {
+			    sol = prefetcher.take();
+			} while (sol != null && sol.getIndex() <= skipUntil);
+		    } catch (InterruptedException e) {
+			throw new CancellationException();
+		    } catch (ExecutionException e) {
+			if (e.getCause() instanceof Err) throw (Err) e.getCause();
+			if (e.getCause() instanceof RuntimeException && !(e.getCause() instanceof CancellationException)) {
+			    throw (RuntimeException) e.getCause();
+			}
+			deliver(this, null, pending, "The solver stopped before finding more solutions!");
+			return;
+		    }
+		    if (sol == null) {
+			deliver(this, null, pending, "No more solutions!");
+		    } else {
+			deliver(this, sol, pending, null);
+		    }
+		}
+	    });
+    }
+
+    /** Translates and solves all the given commands in parallel, then reports their timings. */
+    public void submitRunAll(final List<Command> commands) {
+	submit(new Task("Executing " + commands.size() + " commands in parallel") {
+		private final ParallelCommandRunner runner =
+		    new ParallelCommandRunner(alloyWorld, options, Runtime.getRuntime().availableProcessors());
+		void execute() throws Err {
+		    final long start = System.nanoTime();
+		    List<ParallelCommandRunner.CommandResult> results;
+		    try {
+			results = runner.runAll(commands);
+		    } catch (InterruptedException e) {
+			throw new CancellationException();
+		    }
+		    final String report = ParallelCommandRunner.report(results, (System.nanoTime() - start) / 1000000);
+		    if (finish(this)) listener.reportReady(report);
+		}
+		@Override void abort() {
+		    runner.cancel();
+		}
+	    });
+    }
+
+    /**
+     * Stops the running command. The solver is interrupted at its next
+     * progress callback; if it is inside the SAT search, its thread is
+     * abandoned and its result discarded, so the next command starts at once.
+     * The search itself can not be stopped, Alloy 4 giving no way to
+     * interrupt SAT4J: the abandoned thread keeps running, at the lowest
+     * priority, until the search ends (see getAbandonedSearchCount).
+     */
+    public synchronized void cancel() {
+	if (currentTask != null) {
+	    currentTask.cancelled = true;
+	    currentTask.abort();
+	    currentTask = null;
+	    // The abandoned threads may still be inside A4Solution.next(),
+	    // so the solution chain can not be reused safely.
+	    if (backgroundTask != null) backgroundTask.cancelled = true;
+	    backgroundTask = null;
+	    cachedSolutions.clear();
+	    recorder = null;
+	    setSource(null);
+	    final Thread t = workerThread;
+	    if (t != null && t.isAlive()) {
+		t.setPriority(Thread.MIN_PRIORITY);
+		abandoned.add(t);
+	    }
+	    executor.shutdownNow();
+	    executor = newExecutor();
+	    listener.cancelled();
+	}
+    }
+
+    /** Number of cancelled searches whose threads are still running. */
+    public synchronized int getAbandonedSearchCount() {
+	abandoned.removeIf(t -> !t.isAlive());
+	return abandoned.size();
+    }
+
+    public synchronized boolean isBusy() {
+	return currentTask != null;
+    }
+
+    private synchronized CompletableFuture<SolutionPrefetcher> getSource() {
+	return source;
+    }
+
+    private synchronized int getLastShownIndex() {
+	return lastShownIndex;
+    }
+
+    private synchronized void setSource(CompletableFuture<SolutionPrefetcher> s) {
+	if (source != null && source != s) {
+	    // Stop the previous prefetcher, now or as soon as it is available
+	    source.thenAccept(p -> { if (p != null) p.stop(); });
+	}
+	source = s;
+    }
+
+    private synchronized void submit(Task task) {
+	currentTask = task;
+	executor.execute(task);
+    }
+
+    private synchronized boolean finish(Task task) {
+	if (task.cancelled) return false;
+	if (currentTask == task) currentTask = null;
+	return true;
+    }
+
+    /**
+     * Reports the outcome of a task, unless it was cancelled meanwhile. The
+     * source serves the "Next" requests that follow.
+     */
+    private void deliver(Task task, PreparedSolution sol, CompletableFuture<SolutionPrefetcher> next, String noSolutionMsg) {
+	Recorder toStore = null;
+	synchronized (this) {
+	    if (task.cancelled) {
+		if (next != source) next.thenAccept(p -> { if (p != null) p.stop(); });
+		return;
+	    }
+	    setSource(next);
+	    finish(task);
+	    if (sol != null) {
+		lastShownIndex = sol.getIndex();
+		if (recorder != null && recorder.record(sol)) {
+		    toStore = recorder;
+		    recorder = null;
+		}
+	    } else if (recorder != null) {
+		// The enumeration is over, keep what was recorded
+		toStore = recorder;
+		recorder = null;
+	    }
+	}
+	if (toStore != null) toStore.store();
+	if (sol != null) {
+	    listener.solutionFound(sol);
+	    export(sol);
+	} else {
+	    listener.noSolution(noSolutionMsg);
+	}
+    }
+
+    private void export(PreparedSolution sol) {
+	final ExportPipeline e;
+	synchronized (this) {
+	    e = exporter;
+	}
+	if (e == null) return;
+	try {
+	    e.write(sol);
+	} catch (IOException ex) {
+	    Log.warn(">>> WARNING <<< Solution " + sol.getIndex() + " not exported: " + ex.getMessage());
+	}
+    }
+
+    private synchronized boolean exportsAlloyXml() {
+	return exporter != null && exporter.needsAlloyXml();
+    }
+
+    /** Installs the exporter of a new command, after the previous one has written its queue. */
+    private void replaceExporter(ExportPipeline e) {
+	final ExportPipeline previous;
+	synchronized (this) {
+	    previous = exporter;
+	    exporter = e;
+	}
+	if (previous != null) {
+	    try {
+		previous.close();
+	    } catch (IOException ex) {
+		Log.error("Closing of the export pipeline failed: " + ex);
+	    }
+	}
+    }
+
+    private void flushRecorder() {
+	Recorder toStore;
+	synchronized (this) {
+	    toStore = recorder;
+	    recorder = null;
+	}
+	if (toStore != null) toStore.store();
+    }
+
+    /** Collects the first solutions of a command until there are enough of them to be cached. */
+    private class Recorder {
+
+	private final String key;
+	private final int limit;
+	private final List<MDCSolution> solutions = new ArrayList<MDCSolution>();
+
+	Recorder(String key, int limit) {
+	    this.key = key;
+	    this.limit = limit;
+	}
+
+	/** Records the solution if it is the next one; returns true once the limit is reached. */
+	boolean record(PreparedSolution sol) {
+	    if (sol.getIndex() == solutions.size() && solutions.size() < limit) {
+		solutions.add(sol.getMDCSolution());
+	    }
+	    return solutions.size() >= limit;
+	}
+
+	void store() {
+	    if (!solutions.isEmpty()) cache.store(key, solutions);
+	}
+    }
+
+    // TASKS
+
+    private abstract class Task implements Runnable {
+
+	private final String description;
+	private final boolean quiet;
+	protected final A4Reporter reporter = new TaskReporter(this);
+	volatile boolean cancelled = false;
+	protected Throwable failure = null;
+
+	Task(String description) {
+	    this(description, false);
+	}
+
+	/** A quiet task does not report its progress to the listener. */
+	Task(String description, boolean quiet) {
+	    this.description = description;
+	    this.quiet = quiet;
+	}
+
+	abstract void execute() throws Err;
+
+	/** Called once execute() has returned or thrown. */
+	void finished() {}
+
+	/** Called on cancellation, in addition to the interruption of the worker thread. */
+	void abort() {}
+
+	public void run() {
+	    if (cancelled) return;
+	    Log.info("\n=========== " + description + " =============");
+	    if (!quiet) listener.progress(description);
+	    try {
+		execute();
+	    } catch (Err err) {
+		failure = err;
+		if (finish(this) && !quiet) listener.failed(">>> Error <<< while running command!", err);
+	    } catch (CancellationException e) {
+		// Already reported by cancel()
+	    } catch (RuntimeException e) {
+		failure = e;
+		if (finish(this) && !quiet) listener.failed(">>> Error <<< while running command!", e);
+	    } finally {
+		finish(this);
+		finished();
+	    }
+	}
+    }
+
+    /** Forwards solver progress to the listener and aborts cancelled tasks. */
+    private class TaskReporter extends A4Reporter {
+
+	private final Task task;
+
+	TaskReporter(Task task) {
+	    this.task = task;
+	}
+
+	private void checkCancelled() {
+	    if (task.cancelled) throw new CancellationException();
+	}
+
+	private void progress(String msg) {
+	    if (!task.quiet) listener.progress(msg);
+	}
+
+	@Override public void warning(ErrorWarning msg) {
+	    Log.warn("Relevance Warning:\n"+(msg.toString().trim())+"\n");
+	}
+
+	@Override public void scope(String msg) {
+	    checkCancelled();
+	}
+
+	@Override public void bound(String msg) {
+	    checkCancelled();
+	}
+
+	@Override public void translate(String solver, int bitwidth, int maxseq, int skolemDepth, int symmetry) {
+	    checkCancelled();
+	    Metrics.translationStarted();
+	    progress("Translating to " + solver + " (bitwidth=" + bitwidth + ", maxseq=" + maxseq
+			      + ", skolem depth=" + skolemDepth + ", symmetry=" + symmetry + ")");
+	}
+
+	@Override public void solve(int primaryVars, int totalVars, int clauses) {
+	    checkCancelled();
+	    Metrics.translated(primaryVars, totalVars, clauses);
+	    progress("Solving: " + primaryVars + " primary vars, " + totalVars + " vars, " + clauses + " clauses");
+	}
+
+	@Override public void resultSAT(Object command, long solvingTime, Object solution) {
+	    Metrics.solved(solvingTime);
+	    checkCancelled();
+	    progress("Solution found in " + solvingTime + " ms");
+	}
+
+	@Override public void resultUNSAT(Object command, long solvingTime, Object solution) {
+	    Metrics.solved(solvingTime);
+	    checkCancelled();
+	    progress("No solution found in " + solvingTime + " ms");
+	}
+    }
+}
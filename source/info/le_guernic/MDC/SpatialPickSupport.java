@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.graph.util.Context;
+import edu.uci.ics.jung.algorithms.layout.Layout;
+import edu.uci.ics.jung.visualization.Layer;
+import edu.uci.ics.jung.visualization.VisualizationServer;
+import edu.uci.ics.jung.visualization.picking.ShapePickSupport;
+
+/**
+ * Picking (and tooltips) through a grid of the vertex positions, so that
+ * only the elements near the mouse go through the exact shape tests of
+ * ShapePickSupport instead of all of them. The grid is in layout
+ * coordinates, it survives panning and zooming and is rebuilt only after
+ * the layout has moved vertices (see invalidate).
+ */
+
+class SpatialPickSupport extends ShapePickSupport<State,Transition> {
+
+    // Half size of the vertex shapes, and offset of the curves of
+    // parallel edges and loops, in the units of the layout layer
+    private static final double VERTEX_EXTENT = 20;
+    private static final double CURVE_OFFSET = 20;
+
+    private boolean dirty = true;
+    private Layout<State,Transition> indexed = null;
+    private double minX, minY, cellSize;
+    private int columns, rows;
+    private List<State>[] vertexCells;
+    private List<Transition>[] edgeCells;
+    private final List<Transition> unplacedEdges = new ArrayList<Transition>();
+    private double edgeMargin;
+
+    // Candidates of the current pick, returned as the elements to test
+    private Collection<State> vertexCandidates = null;
+    private Collection<Transition> edgeCandidates = null;
+
+    SpatialPickSupport(VisualizationServer<State,Transition> vv) {
+	super(vv);
+    }
+
+    /** Called when vertices have moved, the grid is rebuilt at the next pick. */
+    void invalidate() {
+	dirty = true;
+    }
+
+    // PICKING
+
+    @Override
+    public State getVertex(Layout<State,Transition> layout, double x, double y) {
+	final Point2D p = toLayout(x, y);
+	vertexCandidates = vertices(layout, box(p, VERTEX_EXTENT / layoutScale()));
+	try {
+	    return super.getVertex(layout, x, y);
+	} finally {
+	    vertexCandidates = null;
+	}
+    }
+
+    @Override
+    public Collection<State> getVertices(Layout<State,Transition> layout, Shape rectangle) {
+	// The rectangle is in view coordinates
+	final Rectangle2D r = vv.getRenderContext().getMultiLayerTransformer().inverseTransform(rectangle).getBounds2D();
+	final double m = VERTEX_EXTENT / layoutScale();
+	vertexCandidates = vertices(layout, new Rectangle2D.Double(r.getX() - m, r.getY() - m, r.getWidth() + 2 * m, r.getHeight() + 2 * m));
+	try {
+	    return super.getVertices(layout, rectangle);
+	} finally {
+	    vertexCandidates = null;
+	}
+    }
+
+    @Override
+    public Transition getEdge(Layout<State,Transition> layout, double x, double y) {
+	final Point2D p = toLayout(x, y);
+	// The margin depends on the graph, it is only known once indexed
+	index(layout);
+	edgeCandidates = edges(layout, box(p, (edgeMargin + pickSize) / layoutScale()));
+	try {
+	    return super.getEdge(layout, x, y);
+	} finally {
+	    edgeCandidates = null;
+	}
+    }
+
+    @Override
+    protected Collection<State> getFilteredVertices(Layout<State,Transition> layout) {
+	if (vertexCandidates == null) return super.getFilteredVertices(layout);
+	if (!verticesAreFiltered()) return vertexCandidates;
+	final Graph<State,Transition> graph = layout.getGraph();
+	final List<State> filtered = new ArrayList<State>();
+	for (State v:vertexCandidates) {
+	    if (isVertexRendered(Context.<Graph<State,Transition>,State>getInstance(graph, v))) filtered.add(v);
+	}
+	return filtered;
+    }
+
+    @Override
+    protected Collection<Transition> getFilteredEdges(Layout<State,Transition> layout) {
+	if (edgeCandidates == null) return super.getFilteredEdges(layout);
+	if (!edgesAreFiltered()) return edgeCandidates;
+	final Graph<State,Transition> graph = layout.getGraph();
+	final List<Transition> filtered = new ArrayList<Transition>();
+	for (Transition e:edgeCandidates) {
+	    if (isEdgeRendered(Context.<Graph<State,Transition>,Transition>getInstance(graph, e))) filtered.add(e);
+	}
+	return filtered;
+    }
+
+    private Point2D toLayout(double x, double y) {
+	return vv.getRenderContext().getMultiLayerTransformer().inverseTransform(new Point2D.Double(x, y));
+    }
+
+    /** Scale of the layout layer, the shapes are not scaled with it. */
+    private double layoutScale() {
+	return Math.max(1e-6, vv.getRenderContext().getMultiLayerTransformer().getTransformer(Layer.LAYOUT).getScale());
+    }
+
+    private static Rectangle2D box(Point2D p, double margin) {
+	return new Rectangle2D.Double(p.getX() - margin, p.getY() - margin, 2 * margin, 2 * margin);
+    }
+
+    // GRID
+
+    private int column(double x) {
+	return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellSize)));
+    }
+
+    private int row(double y) {
+	return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellSize)));
+    }
+
+    private Collection<State> vertices(Layout<State,Transition> layout, Rectangle2D r) {
+	index(layout);
+	final List<State> found = new ArrayList<State>();
+	for (int j = row(r.getMinY()); j <= row(r.getMaxY()); j++) {
+	    for (int i = column(r.getMinX()); i <= column(r.getMaxX()); i++) {
+		final List<State> cell = vertexCells[j * columns + i];
+		if (cell != null) found.addAll(cell);
+	    }
+	}
+	return found;
+    }
+
+    private Collection<Transition> edges(Layout<State,Transition> layout, Rectangle2D r) {
+	index(layout);
+	final Set<Transition> found = new LinkedHashSet<Transition>(unplacedEdges);
+	for (int j = row(r.getMinY()); j <= row(r.getMaxY()); j++) {
+	    for (int i = column(r.getMinX()); i <= column(r.getMaxX()); i++) {
+		final List<Transition> cell = edgeCells[j * columns + i];
+		if (cell != null) found.addAll(cell);
+	    }
+	}
+	return found;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void index(Layout<State,Transition> layout) {
+	if (!dirty && layout == indexed) return;
+	final Graph<State,Transition> graph = layout.getGraph();
+	// Picking and patching are both done on the EDT, the graph does not change while indexed
+	final Collection<State> vs = new ArrayList<State>(graph.getVertices());
+	final Collection<Transition> es = new ArrayList<Transition>(graph.getEdges());
+	minX = Double.MAX_VALUE;
+	minY = Double.MAX_VALUE;
+	double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+	final Map<State,Point2D> positions = new HashMap<State,Point2D>();
+	for (State v:vs) {
+	    final Point2D p = layout.apply(v);
+	    if (p == null) continue;
+	    positions.put(v, p);
+	    minX = Math.min(minX, p.getX());
+	    minY = Math.min(minY, p.getY());
+	    maxX = Math.max(maxX, p.getX());
+	    maxY = Math.max(maxY, p.getY());
+	}
+	if (positions.isEmpty()) {
+	    minX = minY = maxX = maxY = 0;
+	}
+	// About one vertex per cell
+	final double extent = Math.max(maxX - minX, maxY - minY);
+	cellSize = Math.max(1, extent / Math.max(1, Math.sqrt(positions.size())));
+	columns = 1 + (int) ((maxX - minX) / cellSize);
+	rows = 1 + (int) ((maxY - minY) / cellSize);
+	vertexCells = new List[columns * rows];
+	edgeCells = new List[columns * rows];
+	unplacedEdges.clear();
+	for (Map.Entry<State,Point2D> e:positions.entrySet()) {
+	    final int c = row(e.getValue().getY()) * columns + column(e.getValue().getX());
+	    if (vertexCells[c] == null) vertexCells[c] = new ArrayList<State>(2);
+	    vertexCells[c].add(e.getKey());
+	}
+	int maxParallel = 1;
+	for (Transition t:es) {
+	    final Point2D p = positions.get(graph.getSource(t));
+	    final Point2D q = positions.get(graph.getDest(t));
+	    if (p == null || q == null) {
+		unplacedEdges.add(t);
+		continue;
+	    }
+	    maxParallel = Math.max(maxParallel, graph.findEdgeSet(graph.getSource(t), graph.getDest(t)).size());
+	    addSegment(t, p, q);
+	}
+	// Curves of parallel edges bulge further, loops stand beside their vertex
+	edgeMargin = CURVE_OFFSET * (maxParallel + 1) + 2 * VERTEX_EXTENT;
+	indexed = layout;
+	dirty = false;
+    }
+
+    /** Adds the edge to the cells crossed by the straight segment between its ends, the picking margin covers its curve. */
+    private void addSegment(Transition t, Point2D p, Point2D q) {
+	final Point2D a = (p.getX() <= q.getX()) ? p : q;
+	final Point2D b = (a == p) ? q : p;
+	final double dx = b.getX() - a.getX();
+	final int i0 = column(a.getX()), i1 = column(b.getX());
+	for (int i = i0; i <= i1; i++) {
+	    // Part of the segment in the column
+	    final double x0 = Math.max(a.getX(), minX + i * cellSize);
+	    final double x1 = Math.min(b.getX(), minX + (i + 1) * cellSize);
+	    final double y0 = (dx == 0) ? a.getY() : a.getY() + (b.getY() - a.getY()) * (x0 - a.getX()) / dx;
+	    final double y1 = (dx == 0) ? b.getY() : a.getY() + (b.getY() - a.getY()) * (x1 - a.getX()) / dx;
+	    for (int j = row(Math.min(y0, y1)); j <= row(Math.max(y0, y1)); j++) {
+		final int c = j * columns + i;
+		if (edgeCells[c] == null) edgeCells[c] = new ArrayList<Transition>(2);
+		edgeCells[c].add(t);
+	    }
+	}
+    }
+}
@@ -30,23 +30,36 @@
 
 package info.le_guernic.MDC;
 
+/** View of a state atom of an MDCSolution. */
+
 public class State {
-    
-    String name = null;
 
-    protected State(String name) {
-	this.name = name;
+    final MDCSolution owner;
+    final int id;
+
+    protected State(MDCSolution owner, int id) {
+	this.owner = owner;
+	this.id = id;
+    }
+
+    /** Dense identifier of the state in its solution. */
+    public int getId() {
+	return id;
+    }
+
+    public String getName() {
+	return owner.stateName(id);
     }
 
     public String getDotName() {
-	return name.replace("State$","St");
+	return getName().replace("State$","St");
     }
 
     public String getGUIName() {
-	return name.replace("State$","S");
+	return getName().replace("State$","S");
     }
 
     public String toString() {
-	return name;
+	return getName();
     }
 }
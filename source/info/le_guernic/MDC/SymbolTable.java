@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+
+import java.util.*;
+
+/** Interns atom names, mapping each of them to a dense integer identifier starting at 0. */
+
+public class SymbolTable {
+
+    private final Map<String,Integer> ids = new HashMap<String,Integer>();
+    private String[] names = new String[16];
+    private int size = 0;
+
+    /** Returns the identifier of the name, allocating the next one if the name is new. */
+    public int intern(String name) {
+	final Integer id = ids.get(name);
+	if (id != null) return id;
+	if (size == names.length) names = Arrays.copyOf(names, 2 * size);
+	names[size] = name;
+	ids.put(name, size);
+	return size++;
+    }
+
+    /** Returns the identifier of the name, or -1 if it has not been interned. */
+    public int lookup(String name) {
+	final Integer id = ids.get(name);
+	return (id == null) ? -1 : id;
+    }
+
+    public String name(int id) {
+	if (id < 0 || id >= size) throw new IndexOutOfBoundsException("No symbol " + id);
+	return names[id];
+    }
+
+    public int size() {
+	return size;
+    }
+}
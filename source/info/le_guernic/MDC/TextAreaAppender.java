@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+
+/**
+ * Appends the log messages to a text area, keeping only its last lines.
+ * Messages arriving while an update is pending are merged into it, so a
+ * burst of messages costs a single update of the event dispatch thread.
+ */
+
+public class TextAreaAppender implements Log.Appender {
+
+    private final JTextArea area;
+    private final int maxLines;
+    private final Log.Level minLevel;
+    private StringBuilder pending = null; // guarded by this
+
+    public TextAreaAppender(JTextArea area, int maxLines, Log.Level minLevel) {
+	this.area = area;
+	this.maxLines = maxLines;
+	this.minLevel = minLevel;
+    }
+
+    public void append(List<Log.Record> records) {
+	synchronized (this) {
+	    final boolean schedule = (pending == null);
+	    if (schedule) pending = new StringBuilder();
+	    for (Log.Record r:records) {
+		if (r.level.compareTo(minLevel) <= 0) pending.append(r.message).append('\n');
+	    }
+	    if (!schedule) return;
+	}
+	SwingUtilities.invokeLater(this::update);
+    }
+
+    private void update() {
+	final String text;
+	synchronized (this) {
+	    text = pending.toString();
+	    pending = null;
+	}
+	if (text.isEmpty()) return;
+	area.append(text);
+	final Element root = area.getDocument().getDefaultRootElement();
+	// The last line is the empty one after the final newline
+	final int excess = root.getElementCount() - 1 - maxLines;
+	if (excess > 0) {
+	    try {
+		area.getDocument().remove(0, root.getElement(excess - 1).getEndOffset());
+	    } catch (BadLocationException e) {
+		area.setText(null);
+	    }
+	}
+	area.setCaretPosition(area.getDocument().getLength());
+    }
+}
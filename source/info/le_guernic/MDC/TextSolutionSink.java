@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.*;
+
+/** Writes solutions in the textual form used on the console by the Visualizer. */
+
+public class TextSolutionSink implements SolutionSink {
+
+    private final Writer writer;
+    private final boolean closeWriter;
+
+    /** Writes to the given file, or to the standard output if the path is "-". */
+    public TextSolutionSink(String filePathStr) throws IOException {
+	if (filePathStr.equals("-")) {
+	    this.writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+	    this.closeWriter = false;
+	} else {
+	    Path filePath = FileSystems.getDefault().getPath(filePathStr);
+	    this.writer = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8);
+	    this.closeWriter = true;
+	}
+    }
+
+    public void write(PreparedSolution sol) throws IOException {
+	final MDCSolution mdc = sol.getMDCSolution();
+	writer.write("=========== Solution " + sol.getIndex() + " =============\n");
+	for (Transition t:mdc.getTransitions()) {
+	    writer.write(t.toString());
+	    writer.write('\n');
+	}
+	for (Execution e:mdc.getExecutions()) {
+	    writer.write(e.toString());
+	    writer.write('\n');
+	}
+	for (Trace t:mdc.getTraces()) {
+	    writer.write(t.toString());
+	    writer.write('\n');
+	}
+	for (String r:TraceSemantics.relations(mdc)) {
+	    writer.write(r);
+	    writer.write('\n');
+	}
+	for (Map.Entry<String, Set<String>> e : mdc.getVariablesMapping().entrySet()) {
+	    writer.write(e.getKey() + " -> " + e.getValue() + "\n");
+	}
+	writer.write('\n');
+	// Do not let solutions pile up in the buffer
+	writer.flush();
+    }
+
+    public void close() throws IOException {
+	if (closeWriter) {
+	    writer.close();
+	} else {
+	    writer.flush();
+	}
+    }
+}
@@ -35,33 +35,42 @@ import java.io.*;
 import java.nio.file.*;
 import java.nio.charset.*;
 
+/** View of a trace atom of an MDCSolution; its content is stored as a sequence of label identifiers. */
+
 public class Trace {
-    
-    private String name = null;
-    private final List<Label> labels = new ArrayList<Label>();
 
-    protected Trace(String name) {
-	this.name = name;
+    private final MDCSolution owner;
+    private final int id;
+
+    protected Trace(MDCSolution owner, int id) {
+	this.owner = owner;
+	this.id = id;
     }
 
     public void add(Label l) {
-	this.labels.add(l);
+	owner.appendToTrace(id, l.id);
     }
 
-    public String getName() { return this.name; }
+    /** Dense identifier of the trace in its solution. */
+    public int getId() { return this.id; }
+
+    public String getName() { return owner.traceName(id); }
     public String getGUIName() { return getName().replace("Trace$","τ"); }
 
     public List<Label> getLabelsSequence() {
-	return this.labels;
+	return new AbstractList<Label>() {
+	    public Label get(int i) { return owner.labelView(owner.traceLabel(id, i)); }
+	    public int size() { return owner.traceLength(id); }
+	};
     }
 
     public void outputToDotFile(String dotFilePathStr) {
 	Path dotFilePath = FileSystems.getDefault().getPath(dotFilePathStr);
 	try (BufferedWriter writer = Files.newBufferedWriter(dotFilePath, StandardCharsets.UTF_8)) {
-	    writer.write("digraph " + this.name.replace("$","") + " {\n");
+	    writer.write("digraph " + getName().replace("$","") + " {\n");
 	    int stepNb = 0;
 	    String prevLabelId = null;
-	    for (Label l:this.labels) {
+	    for (Label l:getLabelsSequence()) {
 		stepNb += 1;
 		String labelId = "label" + stepNb;
 		writer.write("  " + labelId + " [shape=box, label=\"" + l.getDotName() + "\"];\n");
@@ -73,18 +82,18 @@ public class Trace {
 	    writer.write("}\n");
 	    writer.close();
 	} catch (IOException e) {
-	    System.err.format("IOException: %s%n", e);
+	    Log.error("Writing of the dot file failed: " + e);
 	}
     }
 
     public String toString() {
-	String res = this.name + ": " ;
-	for (Label l:this.labels) {
+	final StringBuilder res = new StringBuilder(getName()).append(": ");
+	for (Label l:getLabelsSequence()) {
 	    if ( ! l.isEmpty() ) {
-		res = res + l + " -> ";
+		res.append(l).append(" -> ");
 	    }
 	}
-	return res;
+	return res.toString();
     }
 
 }
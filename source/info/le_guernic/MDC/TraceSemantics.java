@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+
+/**
+ * Direct evaluation of the trace semantics of MDC.als (transitionTrace,
+ * executionTrace and projection) on a solution, without the SAT solver.
+ * Sequences are arrays of label identifiers of the solution; a null result
+ * means that the predicate can not hold, as when NoLabel is involved.
+ */
+
+public final class TraceSemantics {
+
+    private TraceSemantics() {}
+
+    /** Trigger then effect of the transition, with the empty label erased. */
+    public static int[] transitionTrace(MDCSolution mdc, int t) {
+	final IntList trace = new IntList();
+	appendTransitionTrace(mdc, t, trace);
+	return trace.toArray();
+    }
+
+    private static void appendTransitionTrace(MDCSolution mdc, int t, IntList trace) {
+	final int trigger = mdc.trigger(t), effect = mdc.effect(t);
+	if (trigger != MDCSolution.NONE && !mdc.isEmptyLabel(trigger)) trace.add(trigger);
+	if (effect != MDCSolution.NONE && !mdc.isEmptyLabel(effect)) trace.add(effect);
+    }
+
+    /** Concatenation of the traces of the transitions of the execution, or null if it would contain NoLabel. */
+    public static int[] executionTrace(MDCSolution mdc, int e) {
+	final IntList trace = new IntList();
+	for (int i = 0; i < mdc.executionLength(e); i++) {
+	    appendTransitionTrace(mdc, mdc.executionStep(e, i), trace);
+	}
+	final int[] res = trace.toArray();
+	return contains(mdc, res, mdc.noLabel()) ? null : res;
+    }
+
+    public static int[] traceContent(MDCSolution mdc, int tr) {
+	final int[] content = new int[mdc.traceLength(tr)];
+	for (int i = 0; i < content.length; i++) content[i] = mdc.traceLabel(tr, i);
+	return content;
+    }
+
+    /** Subsequence of the labels of the trace that are in onLabels, or null if NoLabel is involved. */
+    public static int[] projection(MDCSolution mdc, int[] ofTrace, BitSet onLabels) {
+	final int noLabel = mdc.noLabel();
+	if (noLabel != MDCSolution.NONE && onLabels.get(noLabel)) return null;
+	if (contains(mdc, ofTrace, noLabel)) return null;
+	final IntList res = new IntList();
+	for (int l:ofTrace) {
+	    if (onLabels.get(l)) res.add(l);
+	}
+	return res.toArray();
+    }
+
+    public static boolean isExecutionTrace(MDCSolution mdc, int e, int tr) {
+	final int[] trace = executionTrace(mdc, e);
+	return trace != null && Arrays.equals(trace, traceContent(mdc, tr));
+    }
+
+    public static boolean isProjection(MDCSolution mdc, int ofTr, BitSet onLabels, int isTr) {
+	final int[] proj = projection(mdc, traceContent(mdc, ofTr), onLabels);
+	return proj != null && Arrays.equals(proj, traceContent(mdc, isTr));
+    }
+
+    /**
+     * Smallest set of labels on which the first trace projects to the
+     * second one, or null if there is none. If any set works, the labels of
+     * the second trace do.
+     */
+    public static BitSet projectionLabels(MDCSolution mdc, int ofTr, int isTr) {
+	final int[] is = traceContent(mdc, isTr);
+	final BitSet onLabels = new BitSet();
+	for (int l:is) onLabels.set(l);
+	final int[] proj = projection(mdc, traceContent(mdc, ofTr), onLabels);
+	return (proj != null && Arrays.equals(proj, is)) ? onLabels : null;
+    }
+
+    private static boolean contains(MDCSolution mdc, int[] trace, int label) {
+	if (label == MDCSolution.NONE) return false;
+	for (int l:trace) {
+	    if (l == label) return true;
+	}
+	return false;
+    }
+
+    /**
+     * Relations between the executions and traces of the solution: which
+     * trace is the trace of which execution, and which trace is a projection
+     * of which other one (on the labels it contains).
+     */
+    public static List<String> relations(MDCSolution mdc) {
+	final List<String> res = new ArrayList<String>();
+	final Map<List<Integer>,List<Integer>> tracesByContent = new HashMap<List<Integer>,List<Integer>>();
+	for (Trace t:mdc.getTraces()) {
+	    final List<Integer> key = asList(traceContent(mdc, t.getId()));
+	    List<Integer> ids = tracesByContent.get(key);
+	    if (ids == null) {
+		ids = new ArrayList<Integer>();
+		tracesByContent.put(key, ids);
+	    }
+	    ids.add(t.getId());
+	}
+	for (Execution e:mdc.getExecutions()) {
+	    final int[] trace = executionTrace(mdc, e.getId());
+	    if (trace == null) continue;
+	    final List<Integer> ids = tracesByContent.get(asList(trace));
+	    if (ids == null) continue;
+	    for (int tr:ids) {
+		res.add(mdc.traceName(tr) + " = trace(" + e.getName() + ")");
+	    }
+	}
+	for (Trace of:mdc.getTraces()) {
+	    for (Trace is:mdc.getTraces()) {
+		// Only the non trivial projections: strictly shorter but not empty
+		final int length = mdc.traceLength(is.getId());
+		if (length == 0 || length >= mdc.traceLength(of.getId())) continue;
+		final BitSet onLabels = projectionLabels(mdc, of.getId(), is.getId());
+		if (onLabels == null) continue;
+		final StringBuilder sb = new StringBuilder();
+		sb.append(is.getName()).append(" = projection(").append(of.getName()).append(", {");
+		for (int l = onLabels.nextSetBit(0); l >= 0; l = onLabels.nextSetBit(l + 1)) {
+		    if (l != onLabels.nextSetBit(0)) sb.append(", ");
+		    sb.append(mdc.labelView(l));
+		}
+		res.add(sb.append("})").toString());
+	    }
+	}
+	return res;
+    }
+
+    private static List<Integer> asList(int[] trace) {
+	final List<Integer> res = new ArrayList<Integer>(trace.length);
+	for (int l:trace) res.add(l);
+	return res;
+    }
+}
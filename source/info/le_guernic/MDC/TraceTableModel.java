@@ -31,15 +31,45 @@
 package info.le_guernic.MDC;
 
 import java.util.*;
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
+/**
+ * Table of traces. Rows only keep the interned GUI names of the trace and
+ * of its labels; the sequence strings are built when a row is first
+ * painted and then cached. Rows can be sorted on a column and filtered on
+ * label or trace names through indexes built as rows are added.
+ *
+ * Must be used on the event dispatch thread. Rows added during an event
+ * are announced to the table once, after it.
+ */
+
 public class TraceTableModel extends AbstractTableModel {
 
     private final String[] header = {"Name", "Sequence"};
-    private List<Trace> data = new ArrayList<Trace>();
-  
+
+    private final SymbolTable traceNames = new SymbolTable();
+    private final SymbolTable labelNames = new SymbolTable();
+
+    // Rows, in insertion order
+    private IntList nameIds = new IntList();
+    private List<int[]> sequences = new ArrayList<int[]>();
+    private List<String> rendered = new ArrayList<String>();
+    private int published = 0; // Rows announced to the table
+    private boolean flushScheduled = false;
+
+    // Inverted indexes: rows of each trace name and of each label
+    private final List<BitSet> rowsWithName = new ArrayList<BitSet>();
+    private final List<BitSet> rowsWithLabel = new ArrayList<BitSet>();
+
+    // Rows in display order when sorted or filtered, null otherwise
+    private int[] view = null;
+    private int sortColumn = -1;
+    private boolean ascending = true;
+    private String[] filterTokens = new String[0];
+
     public int getRowCount() {
-        return data.size();
+	return (view == null) ? published : view.length;
     }
  
     public int getColumnCount() {
@@ -51,52 +81,120 @@ public class TraceTableModel extends AbstractTableModel {
     }
  
     public Object getValueAt(int rowIndex, int columnIndex) {
+	final int row = (view == null) ? rowIndex : view[rowIndex];
         switch(columnIndex){
             case 0:
-                return data.get(rowIndex).getGUIName();
+		return traceNames.name(nameIds.get(row));
             case 1:
-		final List<String> labelsStr = new ArrayList<String>();
-		for (Label l : data.get(rowIndex).getLabelsSequence()) {
-		    labelsStr.add(l.getGUIName());
+		String s = rendered.get(row);
+		if (s == null) {
+		    s = render(sequences.get(row));
+		    rendered.set(row, s);
 		}
-                return String.join(" ; ", labelsStr);
+		return s;
             default:
                 return null; // Should never arise with current implementation
         }
     }
- 
-    public int silentlyAddTrace(Trace t) {
-        if ( data.add(t) ){
-	    return data.size() - 1;
-	} else {
-	    return -1;
+
+    private String render(int[] seq) {
+	final StringBuilder sb = new StringBuilder(8 * seq.length);
+	for (int i = 0; i < seq.length; i++) {
+	    if (i > 0) sb.append(" ; ");
+	    sb.append(labelNames.name(seq[i]));
 	}
+	return sb.toString();
+    }
+
+    // ADDING AND REMOVING ROWS
+
+    private static BitSet rowsOf(List<BitSet> index, int id) {
+	while (index.size() <= id) index.add(new BitSet());
+	return index.get(id);
+    }
+
+    private int[] intern(Trace t) {
+	final List<Label> labels = t.getLabelsSequence();
+	final int[] seq = new int[labels.size()];
+	for (int i = 0; i < seq.length; i++) {
+	    seq[i] = labelNames.intern(labels.get(i).getGUIName());
+	}
+	return seq;
+    }
+
+    private void append(Trace t) {
+	final int row = nameIds.size();
+	final int name = traceNames.intern(t.getGUIName());
+	final int[] seq = intern(t);
+	nameIds.add(name);
+	sequences.add(seq);
+	rendered.add(null);
+	rowsOf(rowsWithName, name).set(row);
+	for (int l:seq) rowsOf(rowsWithLabel, l).set(row);
+    }
+
+    /** Replaces the content of a row by the given trace of the same name. */
+    private void replace(int row, Trace t) {
+	for (int l:sequences.get(row)) rowsWithLabel.get(l).clear(row);
+	final int[] seq = intern(t);
+	sequences.set(row, seq);
+	rendered.set(row, null);
+	for (int l:seq) rowsOf(rowsWithLabel, l).set(row);
+    }
+
+    public int silentlyAddTrace(Trace t) {
+	append(t);
+	published = nameIds.size();
+	return published - 1;
     }
  
     public void addTrace(Trace t) {
-        final int rowIdx = silentlyAddTrace(t);
-	if (rowIdx >= 0) {
-	    fireTableRowsInserted(rowIdx, rowIdx);
-	}
+	append(t);
+	scheduleFlush();
     }
  
     public int silentlyAddTraces(Collection<Trace> traces) {
-	final int oldNbTraces = data.size();
-        data.addAll(traces);
-        return data.size() - oldNbTraces;
+	final int oldNbTraces = nameIds.size();
+	for (Trace t:traces) append(t);
+	published = nameIds.size();
+	return published - oldNbTraces;
     }
  
+    /** Appends the traces; the table is notified of all the rows appended during this event at once. */
     public void addTraces(Collection<Trace> traces) {
-	final int oldNbTraces = data.size();
-	final int nbTracesAdded = silentlyAddTraces(traces);
-        if (nbTracesAdded > 0) {
-	    fireTableRowsInserted(oldNbTraces, oldNbTraces + nbTracesAdded);
+	for (Trace t:traces) append(t);
+	scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+	if (flushScheduled) return;
+	flushScheduled = true;
+	SwingUtilities.invokeLater(this::flush);
+    }
+
+    private void flush() {
+	flushScheduled = false;
+	final int size = nameIds.size();
+	if (size == published) return;
+	final int first = published;
+	published = size;
+	if (view != null) {
+	    updateView();
+	    fireTableDataChanged();
+	} else {
+	    fireTableRowsInserted(first, size - 1);
 	}
     }
  
     public int silentlyRemoveAllTraces() {
-	final int nbTracesRemoved = data.size();
-        data = new ArrayList<Trace>();;
+	final int nbTracesRemoved = getRowCount();
+	nameIds = new IntList();
+	sequences = new ArrayList<int[]>();
+	rendered = new ArrayList<String>();
+	for (BitSet b:rowsWithName) b.clear();
+	for (BitSet b:rowsWithLabel) b.clear();
+	published = 0;
+	if (view != null) view = new int[0];
 	return nbTracesRemoved;
     }
  
@@ -106,4 +204,136 @@ public class TraceTableModel extends AbstractTableModel {
 	    fireTableRowsDeleted(0, nbTracesRemoved - 1);
 	}
     }
+
+    /**
+     * Replaces the traces, only notifying the rows of the given names when
+     * the rows themselves are the same, by name and position.
+     */
+    public void updateTraces(Collection<Trace> traces, Set<String> changedNames) {
+	flush();
+	final List<Trace> newData = new ArrayList<Trace>(traces);
+	boolean sameRows = (newData.size() == nameIds.size());
+	for (int i = 0; sameRows && i < newData.size(); i++) {
+	    sameRows = (traceNames.lookup(newData.get(i).getGUIName()) == nameIds.get(i));
+	}
+	if (!sameRows) {
+	    silentlyRemoveAllTraces();
+	    silentlyAddTraces(newData);
+	    if (view != null) updateView();
+	    fireTableDataChanged();
+	    return;
+	}
+	boolean changed = false;
+	for (int i = 0; i < newData.size(); i++) {
+	    if (changedNames.contains(newData.get(i).getName())) {
+		replace(i, newData.get(i));
+		if (view == null) fireTableRowsUpdated(i, i);
+		changed = true;
+	    }
+	}
+	if (changed && view != null) {
+	    updateView();
+	    fireTableDataChanged();
+	}
+    }
+
+    // SORTING AND FILTERING
+
+    /** Sorts the rows on the column, in reverse order if it is already sorted on it. */
+    public void sortBy(int column) {
+	ascending = (column == sortColumn) ? !ascending : true;
+	sortColumn = column;
+	updateView();
+	fireTableDataChanged();
+    }
+
+    /**
+     * Only shows the rows matching every word of the filter: a word matches
+     * a row if it is part of the name of the trace or of one of its labels.
+     */
+    public void setFilter(String filter) {
+	final String f = filter.trim().toLowerCase();
+	filterTokens = f.isEmpty() ? new String[0] : f.split("[\\s;]+");
+	updateView();
+	fireTableDataChanged();
+    }
+
+    private void updateView() {
+	final int size = published;
+	if (sortColumn < 0 && filterTokens.length == 0) {
+	    view = null;
+	    return;
+	}
+	int[] rows;
+	if (filterTokens.length == 0) {
+	    rows = new int[size];
+	    for (int i = 0; i < size; i++) rows[i] = i;
+	} else {
+	    final BitSet selected = new BitSet(size);
+	    selected.set(0, size);
+	    for (String token:filterTokens) {
+		final BitSet matching = new BitSet(size);
+		for (int n = 0; n < traceNames.size() && n < rowsWithName.size(); n++) {
+		    if (traceNames.name(n).toLowerCase().contains(token)) matching.or(rowsWithName.get(n));
+		}
+		for (int l = 0; l < labelNames.size() && l < rowsWithLabel.size(); l++) {
+		    if (labelNames.name(l).toLowerCase().contains(token)) matching.or(rowsWithLabel.get(l));
+		}
+		selected.and(matching);
+	    }
+	    rows = new int[selected.cardinality()];
+	    int j = 0;
+	    for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) rows[j++] = i;
+	}
+	if (sortColumn >= 0) sortRows(rows);
+	view = rows;
+    }
+
+    /** Ranks of the symbols of the table in name order. */
+    private static int[] ranks(SymbolTable symbols) {
+	final Integer[] ids = new Integer[symbols.size()];
+	for (int i = 0; i < ids.length; i++) ids[i] = i;
+	Arrays.sort(ids, (a, b) -> symbols.name(a).compareTo(symbols.name(b)));
+	final int[] ranks = new int[ids.length];
+	for (int i = 0; i < ids.length; i++) ranks[ids[i]] = i;
+	return ranks;
+    }
+
+    private void sortRows(int[] rows) {
+	final int[] nameRanks = ranks(traceNames);
+	final int[] labelRanks = ranks(labelNames);
+	final int sign = ascending ? 1 : -1;
+	mergeSort(rows, new int[rows.length], 0, rows.length, (a, b) -> {
+		int c = 0;
+		if (sortColumn == 0) {
+		    c = Integer.compare(nameRanks[nameIds.get(a)], nameRanks[nameIds.get(b)]);
+		} else {
+		    final int[] sa = sequences.get(a);
+		    final int[] sb = sequences.get(b);
+		    for (int i = 0; c == 0 && i < Math.min(sa.length, sb.length); i++) {
+			c = Integer.compare(labelRanks[sa[i]], labelRanks[sb[i]]);
+		    }
+		    if (c == 0) c = Integer.compare(sa.length, sb.length);
+		}
+		return sign * c;
+	    });
+    }
+
+    private interface RowComparator {
+	int compare(int a, int b);
+    }
+
+    /** Stable sort of rows[from, to) without boxing them. */
+    private static void mergeSort(int[] rows, int[] tmp, int from, int to, RowComparator cmp) {
+	if (to - from < 2) return;
+	final int mid = (from + to) >>> 1;
+	mergeSort(rows, tmp, from, mid, cmp);
+	mergeSort(rows, tmp, mid, to, cmp);
+	if (cmp.compare(rows[mid - 1], rows[mid]) <= 0) return;
+	System.arraycopy(rows, from, tmp, from, to - from);
+	int i = from, j = mid, k = from;
+	while (i < mid && j < to) rows[k++] = (cmp.compare(tmp[j], tmp[i]) < 0) ? tmp[j++] : tmp[i++];
+	while (i < mid) rows[k++] = tmp[i++];
+	while (j < to) rows[k++] = tmp[j++];
+    }
 }
@@ -30,43 +30,43 @@
 
 package info.le_guernic.MDC;
 
+/** View of a transition atom of an MDCSolution; its fields are stored in the columns of the solution. */
+
 public class Transition {
-    
-    String name = null;
-    State preState = null;
-    State postState = null;
-    Label trigger = null;
-    Label effect = null;
 
-    protected Transition(String name) {
-	this.name = name;
+    final MDCSolution owner;
+    final int id;
+
+    protected Transition(MDCSolution owner, int id) {
+	this.owner = owner;
+	this.id = id;
     }
 
     protected Transition(Transition t) {
-	this.name = t.name;
-	this.preState = t.preState;
-	this.postState = t.postState;
-	this.trigger = t.trigger;
-	this.effect = t.effect;
+	this.owner = t.owner;
+	this.id = t.id;
     }
-    
-    public String getName() { return name; }
+
+    /** Dense identifier of the transition in its solution. */
+    public int getId() { return id; }
+
+    public String getName() { return owner.transitionName(id); }
     public String getGUIName() { return getName().replace("Transition$","T"); }
 
-    public void setPrestate(State s) { preState = s; }
-    public State getPrestate() { return preState; }
-    public void setPoststate(State s) { postState = s; }
-    public State getPoststate() { return postState; }
-    public void setTrigger(Label l) { trigger = l; }
-    public Label getTrigger() { return trigger; }
-    public void setEffect(Label l) { effect = l; }
-    public Label getEffect() { return effect; }
+    public void setPrestate(State s) { owner.setPreState(id, s.id); }
+    public State getPrestate() { return owner.stateView(owner.preState(id)); }
+    public void setPoststate(State s) { owner.setPostState(id, s.id); }
+    public State getPoststate() { return owner.stateView(owner.postState(id)); }
+    public void setTrigger(Label l) { owner.setTrigger(id, l.id); }
+    public Label getTrigger() { return owner.labelView(owner.trigger(id)); }
+    public void setEffect(Label l) { owner.setEffect(id, l.id); }
+    public Label getEffect() { return owner.labelView(owner.effect(id)); }
 
     public String getGUIEdgeDescription() {
-	return (trigger.getGUIName() + " | " + effect.getGUIName());
+	return (getTrigger().getGUIName() + " | " + getEffect().getGUIName());
     }
-    
+
     public String toString() {
-	return (name + ": " + preState + " --( " + trigger + " | " + effect + " )--> " + postState);
+	return (getName() + ": " + getPrestate() + " --( " + getTrigger() + " | " + getEffect() + " )--> " + getPoststate());
     }
 }
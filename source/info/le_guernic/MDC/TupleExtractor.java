@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+
+import edu.mit.csail.sdg.alloy4.Err;
+import edu.mit.csail.sdg.alloy4compiler.ast.Expr;
+import edu.mit.csail.sdg.alloy4compiler.ast.Sig;
+import edu.mit.csail.sdg.alloy4compiler.translator.*;
+
+import kodkod.ast.Relation;
+import kodkod.instance.Instance;
+import kodkod.instance.Tuple;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+
+/**
+ * Reads the relations of a solution directly from the tuple sets of the
+ * underlying Kodkod instance. Universe indices are mapped once to the
+ * identifiers of the MDCSolution, through the atom names of the A4Solution
+ * (those of A4Tuple.atom, which differ from the Kodkod ones); relations
+ * that do not appear in the instance under their Alloy name are evaluated
+ * through the A4Solution.
+ */
+
+class TupleExtractor {
+
+    static final int STATE = 0;
+    static final int LABEL = 1;
+    static final int TRANSITION = 2;
+    static final int EXECUTION = 3;
+    static final int TRACE = 4;
+    static final int INT = 5;
+
+    private static final int UNSET = Integer.MIN_VALUE;
+
+    /** Receives the identifiers of the atoms of each tuple; the array is reused between calls. */
+    interface RowHandler {
+	void row(int[] ids);
+    }
+
+    private final MDCSolution mdc;
+    private final A4Solution alloySolution;
+    private final Map<String,TupleSet> relations = new HashMap<String,TupleSet>();
+    private Universe universe = null;
+    // A4Solution name of each atom of the universe, by universe index
+    private String[] atomNames = null;
+    private final int[][] localIds = new int[INT + 1][];
+
+    TupleExtractor(MDCSolution mdc, A4Solution alloySolution) {
+	this.mdc = mdc;
+	this.alloySolution = alloySolution;
+	try {
+	    final Instance instance = alloySolution.debugExtractKInstance();
+	    if (instance != null) {
+		universe = instance.universe();
+		atomNames = atomNames(alloySolution, universe);
+		for (Map.Entry<Relation,TupleSet> e:instance.relationTuples().entrySet()) {
+		    relations.put(e.getKey().name(), e.getValue());
+		}
+	    }
+	} catch (Err | RuntimeException e) {
+	    // Everything will go through the evaluator
+	    relations.clear();
+	}
+    }
+
+    /** The A4Solution name of each universe atom, read from univ, whose A4 and Kodkod tuples are iterated in the same order. */
+    private static String[] atomNames(A4Solution alloySolution, Universe universe) throws Err {
+	final String[] names = new String[universe.size()];
+	final A4TupleSet univ = (A4TupleSet) alloySolution.eval(Sig.UNIV);
+	final Iterator<Tuple> kodkodTuples = univ.debugGetKodkodTupleset().iterator();
+	for (A4Tuple t:univ) {
+	    names[kodkodTuples.next().atomIndex(0)] = t.atom(0);
+	}
+	return names;
+    }
+
+    /** A4Solution name of the atom, its Kodkod name for an atom outside univ (which no relation holds). */
+    private String atomName(int atomIndex) {
+	final String name = atomNames[atomIndex];
+	return (name != null) ? name : universe.atom(atomIndex).toString();
+    }
+
+    /** Whether the relation is read from the Kodkod instance rather than evaluated. */
+    boolean isDirect(String relation) {
+	return relations.containsKey(relation);
+    }
+
+    /** Calls the handler on each tuple of the relation, the i-th atom being interned as kinds[i]. */
+    void forEach(String relation, Expr fallback, RowHandler handler, int... kinds) throws Err {
+	final int[] ids = new int[kinds.length];
+	final TupleSet tuples = relations.get(relation);
+	if (tuples != null) {
+	    for (Tuple t:tuples) {
+		for (int i = 0; i < kinds.length; i++) {
+		    ids[i] = localId(kinds[i], t.atomIndex(i));
+		}
+		handler.row(ids);
+	    }
+	} else {
+	    for (A4Tuple t:(A4TupleSet) alloySolution.eval(fallback)) {
+		for (int i = 0; i < kinds.length; i++) {
+		    ids[i] = intern(kinds[i], t.atom(i));
+		}
+		handler.row(ids);
+	    }
+	}
+    }
+
+    /** Returns the tuples of the relation written as by A4Tuple.toString(). */
+    Set<String> tupleStrings(String relation, Expr fallback) throws Err {
+	final Set<String> res = new HashSet<String>();
+	final TupleSet tuples = relations.get(relation);
+	if (tuples != null) {
+	    final StringBuilder sb = new StringBuilder();
+	    for (Tuple t:tuples) {
+		sb.setLength(0);
+		for (int i = 0; i < t.arity(); i++) {
+		    if (i > 0) sb.append("->");
+		    sb.append(atomName(t.atomIndex(i)));
+		}
+		res.add(sb.toString());
+	    }
+	} else {
+	    for (A4Tuple t:(A4TupleSet) alloySolution.eval(fallback)) {
+		res.add(t.toString());
+	    }
+	}
+	return res;
+    }
+
+    private int localId(int kind, int atomIndex) {
+	int[] ids = localIds[kind];
+	if (ids == null) {
+	    ids = new int[universe.size()];
+	    Arrays.fill(ids, UNSET);
+	    localIds[kind] = ids;
+	}
+	if (ids[atomIndex] == UNSET) {
+	    ids[atomIndex] = intern(kind, atomName(atomIndex));
+	}
+	return ids[atomIndex];
+    }
+
+    private int intern(int kind, String atom) {
+	switch (kind) {
+	case STATE: return mdc.internState(atom);
+	case LABEL: return mdc.internLabel(atom);
+	case TRANSITION: return mdc.internTransition(atom);
+	case EXECUTION: return mdc.internExecution(atom);
+	case TRACE: return mdc.internTrace(atom);
+	default: return Integer.parseInt(atom);
+	}
+    }
+}
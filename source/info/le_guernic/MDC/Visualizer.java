@@ -36,6 +36,7 @@ import java.io.*;
 
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
+import javax.swing.SwingUtilities;
 
 import edu.mit.csail.sdg.alloy4.A4Reporter;
 import edu.mit.csail.sdg.alloy4.Err;
@@ -57,126 +58,267 @@ import edu.uci.ics.jung.graph.Graph;
 
 /** This class allows a more appropriate visualization of MDC models. */
 
-public class Visualizer implements ActionListener {
+public class Visualizer implements ActionListener, SolverWorker.Listener {
 
     private A4Options options;
     private A4Reporter reporter;
-    
+
     private VisualizerGUI gui = null;
+    private SolverWorker worker = null;
+    private SolutionCache cache = null;
 
     private Module alloyWorld = null;
     private Command alloyExecutedCmd = null;
-    private A4Solution alloySolution = null;
+
+    // Solution currently displayed, from which the next one is shown by applying a diff
+    private PreparedSolution shownSolution = null;
+    private final boolean incrementalUpdates = !"false".equals(System.getProperty("mdc.gui.incremental"));
+
+    // Solutions replayed from a store instead of being solved
+    private SolutionStoreReader replayStore = null;
+    private int replayPosition = -1;
 
     public Visualizer(String filename) throws Err {
 	this.options = new A4Options();
 	this.options.solver = A4Options.SatSolver.SAT4J;
 	this.reporter =	new A4Reporter() {
-	    // For example, here we choose to display each "warning" by printing it to System.out
+	    // For example, here we choose to display each "warning" by logging it
 	    @Override public void warning(ErrorWarning msg) {
-		System.out.print("Relevance Warning:\n"+(msg.toString().trim())+"\n\n");
-		System.out.flush();
+		Log.warn("Relevance Warning:\n"+(msg.toString().trim())+"\n");
 	    }
 	};
-	
-	System.out.println("\n=========== Parsing+Typechecking '"+filename+"' =============");
-	alloyWorld = CompUtil.parseEverything_fromFile(reporter, null, filename);
 
-	System.out.println("\n=========== Initializing GUI =============");
+	Log.info("\n=========== Parsing+Typechecking '"+filename+"' =============");
+	try (Metrics.Timer t = Metrics.time(Metrics.Phase.PARSE)) {
+	    alloyWorld = CompUtil.parseEverything_fromFile(reporter, null, filename);
+	}
+	cache = SolutionCache.fromSystemProperties();
+	if (cache != null) {
+	    Log.info("\n=========== Checking solution cache '" + cache.getDirectory() + "' =============");
+	    cache.checkOnStartup();
+	}
+	worker = new SolverWorker(alloyWorld, options, this, cache);
+	for (Command cmd:worker.getCachedCommands()) {
+	    Log.info("Cached solutions available for '" + cmd + "'");
+	}
+
+	Log.info("\n=========== Initializing GUI =============");
 	gui =  VisualizerGUI.createAndStart(alloyWorld.getAllCommands(), this);
+	if (LayoutPrecomputer.ENABLED) {
+	    final LayoutPrecomputer layouts = new LayoutPrecomputer();
+	    worker.setLayoutPrecomputer(layouts);
+	    SwingUtilities.invokeLater(() -> { gui.setLayoutPrecomputer(layouts); });
+	}
+    }
+
+    /** Browses the solutions of a store written by a batch enumeration. */
+    public Visualizer(SolutionStoreReader store, String storeName) {
+	this.replayStore = store;
+	Log.info("\n=========== Replaying " + store.size() + " solutions from '" + storeName + "' =============");
+	gui = VisualizerGUI.createAndStart(new ArrayList<Command>(), this);
+	final Runnable guiRunner = () -> { gui.setReplayMode(storeName); };
+	SwingUtilities.invokeLater(guiRunner);
     }
-    
+
     public static void main(String[] args) throws Err {
-	if (args.length == 1) {
+	if (args.length >= 1 && args[0].equals("-batch")) {
+	    BatchEnumerator.main(Arrays.copyOfRange(args, 1, args.length));
+	} else if (args.length >= 1 && args[0].equals("-parallel")) {
+	    try {
+		ParallelCommandRunner.main(Arrays.copyOfRange(args, 1, args.length));
+	    } catch (InterruptedException e) {
+		Log.warn(">>> WARNING <<< InterruptedException while running commands");
+	    }
+	} else if (args.length >= 1 && args[0].equals("-daemon")) {
+	    SolverDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+	} else if (args.length >= 1 && args[0].equals("-client")) {
+	    DaemonClient.main(Arrays.copyOfRange(args, 1, args.length));
+	} else if (args.length == 2 && args[0].equals("-replay")) {
+	    try {
+		Visualizer viz = new Visualizer(new SolutionStoreReader(args[1]), args[1]);
+	    } catch (IOException e) {
+		Log.error("Could not replay " + args[1] + ": " + e);
+	    }
+	} else if (args.length == 1) {
 	    Visualizer viz = new Visualizer(args[0]);
 	} else {
 	    System.out.println("Usage: Visualizer alsFile");
+	    System.out.println("       Visualizer -batch alsFile [-command labelOrIndex] [-n maxSolutions] [-o outFile]");
+	    System.out.println("       Visualizer -parallel alsFile [-threads N] [commandLabelOrIndex ...]");
+	    System.out.println("       Visualizer -replay store.mdcs");
+	    System.out.println("       Visualizer -daemon [-port N] [-threads N] [warmUpAlsFile ...]");
+	    System.out.println("       Visualizer -client [-port N] operation [arguments]");
 	}
     }
 
     public void actionPerformed(ActionEvent e) {
+	if (replayStore != null) {
+	    replayActionPerformed(e);
+	    return;
+	}
 	if (e.getActionCommand().equals("Run command")) {
-	    try {
-		alloyExecutedCmd = gui.getSelectedCommand();
-		run();
-	    } catch (Err err) {
-		System.out.println(">>> Error <<< while running command!");
-	    }
+	    shownSolution = null;
+	    alloyExecutedCmd = gui.getSelectedCommand();
+	    gui.setLayoutCache(LayoutCache.forKey(cache, worker.getCacheKey(alloyExecutedCmd)));
+	    gui.setBusy(true);
+	    worker.submitRun(alloyExecutedCmd);
 	}
 	if (e.getActionCommand().equals("Find next solution")) {
-	    try {
-		next();
-	    } catch (Err err) {
-		System.out.println(">>> Error <<< while running command!");
-	    }
+	    gui.setBusy(true);
+	    worker.submitNext();
+	}
+	if (e.getActionCommand().equals("Run all commands")) {
+	    shownSolution = null;
+	    gui.setBusy(true);
+	    worker.submitRunAll(gui.getAllCommands());
+	}
+	if (e.getActionCommand().equals("Cancel command")) {
+	    worker.cancel();
 	}
     }
 
-    public void run() throws Err {
-	System.out.println("\n=========== Executing command '" + alloyExecutedCmd + "' =============");
-	alloySolution = TranslateAlloyToKodkod.execute_command(reporter, alloyWorld.getAllReachableSigs(), alloyExecutedCmd, options);
-	if (alloySolution.satisfiable()) {
-	    updateGUIwithSolution();
-	} else {
-	    gui.popupInfo("No solution!");
+    /** Moves through the store; decoding a mapped solution is fast enough for the event thread. */
+    private void replayActionPerformed(ActionEvent e) {
+	int pos = replayPosition;
+	if (e.getActionCommand().equals("Run command")) pos = 0;
+	if (e.getActionCommand().equals("Find next solution")) pos = replayPosition + 1;
+	if (e.getActionCommand().equals("Find previous solution")) pos = replayPosition - 1;
+	if (pos < 0 || pos >= replayStore.size()) {
+	    gui.popupInfo((replayStore.size() == 0) ? "No solution!" : "No more solutions!");
+	    return;
+	}
+	try {
+	    final PreparedSolution sol = replayStore.getPrepared(pos);
+	    replayPosition = pos;
+	    updateGUIwithSolution(sol);
+	    gui.setStatus("Solution " + (pos + 1) + " / " + replayStore.size());
+	} catch (IOException ex) {
+	    gui.popupInfo("Unreadable solution " + pos + ": " + ex.getMessage());
 	}
     }
 
-    public void next() throws Err {
-	System.out.println("\n=========== Looking for next solution =============");
-	alloySolution = alloySolution.next();
-	if (alloySolution.satisfiable()) {
-	    updateGUIwithSolution();
-	} else {
-	    gui.popupInfo("No more solutions!");
-	}
+    // SOLVER WORKER CALLBACKS (called on the worker thread)
+
+    public void progress(final String msg) {
+	SwingUtilities.invokeLater(() -> { gui.setStatus(msg); });
+    }
+
+    public void solutionFound(final PreparedSolution sol) {
+	// The transitions pane is built from its finished layout, unless the solution is given on the event thread
+	if (!SwingUtilities.isEventDispatchThread()) sol.awaitTransitionsLayout();
+	SwingUtilities.invokeLater(() -> {
+		gui.setBusy(false);
+		updateGUIwithSolution(sol);
+	    });
+    }
+
+    public void reportReady(final String report) {
+	Log.info(report);
+	SwingUtilities.invokeLater(() -> {
+		gui.setBusy(false);
+		shownSolution = null;
+		gui.initGUIupdate();
+	    });
+    }
+
+    public void noSolution(final String msg) {
+	SwingUtilities.invokeLater(() -> {
+		gui.setBusy(false);
+		gui.popupInfo(msg);
+	    });
     }
 
-    public void updateGUIwithSolution() throws Err {
-	// Print the outcome
-	System.out.println(alloySolution);
-	gui.initGUIupdate();
+    public void failed(final String msg, final Throwable cause) {
+	Log.error(msg);
+	if (cause != null) Log.error(cause.toString());
+	SwingUtilities.invokeLater(() -> {
+		gui.setBusy(false);
+		gui.popupInfo(msg + (cause == null ? "" : "\n" + cause.getMessage()));
+	    });
+    }
+
+    public void cancelled() {
+	final int running = worker.getAbandonedSearchCount();
+	final String status = (running == 0) ? "Cancelled"
+	    : "Cancelled, " + running + " abandoned SAT search" + ((running > 1) ? "es" : "") + " still running";
+	Log.info(">>> Command cancelled <<<");
+	if (running > 0) Log.warn(">>> WARNING <<< The SAT solver can not be interrupted, " + running + " abandoned search(es) use the CPU until they end");
+	SwingUtilities.invokeLater(() -> {
+		gui.setBusy(false);
+		gui.setStatus(status);
+	    });
+    }
+
+    /**
+     * Displays a solution prepared by the worker. Must be called on the event dispatch thread.
+     * When another solution is already shown, only what differs from it is updated.
+     */
+    public void updateGUIwithSolution(PreparedSolution sol) {
+	final A4Solution alloySolution = sol.getAlloySolution();
+	final MDCSolution mdc = sol.getMDCSolution();
+	final PreparedSolution previous = shownSolution;
+	// The Alloy solution is not printed: it is not safe to read while the prefetcher calls next()
+	Log.debug(() -> "Solution #" + sol.getIndex() + ((alloySolution == null) ? " (from cache)" : ""));
 	// If satisfiable...
-	if (alloySolution.satisfiable()) {
-	    MDCSolution mdc = new MDCSolution(alloyWorld, alloySolution);
-	    
-	    System.out.println("\n>>>>>>>>>> Transitions <<<<<<<<<<");
-	    for (Transition t:mdc.getTransitions()) {
-		System.out.println(t.toString());
-	    }
-	    System.out.println("\n>>>>>>>>>> Executions <<<<<<<<<<");
-	    for (Execution e:mdc.getExecutions()) {
-		System.out.println(e.toString());
-	    }
-	    System.out.println("\n>>>>>>>>>> Traces <<<<<<<<<<");
-	    for (Trace t:mdc.getTraces()) {
-		System.out.println(t.toString());
-	    }
+	if (alloySolution == null || alloySolution.satisfiable()) {
 
-	    Graph<State,Transition> transGraph = GraphGenerator.generateTransitionsGraph(mdc);
-	    System.out.println("\n>>>>>>>>>> Graph <<<<<<<<<<\n" + transGraph + "\n");
-	    gui.setTransitions(transGraph);
-	    //
-	    for (Execution exec:mdc.getExecutions()) {
-		Graph<State,Transition> execGraph = GraphGenerator.generateExecutionGraph(exec);
-		gui.addExecution(exec.getGUIName(), execGraph);
+	    Log.debug(() -> dump(mdc));
+
+	    shownSolution = sol;
+	    if (incrementalUpdates && previous != null) {
+		final SolutionDiff diff = SolutionDiff.compute(previous.getMDCSolution(), mdc);
+		Log.debug(() -> "\n>>>>>>>>>> Changes <<<<<<<<<<\n" + diff + "\n");
+		gui.applySolutionDiff(diff, sol);
+	    } else {
+		gui.initGUIupdate();
+		Log.trace(() -> "\n>>>>>>>>>> Graph <<<<<<<<<<\n" + sol.getTransitionsGraph() + "\n");
+		gui.setTransitions(sol);
+		//
+		for (Execution exec:mdc.getExecutions()) {
+		    gui.addExecution(exec.getGUIName(), () -> sol.getExecutionGraph(exec));
+		}
+		//
+		gui.addTraces(mdc.getTraces());
 	    }
 	    //
-	    gui.addTraces(mdc.getTraces());
-	    //
-	    gui.logInfo("Executed command:");
-	    for (Func f:alloyWorld.getAllFunc()) {
-		if (f.label.equals("this/"+alloyExecutedCmd.label)) {
-		    gui.logInfo(" " + alloyExecutedCmd.label + "\n");
-		    gui.logInfo("  " + f.getBody() + "\n");
+	    final StringBuilder info = new StringBuilder("\nSolution #").append(sol.getIndex());
+	    if (alloyWorld != null && alloyExecutedCmd != null) {
+		info.append(" of command:");
+		for (Func f:alloyWorld.getAllFunc()) {
+		    if (f.label.equals("this/"+alloyExecutedCmd.label)) {
+			info.append(" ").append(alloyExecutedCmd.label).append("\n");
+			info.append("  ").append(f.getBody());
+		    }
 		}
 	    }
-	    gui.logInfo("\n");
-	    gui.logInfo("Variables mapping:\n");
+	    if (sol.getSkippedBefore() > 0) {
+		info.append("\n").append(sol.getSkippedBefore()).append(" solutions isomorphic to previous ones skipped so far");
+	    }
+	    info.append("\n\nVariables mapping:");
 	    for (Map.Entry<String, Set<String>> e : mdc.getVariablesMapping().entrySet()) {
-		gui.logInfo("  - " + e.getKey() + " -> " + e.getValue() + "\n");
+		info.append("\n  - ").append(e.getKey()).append(" -> ").append(e.getValue());
 	    }
+	    Log.info(info.toString());
+	} else {
+	    shownSolution = null;
+	    gui.initGUIupdate();
 	}
 	gui.finalizeGUIupdate();
     }
+
+    private static String dump(MDCSolution mdc) {
+	final StringBuilder sb = new StringBuilder("\n>>>>>>>>>> Transitions <<<<<<<<<<\n");
+	for (Transition t:mdc.getTransitions()) {
+	    sb.append(t).append('\n');
+	}
+	sb.append("\n>>>>>>>>>> Executions <<<<<<<<<<\n");
+	for (Execution e:mdc.getExecutions()) {
+	    sb.append(e).append('\n');
+	}
+	sb.append("\n>>>>>>>>>> Traces <<<<<<<<<<");
+	for (Trace t:mdc.getTraces()) {
+	    sb.append('\n').append(t);
+	}
+	return sb.toString();
+    }
 }
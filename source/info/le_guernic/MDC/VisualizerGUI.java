@@ -34,6 +34,8 @@ package info.le_guernic.MDC;
 // import info.le_guernic.MDC.Transition;
 
 import java.util.*;
+import java.util.List;
+import java.util.function.Supplier;
 //import java.io.File;
 //import java.io.IOException;
 
@@ -47,6 +49,12 @@ import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.event.WindowEvent;
 import javax.swing.*;
 import javax.swing.table.TableModel;
 import java.lang.reflect.InvocationTargetException;
@@ -59,17 +67,42 @@ public final class VisualizerGUI {
     private JComboBox<Command> commandComboBox;
     private JButton runButton;
     private JButton nextButton;
+    private JButton previousButton;
+    private JButton runAllButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private JCheckBox aggregateCheckBox;
     private JPanel transitionsDisplay;
     private JTabbedPane executionsDisplay;
     private JTable tracesDisplay;
     private JTextArea textInfoArea;
+    private TextAreaAppender logAppender;
+    private LayoutCache layoutCache = new LayoutCache();
+    // Solution shown, to redraw it when aggregation is toggled and to build its panes from its precomputed layouts
+    private PreparedSolution displayedSolution = null;
+    private LayoutPrecomputer layoutPrecomputer = null;
+
+    // Execution tabs whose pane is built, least recently shown first
+    private static final int MAX_BUILT_EXECUTIONS = Integer.getInteger("mdc.gui.maxExecutionPanes", 8);
+    private static final int MAX_LOG_LINES = Integer.getInteger("mdc.log.guiLines", 2000);
+    private final LinkedHashMap<ExecutionTab,Boolean> builtExecutions = new LinkedHashMap<ExecutionTab,Boolean>(16, 0.75f, true);
 
     public VisualizerGUI() {}
 
     private void initGUI(final Collection<Command> commands, final ActionListener actionsHandler) {
-        //Create and set up the window.
-        frame = new JFrame("BDM Metamodel Explorer");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+	//Create and set up the window.
+	frame = new JFrame("BDM Metamodel Explorer");
+	frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+	frame.addWindowListener(new WindowAdapter() {
+		@Override
+		public void windowClosing(WindowEvent e) {
+		    recordLayouts();
+		    layoutCache.save();
+		    Metrics.endCommand();
+		    Log.removeAppender(logAppender);
+		}
+	    });
 
 	final JPanel controlPanel = new JPanel(new FlowLayout());
 	commandComboBox = new JComboBox<Command>();
@@ -85,24 +118,76 @@ public final class VisualizerGUI {
 	nextButton.addActionListener(actionsHandler);
 	nextButton.setActionCommand("Find next solution");
 	controlPanel.add(nextButton);
-	
+	previousButton = new JButton("Previous");
+	previousButton.addActionListener(actionsHandler);
+	previousButton.setActionCommand("Find previous solution");
+	previousButton.setVisible(false);
+	controlPanel.add(previousButton);
+	runAllButton = new JButton("Run all");
+	runAllButton.addActionListener(actionsHandler);
+	runAllButton.setActionCommand("Run all commands");
+	controlPanel.add(runAllButton);
+	cancelButton = new JButton("Cancel");
+	cancelButton.addActionListener(actionsHandler);
+	cancelButton.setActionCommand("Cancel command");
+	cancelButton.setEnabled(false);
+	controlPanel.add(cancelButton);
+	progressBar = new JProgressBar();
+	progressBar.setIndeterminate(false);
+	controlPanel.add(progressBar);
+	statusLabel = new JLabel(" ");
+	controlPanel.add(statusLabel);
+	aggregateCheckBox = new JCheckBox("Aggregate parallel transitions", Boolean.getBoolean("mdc.gui.aggregate"));
+	aggregateCheckBox.setToolTipText("Draw all the transitions between two states as one edge, double-click it to expand it");
+	aggregateCheckBox.addActionListener((e) -> { toggleAggregation(); });
+	controlPanel.add(aggregateCheckBox);
+
 	transitionsDisplay = new JPanel();
 	executionsDisplay = new JTabbedPane();
+	executionsDisplay.addChangeListener((e) -> { showSelectedExecution(); });
 	tracesDisplay = new JTable(new TraceTableModel());
 	/** Does not do what I want
 	tracesDisplay = new JTable(new TraceTableModel()){
-            public boolean getScrollableTracksViewportWidth()
-            {
-                return getPreferredSize().width < getParent().getWidth();
-            }
-        };
+	    public boolean getScrollableTracksViewportWidth()
+	    {
+		return getPreferredSize().width < getParent().getWidth();
+	    }
+	};
 	*/
 	// tracesDisplay.getColumnModel().getColumn(0).setPreferredWidth(100);
 	// tracesDisplay.getColumnModel().getColumn(1).setPreferredWidth(200);
 	tracesDisplay.setAutoResizeMode(JTable.AUTO_RESIZE_OFF); // if need be
 	tracesDisplay.setFillsViewportHeight(true);
-	
-	final JSplitPane ETspliter = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, executionsDisplay, new JScrollPane(tracesDisplay));
+	tracesDisplay.getTableHeader().setToolTipText("Click to sort");
+	tracesDisplay.getTableHeader().addMouseListener(new MouseAdapter() {
+		@Override
+		public void mouseClicked(MouseEvent e) {
+		    final int col = tracesDisplay.columnAtPoint(e.getPoint());
+		    final TableModel tm = tracesDisplay.getModel();
+		    if (col >= 0 && tm instanceof TraceTableModel) {
+			((TraceTableModel) tm).sortBy(tracesDisplay.convertColumnIndexToModel(col));
+		    }
+		}
+	    });
+	final JTextField tracesFilter = new JTextField();
+	tracesFilter.setToolTipText("Only show the traces whose name or labels contain all these words");
+	tracesFilter.getDocument().addDocumentListener(new DocumentListener() {
+		private void update() {
+		    final TableModel tm = tracesDisplay.getModel();
+		    if (tm instanceof TraceTableModel) ((TraceTableModel) tm).setFilter(tracesFilter.getText());
+		}
+		public void insertUpdate(DocumentEvent e) { update(); }
+		public void removeUpdate(DocumentEvent e) { update(); }
+		public void changedUpdate(DocumentEvent e) { update(); }
+	    });
+	final JPanel tracesPanel = new JPanel(new BorderLayout());
+	final JPanel tracesFilterPanel = new JPanel(new BorderLayout());
+	tracesFilterPanel.add(new JLabel("Filter: "), BorderLayout.WEST);
+	tracesFilterPanel.add(tracesFilter, BorderLayout.CENTER);
+	tracesPanel.add(tracesFilterPanel, BorderLayout.NORTH);
+	tracesPanel.add(new JScrollPane(tracesDisplay), BorderLayout.CENTER);
+
+	final JSplitPane ETspliter = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, executionsDisplay, tracesPanel);
 	/** Does not do what I want
 	tracesDisplay.getParent().addComponentListener(new ComponentAdapter() {
 		@Override
@@ -127,20 +212,24 @@ public final class VisualizerGUI {
 	textInfoArea.setWrapStyleWord(true);
 	textInfoArea.setEditable(false);
 	final JScrollPane textInfoAreaSP = new JScrollPane(textInfoArea);
-	
-	final JSplitPane topSpliter = new JSplitPane(JSplitPane.VERTICAL_SPLIT, graphsSpliter, textInfoAreaSP);
+	final JTabbedPane infoTabs = new JTabbedPane();
+	infoTabs.addTab("Messages", textInfoAreaSP);
+	infoTabs.addTab("Metrics", new MetricsPanel());
+	Log.addAppender(logAppender = new TextAreaAppender(textInfoArea, MAX_LOG_LINES, Log.Level.INFO));
+
+	final JSplitPane topSpliter = new JSplitPane(JSplitPane.VERTICAL_SPLIT, graphsSpliter, infoTabs);
 	topSpliter.setOneTouchExpandable(true);
 	topSpliter.setResizeWeight(1.0);
-	
+
 	frame.getContentPane().setLayout(new BorderLayout());
-        frame.getContentPane().add(controlPanel, BorderLayout.NORTH);
-        frame.getContentPane().add(topSpliter, BorderLayout.CENTER);
-	
-        frame.setPreferredSize(new Dimension(800,600));
-        frame.pack();
-        frame.setVisible(true);
+	frame.getContentPane().add(controlPanel, BorderLayout.NORTH);
+	frame.getContentPane().add(topSpliter, BorderLayout.CENTER);
+
+	frame.setPreferredSize(new Dimension(800,600));
+	frame.pack();
+	frame.setVisible(true);
     }
-    
+
     public static VisualizerGUI createAndStart(Collection<Command> commands, ActionListener actionsHandler) {
 	VisualizerGUI gui = new VisualizerGUI();
 	final Runnable guiRunner =
@@ -153,9 +242,9 @@ public final class VisualizerGUI {
 	try {
 	    javax.swing.SwingUtilities.invokeAndWait(guiRunner);
 	} catch (InterruptedException e) {
-	    System.out.println(">>> WARNING <<< InterruptedException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InterruptedException while creating the GUI");
 	} catch (InvocationTargetException e) {
-	    System.out.println(">>> WARNING <<< InvocationTargetException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InvocationTargetException while creating the GUI");
 	}
 	return gui;
     }
@@ -164,17 +253,119 @@ public final class VisualizerGUI {
 	return commandComboBox.getItemAt(commandComboBox.getSelectedIndex());
     }
 
+    public List<Command> getAllCommands() {
+	final List<Command> commands = new ArrayList<Command>();
+	for (int i = 0; i < commandComboBox.getItemCount(); i++) {
+	    commands.add(commandComboBox.getItemAt(i));
+	}
+	return commands;
+    }
+
+    /** Switches the controls between idle and solving modes. */
+    public void setBusy(boolean busy) {
+	runButton.setEnabled(!busy);
+	nextButton.setEnabled(!busy);
+	runAllButton.setEnabled(!busy);
+	cancelButton.setEnabled(busy);
+	progressBar.setIndeterminate(busy);
+	if (!busy) setStatus(" ");
+    }
+
+    /** Shows the controls used to browse the solutions of a store. */
+    public void setReplayMode(String storeName) {
+	frame.setTitle("BDM Metamodel Explorer - " + storeName);
+	runButton.setText("First");
+	previousButton.setVisible(true);
+	commandComboBox.setVisible(false);
+	runAllButton.setVisible(false);
+	cancelButton.setVisible(false);
+	progressBar.setVisible(false);
+    }
+
+    public void setStatus(String status) {
+	statusLabel.setText(status);
+    }
+
     public void clear() {
 	initGUIupdate();
 	finalizeGUIupdate();
     }
 
+    /** Positions of the next graphs start from the ones saved in the cache. */
+    public void setLayoutCache(LayoutCache cache) {
+	recordLayouts();
+	layoutCache.save();
+	layoutCache = cache;
+	if (layoutPrecomputer != null) layoutPrecomputer.setSeed(cache);
+    }
+
+    /** Layouts of the next solutions are computed ahead by the precomputer, which is kept informed of the panes. */
+    public void setLayoutPrecomputer(LayoutPrecomputer precomputer) {
+	layoutPrecomputer = precomputer;
+	precomputer.setSeed(layoutCache);
+    }
+
+    /** Positions computed ahead for the graphs of the displayed solution, or null. */
+    private LayoutCache precomputedLayouts() {
+	return (displayedSolution == null) ? null : displayedSolution.getLayouts();
+    }
+
+    /** Saves the current positions of the vertices of all the panes into the layout cache. */
+    private void recordLayouts() {
+	if (transitionsDisplay instanceof MDCGraphPane) ((MDCGraphPane) transitionsDisplay).recordLayout();
+	for (ExecutionTab tab:builtExecutions.keySet()) tab.getPane().recordLayout();
+    }
+
+    /** Builds the pane of the selected execution if needed, and releases the least recently shown ones. */
+    private void showSelectedExecution() {
+	final Component c = executionsDisplay.getSelectedComponent();
+	if (!(c instanceof ExecutionTab)) return;
+	final ExecutionTab tab = (ExecutionTab) c;
+	if (!tab.isBuilt()) {
+	    Dimension tDispDim = executionsDisplay.getSize(null);
+	    tDispDim.setSize(tDispDim.getWidth() * 0.9, (tDispDim.getHeight() - 20) * 0.9);
+	    if (layoutPrecomputer != null) layoutPrecomputer.setExecutionsSize(tDispDim);
+	    tab.build(tDispDim, layoutCache, precomputedLayouts());
+	}
+	builtExecutions.put(tab, Boolean.TRUE);
+	final Iterator<ExecutionTab> it = builtExecutions.keySet().iterator();
+	while (builtExecutions.size() > MAX_BUILT_EXECUTIONS && it.hasNext()) {
+	    final ExecutionTab eldest = it.next();
+	    if (eldest == tab) continue;
+	    eldest.release();
+	    it.remove();
+	}
+	shownExecutionsChanged();
+    }
+
+    /** Tells the precomputer which executions to lay out ahead in the next solutions. */
+    private void shownExecutionsChanged() {
+	if (layoutPrecomputer == null) return;
+	final List<String> names = new ArrayList<String>();
+	for (ExecutionTab tab:builtExecutions.keySet()) names.add(tab.getExecName());
+	layoutPrecomputer.setShownExecutions(names);
+    }
+
+    private void removeExecutionTab(int idx) {
+	final Component c = executionsDisplay.getComponentAt(idx);
+	if (c instanceof ExecutionTab) {
+	    ((ExecutionTab) c).release();
+	    builtExecutions.remove(c);
+	}
+	executionsDisplay.removeTabAt(idx);
+    }
+
     public void initGUIupdate() {
 	// transitionsDisplay.removeAll();
+	displayedSolution = null;
+	recordLayouts();
+	layoutCache.save();
+	for (ExecutionTab tab:builtExecutions.keySet()) tab.release();
+	builtExecutions.clear();
+	shownExecutionsChanged();
 	executionsDisplay.removeAll();
 	final TableModel tm = tracesDisplay.getModel();
 	if (tm instanceof TraceTableModel) { ((TraceTableModel) tm).removeAllTraces(); }
-	textInfoArea.setText(null);
     }
 
     public void pack() {
@@ -189,6 +380,10 @@ public final class VisualizerGUI {
     }
 
     public void setTransitions(Graph<State,Transition> g) {
+	showTransitions(g, null);
+    }
+
+    private void showTransitions(Graph<State,Transition> g, LayoutCache precomputed) {
 	if ( g != null ) {
 	    Container tDispParent = transitionsDisplay.getParent();
 	    int currentDividerLocation = 0;
@@ -198,7 +393,8 @@ public final class VisualizerGUI {
 	    Dimension tDispDim = transitionsDisplay.getSize(null);
 	    tDispDim.setSize(tDispDim.getWidth() * 0.9, tDispDim.getHeight() * 0.9);
 	    // Create visualization
-	    MDCGraphPane gPane = new MDCGraphPane(g, tDispDim);
+	    if (layoutPrecomputer != null) layoutPrecomputer.setTransitionsSize(tDispDim);
+	    MDCGraphPane gPane = new MDCGraphPane(g, tDispDim, layoutCache, LayoutCache.TRANSITIONS, precomputed);
 	    // Insert vv in GUI
 	    if (tDispParent instanceof JSplitPane) {
 		transitionsDisplay = gPane;
@@ -214,6 +410,19 @@ public final class VisualizerGUI {
 	}
     }
 
+    /** Shows the transitions graph of the solution, with parallel transitions aggregated if so chosen. */
+    public void setTransitions(PreparedSolution sol) {
+	displayedSolution = sol;
+	showTransitions(sol.getTransitionsGraph(aggregateCheckBox.isSelected()), sol.getLayouts());
+    }
+
+    private void toggleAggregation() {
+	if (displayedSolution == null) return;
+	if (transitionsDisplay instanceof MDCGraphPane) ((MDCGraphPane) transitionsDisplay).dispose();
+	setTransitions(displayedSolution);
+	finalizeGUIupdate();
+    }
+
     public void setTransitionsInED(Graph<State,Transition> g) {
 	final Runnable guiRunner =
 	    new Runnable() {
@@ -223,23 +432,25 @@ public final class VisualizerGUI {
 	try {
 	    javax.swing.SwingUtilities.invokeAndWait(guiRunner);
 	} catch (InterruptedException e) {
-	    System.out.println(">>> WARNING <<< InterruptedException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InterruptedException while creating the GUI");
 	} catch (InvocationTargetException e) {
-	    System.out.println(">>> WARNING <<< InvocationTargetException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InvocationTargetException while creating the GUI");
 	}
     }
 
     public void addExecution(String execName, Graph<State,Transition> g) {
 	if ( g != null ) {
-	    Dimension tDispDim = executionsDisplay.getSize(null);
-	    tDispDim.setSize(tDispDim.getWidth() * 0.9, (tDispDim.getHeight() - 20) * 0.9);
-	    MDCGraphPane gPane = new MDCGraphPane(g, tDispDim);
-	    executionsDisplay.addTab(execName, gPane);
+	    addExecution(execName, () -> g);
 	} else {
 	    popupInfo("Error while adding execution '" + execName + "': graph object is null");
 	}
     }
 
+    /** Adds the tab of an execution, whose graph is only asked for when the tab is first shown. */
+    public void addExecution(String execName, Supplier<Graph<State,Transition>> graph) {
+	executionsDisplay.addTab(execName, new ExecutionTab(execName, graph));
+    }
+
     public void addExecutionInED(String execName, Graph<State,Transition> g) {
 	final Runnable guiRunner =
 	    new Runnable() {
@@ -249,9 +460,64 @@ public final class VisualizerGUI {
 	try {
 	    javax.swing.SwingUtilities.invokeAndWait(guiRunner);
 	} catch (InterruptedException e) {
-	    System.out.println(">>> WARNING <<< InterruptedException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InterruptedException while creating the GUI");
 	} catch (InvocationTargetException e) {
-	    System.out.println(">>> WARNING <<< InvocationTargetException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InvocationTargetException while creating the GUI");
+	}
+    }
+
+    /**
+     * Updates the displayed solution to the next one, only touching the
+     * graphs, tabs and rows reported by the diff. The built panes of changed
+     * graphs are rebound to the graphs of the new solution, keeping the
+     * positions of their states; panes of unchanged graphs are kept as
+     * they are.
+     */
+    public void applySolutionDiff(SolutionDiff diff, PreparedSolution sol) {
+	final MDCSolution mdc = sol.getMDCSolution();
+	recordLayouts();
+	displayedSolution = sol;
+	if (diff.transitionsChanged()) {
+	    if (transitionsDisplay instanceof MDCGraphPane) {
+		((MDCGraphPane) transitionsDisplay).patch(sol.getTransitionsGraph(aggregateCheckBox.isSelected()), sol.getLayouts());
+	    } else {
+		setTransitions(sol);
+	    }
+	}
+	if (diff.executionsChanged()) {
+	    for (String name:diff.removedExecutions) {
+		final int idx = executionsDisplay.indexOfTab(Execution.toGUIName(name));
+		if (idx >= 0) removeExecutionTab(idx);
+	    }
+	}
+	// Tabs are matched to executions by title, and kept in the order of the executions
+	int idx = 0;
+	for (Execution exec:mdc.getExecutions()) {
+	    final Supplier<Graph<State,Transition>> graph = () -> sol.getExecutionGraph(exec);
+	    final int at = executionsDisplay.indexOfTab(exec.getGUIName());
+	    final Component c = (at < 0) ? null : executionsDisplay.getComponentAt(at);
+	    if (c instanceof ExecutionTab) {
+		final ExecutionTab tab = (ExecutionTab) c;
+		if (at != idx) {
+		    executionsDisplay.removeTabAt(at);
+		    executionsDisplay.insertTab(exec.getGUIName(), null, tab, null, Math.min(idx, executionsDisplay.getTabCount()));
+		}
+		tab.setGraphSupplier(graph);
+		if (tab.isBuilt() && diff.changedExecutions.contains(exec.getName())) tab.getPane().patch(graph.get(), sol.getLayouts());
+	    } else {
+		if (at >= 0) removeExecutionTab(at);
+		executionsDisplay.insertTab(exec.getGUIName(), null, new ExecutionTab(exec.getGUIName(), graph), null, Math.min(idx, executionsDisplay.getTabCount()));
+	    }
+	    idx += 1;
+	}
+	showSelectedExecution();
+	if (diff.tracesChanged()) {
+	    final TableModel tm = tracesDisplay.getModel();
+	    if (tm instanceof TraceTableModel) {
+		final Set<String> changed = new HashSet<String>(diff.changedTraces);
+		changed.addAll(diff.addedTraces);
+		((TraceTableModel) tm).updateTraces(mdc.getTraces(), changed);
+	    }
 	}
     }
 
@@ -271,16 +537,12 @@ public final class VisualizerGUI {
 	try {
 	    javax.swing.SwingUtilities.invokeAndWait(guiRunner);
 	} catch (InterruptedException e) {
-	    System.out.println(">>> WARNING <<< InterruptedException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InterruptedException while creating the GUI");
 	} catch (InvocationTargetException e) {
-	    System.out.println(">>> WARNING <<< InvocationTargetException while creating the GUI");
+	    Log.warn(">>> WARNING <<< InvocationTargetException while creating the GUI");
 	}
     }
 
-    public void logInfo(String info) {
-	textInfoArea.append(info);
-    }
-
     public void popupInfo(String info) {
 	JOptionPane.showMessageDialog(frame, info, "Warning", JOptionPane.INFORMATION_MESSAGE);
     }
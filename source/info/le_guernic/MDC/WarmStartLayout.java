@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.awt.Dimension;
+import java.awt.geom.Point2D;
+
+import com.google.common.base.Function;
+
+import edu.uci.ics.jung.graph.Graph;
+import edu.uci.ics.jung.algorithms.layout.FRLayout;
+import edu.uci.ics.jung.algorithms.layout.util.RandomLocationTransformer;
+
+/**
+ * FRLayout starting from the positions of a LayoutCache. The vertices
+ * placed from the cache are locked while a short relaxation places the
+ * other ones, and unlocked afterwards.
+ */
+
+class WarmStartLayout extends FRLayout<State,Transition> implements WarmStartable {
+
+    private static final int FULL_ITERATIONS = 700; // FRLayout default
+    private static final int WARM_ITERATIONS = Integer.getInteger("mdc.layout.warmIterations", 50);
+
+    private boolean warm = false;
+    // All the vertices were placed from the cache, there is nothing to relax
+    private boolean placed = false;
+
+    WarmStartLayout(Graph<State,Transition> graph, Dimension dim, final LayoutCache cache, final String graphName) {
+	super(graph, dim);
+	final Function<State,Point2D> random = new RandomLocationTransformer<State>(dim);
+	setInitializer(new Function<State,Point2D>() {
+		public Point2D apply(State s) {
+		    final Point2D p = (cache == null) ? null : cache.get(graphName, s.getName());
+		    return (p != null) ? p : random.apply(s);
+		}
+	    });
+	int seeded = 0;
+	for (State s:graph.getVertices()) {
+	    if (cache != null && cache.get(graphName, s.getName()) != null) {
+		lock(s, true);
+		seeded++;
+	    }
+	}
+	if (seeded == graph.getVertexCount()) {
+	    unlockAll();
+	    placed = true;
+	} else if (seeded > 0) {
+	    startWarm();
+	}
+    }
+
+    /** Locks the vertices that already have a position, to only place the new ones. */
+    public void warmStart() {
+	boolean all = true;
+	for (State s:getGraph().getVertices()) {
+	    final boolean located = locations.asMap().containsKey(s);
+	    lock(s, located);
+	    all &= located;
+	}
+	if (all) {
+	    unlockAll();
+	    placed = true;
+	} else {
+	    placed = false;
+	    startWarm();
+	}
+    }
+
+    private void startWarm() {
+	warm = true;
+	setMaxIterations(WARM_ITERATIONS);
+    }
+
+    @Override
+    public boolean done() {
+	return placed || super.done();
+    }
+
+    @Override
+    public synchronized void step() {
+	try (Metrics.Timer t = Metrics.time(Metrics.Phase.LAYOUT)) {
+	    super.step();
+	}
+	if (warm && done()) unlockAll();
+    }
+
+    private void unlockAll() {
+	for (State s:getGraph().getVertices()) lock(s, false);
+	warm = false;
+    }
+
+    /** Computes a fresh layout of all the vertices. */
+    @Override
+    public void reset() {
+	unlockAll();
+	placed = false;
+	setMaxIterations(FULL_ITERATIONS);
+	super.reset();
+    }
+}
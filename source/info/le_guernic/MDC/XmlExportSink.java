@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the Alloy XML form of each solution, as read by the Alloy
+ * visualizer. The XML is the one kept by the enumerator when the solution
+ * was extracted (see SolutionEnumerator.setAlloyXmlKept), as the Alloy
+ * solution can not be read here while the enumeration goes on.
+ */
+
+public class XmlExportSink implements SolutionSink {
+
+    private final Path dir;
+    private final String prefix;
+
+    public XmlExportSink(Path dir, String prefix) {
+	this.dir = dir;
+	this.prefix = prefix;
+    }
+
+    public void write(PreparedSolution sol) throws IOException {
+	if (sol.getAlloySolution() == null) {
+	    // Solutions read back from a cache or a store have no Alloy form
+	    return;
+	}
+	final String xml = sol.getAlloyXml();
+	if (xml == null) throw new IOException("The XML of solution " + sol.getIndex() + " was not kept by its enumerator");
+	Files.write(ExportPipeline.fileFor(dir, prefix, sol.getIndex(), ".xml"), xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void close() {}
+}
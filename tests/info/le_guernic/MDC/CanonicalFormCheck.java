@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import static info.le_guernic.MDC.Checks.*;
+
+import java.util.*;
+import java.util.function.IntFunction;
+
+/**
+ * Certificates of CanonicalForm: equal for solutions that only differ by
+ * the names and numbering of their atoms, different otherwise. Also checks
+ * the bounded set of digests of AlloySolutionEnumerator.
+ */
+
+public class CanonicalFormCheck {
+
+    public static void main(String[] args) {
+	renamed();
+	notIsomorphic();
+	digests();
+	seenDigests();
+	done(CanonicalFormCheck.class);
+    }
+
+    private static void renamed() {
+	final Random rnd = new Random(3);
+	for (int[] size:new int[][] {{1, 1, 0}, {3, 6, 3}, {6, 12, 5}, {12, 40, 8}}) {
+	    final MDCSolution mdc = random(size[0], size[1], size[2], rnd);
+	    final String cert = CanonicalForm.certificate(mdc);
+	    check(cert != null, "certificate of " + Arrays.toString(size));
+	    for (int i = 0; i < 3; i++) {
+		checkEquals(cert, CanonicalForm.certificate(renamed(mdc, rnd)), "certificate of a renamed " + Arrays.toString(size));
+	    }
+	}
+    }
+
+    private static void notIsomorphic() {
+	final Random rnd = new Random(5);
+	for (int i = 0; i < 20; i++) {
+	    final MDCSolution mdc = random(6, 12, 5, rnd);
+	    // Another post-state for a transition that no execution goes through
+	    final Set<Integer> used = new HashSet<Integer>();
+	    for (int e = 0; e < mdc.executionCount(); e++) {
+		for (int j = 0; j < mdc.executionLength(e); j++) used.add(mdc.executionStep(e, j));
+	    }
+	    for (int t = 0; t < mdc.transitionCount(); t++) {
+		if (used.contains(t)) continue;
+		final String before = byNames(mdc);
+		final String cert = CanonicalForm.certificate(mdc);
+		final int post = mdc.postState(t);
+		mdc.setPostState(t, (post + 1) % mdc.stateCount());
+		// Unless moving it gave an isomorphic solution, which is rare on such graphs
+		if (!byNames(mdc).equals(before)) {
+		    check(!cert.equals(CanonicalForm.certificate(mdc)), "certificate of a solution with a moved transition");
+		}
+		mdc.setPostState(t, post);
+		break;
+	    }
+	}
+	// Same number of states with one incoming and one outgoing transition each: only individualization tells them apart
+	final MDCSolution twoCycles = parse("transition T0 S0 S1 L0 L0", "transition T1 S1 S2 L0 L0", "transition T2 S2 S0 L0 L0",
+					    "transition T3 S3 S4 L0 L0", "transition T4 S4 S5 L0 L0", "transition T5 S5 S3 L0 L0");
+	final MDCSolution oneCycle = parse("transition T0 S0 S1 L0 L0", "transition T1 S1 S2 L0 L0", "transition T2 S2 S3 L0 L0",
+					   "transition T3 S3 S4 L0 L0", "transition T4 S4 S5 L0 L0", "transition T5 S5 S0 L0 L0");
+	check(!CanonicalForm.certificate(twoCycles).equals(CanonicalForm.certificate(oneCycle)), "two cycles are not one");
+	// Same graph, but the empty label matters
+	final MDCSolution empty = parse("label L0 empty", "transition T0 S0 S1 L0 L1");
+	final MDCSolution notEmpty = parse("label L0", "transition T0 S0 S1 L0 L1");
+	check(!CanonicalForm.certificate(empty).equals(CanonicalForm.certificate(notEmpty)), "empty label");
+	// Executions are sequences: the order of their steps matters
+	final String[] loops = {"transition T0 S0 S0 L0 L0", "transition T1 S0 S0 L1 L1"};
+	final MDCSolution first = parse(loops[0], loops[1], "execution E0 S0 T0 T0 T1");
+	final MDCSolution second = parse(loops[0], loops[1], "execution E0 S0 T0 T1 T0");
+	check(!CanonicalForm.certificate(first).equals(CanonicalForm.certificate(second)), "order of the steps");
+    }
+
+    private static void digests() {
+	final MDCSolution mdc = random(5, 10, 4, new Random(11));
+	final String cert = CanonicalForm.certificate(mdc);
+	final long[] digest = CanonicalForm.digest(mdc);
+	checkEquals(cert.substring(0, 32), String.format("%016x%016x", digest[0], digest[1]), "digest is the start of the certificate");
+    }
+
+    /** Against a set that forgets its oldest elements, with many collisions in the table. */
+    private static void seenDigests() {
+	for (int capacity:new int[] {1, 2, 3, 7, 64}) {
+	    final Random rnd = new Random(capacity);
+	    final AlloySolutionEnumerator.SeenDigests seen = new AlloySolutionEnumerator.SeenDigests(capacity);
+	    final LinkedHashSet<String> expected = new LinkedHashSet<String>();
+	    boolean same = true;
+	    for (int n = 0; n < 100000 && same; n++) {
+		final long high = rnd.nextInt(3 * capacity), low = rnd.nextInt(3);
+		final boolean added = !expected.contains(high + " " + low);
+		if (added) {
+		    if (expected.size() == capacity) expected.remove(expected.iterator().next());
+		    expected.add(high + " " + low);
+		}
+		same = (seen.add(high, low) == added);
+	    }
+	    check(same, "digests remembered with a capacity of " + capacity);
+	}
+    }
+
+    /** Copy of the solution with its atoms renamed and numbered in another order. */
+    private static MDCSolution renamed(MDCSolution mdc, Random rnd) {
+	final Map<String,String> names = new HashMap<String,String>();
+	rename(names, "S", mdc.stateCount(), mdc::stateName, rnd);
+	rename(names, "L", mdc.labelCount(), mdc::labelName, rnd);
+	rename(names, "T", mdc.transitionCount(), mdc::transitionName, rnd);
+	rename(names, "E", mdc.executionCount(), mdc::executionName, rnd);
+	rename(names, "R", mdc.traceCount(), mdc::traceName, rnd);
+	names.put(null, "-");
+
+	final List<String> states = new ArrayList<String>();
+	for (int s = 0; s < mdc.stateCount(); s++) states.add("state " + names.get(mdc.stateName(s)));
+	final List<String> labels = new ArrayList<String>();
+	for (int l = 0; l < mdc.labelCount(); l++) {
+	    labels.add("label " + names.get(mdc.labelName(l)) + (mdc.isEmptyLabel(l) ? " empty" : mdc.isNoLabel(l) ? " none" : ""));
+	}
+	final List<String> transitions = new ArrayList<String>();
+	for (int t = 0; t < mdc.transitionCount(); t++) {
+	    transitions.add("transition " + names.get(mdc.transitionName(t))
+			    + " " + names.get(name(mdc.preState(t), mdc::stateName)) + " " + names.get(name(mdc.postState(t), mdc::stateName))
+			    + " " + names.get(name(mdc.trigger(t), mdc::labelName)) + " " + names.get(name(mdc.effect(t), mdc::labelName)));
+	}
+	final List<String> executions = new ArrayList<String>();
+	for (int e = 0; e < mdc.executionCount(); e++) {
+	    final StringBuilder sb = new StringBuilder("execution " + names.get(mdc.executionName(e)) + " " + names.get(mdc.stateName(mdc.initialState(e))));
+	    for (int i = 0; i < mdc.executionLength(e); i++) sb.append(" ").append(names.get(mdc.transitionName(mdc.executionStep(e, i))));
+	    executions.add(sb.toString());
+	}
+	final List<String> traces = new ArrayList<String>();
+	for (int r = 0; r < mdc.traceCount(); r++) {
+	    final StringBuilder sb = new StringBuilder("trace " + names.get(mdc.traceName(r)));
+	    for (int i = 0; i < mdc.traceLength(r); i++) sb.append(" ").append(names.get(mdc.labelName(mdc.traceLabel(r, i))));
+	    traces.add(sb.toString());
+	}
+	final List<String> lines = new ArrayList<String>();
+	for (List<String> kind:Arrays.asList(states, labels, transitions, executions, traces)) {
+	    Collections.shuffle(kind, rnd);
+	    lines.addAll(kind);
+	}
+	return parse(lines.toArray(new String[0]));
+    }
+
+    private static void rename(Map<String,String> names, String prefix, int count, IntFunction<String> name, Random rnd) {
+	final List<Integer> order = new ArrayList<Integer>();
+	for (int i = 0; i < count; i++) order.add(i);
+	Collections.shuffle(order, rnd);
+	for (int i = 0; i < count; i++) names.put(name.apply(i), prefix + order.get(i));
+    }
+
+    private static String name(int id, IntFunction<String> name) {
+	return (id == MDCSolution.NONE) ? null : name.apply(id);
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import java.util.*;
+
+/**
+ * Support of the self-checking tests of ./tests, run by ./bin/test.sh: each
+ * class whose name ends with Check has a main that runs its checks and ends
+ * with done(), which exits with a non-zero status if any of them failed.
+ */
+
+class Checks {
+
+    private static int checks = 0;
+    private static int failures = 0;
+
+    private Checks() {}
+
+    static void check(boolean condition, String what) {
+	checks++;
+	if (!condition) {
+	    failures++;
+	    System.out.println("FAILED: " + what);
+	}
+    }
+
+    static void checkEquals(Object expected, Object actual, String what) {
+	check(Objects.equals(expected, actual), what + ": expected " + expected + " but got " + actual);
+    }
+
+    static void done(Class<?> c) {
+	System.out.println(c.getSimpleName() + ": " + checks + " checks, " + failures + " failed");
+	if (failures > 0) System.exit(1);
+    }
+
+    // SOLUTIONS
+
+    /**
+     * Textual form of the solution that only depends on the names of its
+     * atoms, not on their identifiers, so that solutions built in different
+     * orders can be compared.
+     */
+    static String byNames(MDCSolution mdc) {
+	final List<String> lines = new ArrayList<String>();
+	for (int s = 0; s < mdc.stateCount(); s++) lines.add("state " + mdc.stateName(s));
+	for (int l = 0; l < mdc.labelCount(); l++) {
+	    lines.add("label " + mdc.labelName(l) + (mdc.isEmptyLabel(l) ? " empty" : "") + (mdc.isNoLabel(l) ? " none" : ""));
+	}
+	for (int t = 0; t < mdc.transitionCount(); t++) {
+	    lines.add("transition " + mdc.transitionName(t) + " " + state(mdc, mdc.preState(t)) + " -> " + state(mdc, mdc.postState(t))
+		      + " " + label(mdc, mdc.trigger(t)) + " / " + label(mdc, mdc.effect(t)));
+	}
+	for (int e = 0; e < mdc.executionCount(); e++) {
+	    final StringBuilder sb = new StringBuilder("execution " + mdc.executionName(e) + " " + state(mdc, mdc.initialState(e)));
+	    for (int i = 0; i < mdc.executionLength(e); i++) sb.append(" ").append(mdc.transitionName(mdc.executionStep(e, i)));
+	    lines.add(sb.toString());
+	}
+	for (int r = 0; r < mdc.traceCount(); r++) {
+	    final StringBuilder sb = new StringBuilder("trace " + mdc.traceName(r));
+	    for (int i = 0; i < mdc.traceLength(r); i++) sb.append(" ").append(label(mdc, mdc.traceLabel(r, i)));
+	    lines.add(sb.toString());
+	}
+	for (Map.Entry<String,Set<String>> v:mdc.getVariablesMapping().entrySet()) {
+	    lines.add("variable " + v.getKey() + " " + new TreeSet<String>(v.getValue()));
+	}
+	Collections.sort(lines);
+	return String.join("\n", lines);
+    }
+
+    private static String state(MDCSolution mdc, int s) {
+	return (s == MDCSolution.NONE) ? "-" : mdc.stateName(s);
+    }
+
+    private static String label(MDCSolution mdc, int l) {
+	return (l == MDCSolution.NONE) ? "-" : mdc.labelName(l);
+    }
+
+    /**
+     * Solution described by lines such as "state S", "label L empty",
+     * "label N none", "transition T pre post trigger effect" (where "-"
+     * stands for a missing end or label), "execution E initial T..." and
+     * "trace R L...". Atoms are numbered in the order they first appear.
+     */
+    static MDCSolution parse(String... lines) {
+	final MDCSolution mdc = new MDCSolution();
+	for (String line:lines) {
+	    final String[] w = line.trim().split(" +");
+	    switch (w[0]) {
+	    case "state" :
+		mdc.internState(w[1]);
+		break;
+	    case "label" :
+		final int l = mdc.internLabel(w[1]);
+		if (w.length > 2 && w[2].equals("empty")) mdc.setEmptyLabel(l, true);
+		if (w.length > 2 && w[2].equals("none")) mdc.setNoLabel(l);
+		break;
+	    case "transition" :
+		final int t = mdc.internTransition(w[1]);
+		if (!w[2].equals("-")) mdc.setPreState(t, mdc.internState(w[2]));
+		if (!w[3].equals("-")) mdc.setPostState(t, mdc.internState(w[3]));
+		if (!w[4].equals("-")) mdc.setTrigger(t, mdc.internLabel(w[4]));
+		if (!w[5].equals("-")) mdc.setEffect(t, mdc.internLabel(w[5]));
+		break;
+	    case "execution" :
+		final int e = mdc.internExecution(w[1]);
+		mdc.initExecution(e, mdc.internState(w[2]));
+		for (int i = 3; i < w.length; i++) mdc.stepExecution(e, mdc.internTransition(w[i]));
+		break;
+	    case "trace" :
+		final int r = mdc.internTrace(w[1]);
+		for (int i = 2; i < w.length; i++) mdc.appendToTrace(r, mdc.internLabel(w[i]));
+		break;
+	    default:
+		throw new IllegalArgumentException("Unknown line: " + line);
+	    }
+	}
+	return mdc;
+    }
+
+    /**
+     * Random solution, as in the benchmarks: every state has an outgoing
+     * transition, there are as many executions and traces as states, and
+     * the first label is the empty one.
+     */
+    static MDCSolution random(int nbStates, int nbTransitions, int length, Random rnd) {
+	final MDCSolution mdc = new MDCSolution();
+	for (int s = 0; s < nbStates; s++) mdc.internState("State$" + s);
+	final int nbLabels = Math.max(2, nbStates / 2);
+	for (int l = 0; l < nbLabels; l++) mdc.internLabel("Label$" + l);
+	mdc.setEmptyLabel(0, true);
+	mdc.setNoLabel(mdc.internLabel("NoLabel$0"));
+	final List<List<Integer>> outgoing = new ArrayList<List<Integer>>();
+	for (int s = 0; s < nbStates; s++) outgoing.add(new ArrayList<Integer>());
+	for (int t = 0; t < Math.max(nbTransitions, nbStates); t++) {
+	    final int pre = (t < nbStates) ? t : rnd.nextInt(nbStates);
+	    mdc.internTransition("Transition$" + t);
+	    mdc.setPreState(t, pre);
+	    mdc.setPostState(t, rnd.nextInt(nbStates));
+	    mdc.setTrigger(t, rnd.nextInt(nbLabels));
+	    mdc.setEffect(t, rnd.nextInt(nbLabels));
+	    outgoing.get(pre).add(t);
+	}
+	for (int e = 0; e < nbStates; e++) {
+	    final int id = mdc.internExecution("Execution$" + e);
+	    int s = rnd.nextInt(nbStates);
+	    mdc.initExecution(id, s);
+	    for (int i = 0; i < length; i++) {
+		final List<Integer> out = outgoing.get(s);
+		final int t = out.get(rnd.nextInt(out.size()));
+		mdc.stepExecution(id, t);
+		s = mdc.postState(t);
+	    }
+	}
+	for (int r = 0; r < nbStates; r++) {
+	    final int id = mdc.internTrace("Trace$" + r);
+	    for (int i = 0; i < length; i++) mdc.appendToTrace(id, rnd.nextInt(nbLabels));
+	}
+	return mdc;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import static info.le_guernic.MDC.Checks.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+
+/** Round trips of solutions through SolutionCodec and through solution stores. */
+
+public class SolutionCodecCheck {
+
+    public static void main(String[] args) throws IOException {
+	varInts();
+	roundTrips();
+	corruptedRecord();
+	store();
+	done(SolutionCodecCheck.class);
+    }
+
+    private static void varInts() {
+	for (int v:new int[] {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE}) {
+	    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	    SolutionCodec.writeVarInt(out, v);
+	    checkEquals(v, SolutionCodec.readVarInt(ByteBuffer.wrap(out.toByteArray())), "variable-length " + v);
+	}
+    }
+
+    private static void roundTrips() throws IOException {
+	roundTrip(new MDCSolution(), "empty solution");
+	final Random rnd = new Random(42);
+	for (int[] size:new int[][] {{1, 1, 0}, {3, 5, 2}, {10, 50, 10}, {200, 1000, 30}}) {
+	    roundTrip(random(size[0], size[1], size[2], rnd), "solution " + Arrays.toString(size));
+	}
+	// Missing ends and labels, non ASCII names and variables
+	final MDCSolution mdc = new MDCSolution();
+	final int s = mdc.internState("\u00c9tat$0");
+	final int t = mdc.internTransition("Transition$0");
+	mdc.setPreState(t, s);
+	mdc.setEffect(t, mdc.internLabel("Label$0"));
+	mdc.internExecution("Execution$0");
+	mdc.internTrace("Trace$0");
+	mdc.getVariablesMapping().put("$x", new HashSet<String>(Arrays.asList("State$0", "Label$0")));
+	roundTrip(mdc, "partial solution");
+    }
+
+    private static void roundTrip(MDCSolution mdc, String what) throws IOException {
+	final byte[] record = SolutionCodec.encode(mdc);
+	final ByteBuffer in = ByteBuffer.wrap(record);
+	final MDCSolution decoded = SolutionCodec.decode(in);
+	checkEquals(byNames(mdc), byNames(decoded), what + " decoded");
+	check(!in.hasRemaining(), what + ": the whole record is read");
+	check(Arrays.equals(record, SolutionCodec.encode(decoded)), what + " encoded again");
+    }
+
+    private static void corruptedRecord() {
+	final byte[] record = SolutionCodec.encode(random(10, 50, 10, new Random(1)));
+	try {
+	    SolutionCodec.decode(ByteBuffer.wrap(Arrays.copyOf(record, record.length / 2)));
+	    check(false, "truncated record rejected");
+	} catch (IOException e) {
+	    check(true, "truncated record rejected");
+	}
+    }
+
+    private static void store() throws IOException {
+	final Path file = Files.createTempFile("mdc-check", SolutionStoreWriter.SUFFIX);
+	try {
+	    final Random rnd = new Random(7);
+	    final List<MDCSolution> written = new ArrayList<MDCSolution>();
+	    try (SolutionStoreWriter writer = new SolutionStoreWriter(file.toString())) {
+		for (int i = 0; i < 3; i++) {
+		    written.add(random(5 + i, 20, 5, rnd));
+		    writer.write(new PreparedSolution(10 * i, null, written.get(i)));
+		}
+	    }
+	    // A record cut short by a crash is dropped before appending
+	    Files.write(file, new byte[] {0, 0, 1, 0, 0, 0}, StandardOpenOption.APPEND);
+	    try (SolutionStoreWriter writer = new SolutionStoreWriter(file.toString())) {
+		written.add(random(4, 10, 3, rnd));
+		writer.write(new PreparedSolution(30, null, written.get(3)));
+	    }
+	    try (SolutionStoreReader reader = new SolutionStoreReader(file.toString())) {
+		checkEquals(written.size(), reader.size(), "solutions in the store");
+		for (int i = 0; i < Math.min(written.size(), reader.size()); i++) {
+		    checkEquals(10 * i, reader.getEnumerationIndex(i), "enumeration index of stored solution " + i);
+		    checkEquals(byNames(written.get(i)), byNames(reader.get(i)), "stored solution " + i);
+		}
+	    }
+	} finally {
+	    Files.deleteIfExists(file);
+	}
+    }
+}
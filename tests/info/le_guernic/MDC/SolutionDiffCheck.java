@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import static info.le_guernic.MDC.Checks.*;
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/** Differences computed by SolutionDiff between hand-made solutions. */
+
+public class SolutionDiffCheck {
+
+    private static final String[] BASE = {
+	"state S0", "state S1", "state S2",
+	"label L0 empty",
+	"transition T0 S0 S1 L1 L2",
+	"transition T1 S1 S2 L0 L1",
+	"execution E0 S0 T0 T1",
+	"execution E1 S1 T1",
+	"trace R0 L1 L2",
+	"trace R1 L1"
+    };
+
+    public static void main(String[] args) throws IOException {
+	unchanged();
+	changedTransition();
+	addedAtoms();
+	executionsAndTraces();
+	done(SolutionDiffCheck.class);
+    }
+
+    private static MDCSolution base(String... changes) {
+	final List<String> lines = new ArrayList<String>();
+	for (String line:BASE) {
+	    // A change replaces the line of the same atom, "-execution E1" removes it
+	    final String atom = line.split(" ")[0] + " " + line.split(" ")[1];
+	    boolean replaced = false;
+	    for (String c:changes) replaced |= (c + " ").startsWith(atom + " ") || c.equals("-" + atom);
+	    if (!replaced) lines.add(line);
+	}
+	for (String c:changes) {
+	    if (!c.startsWith("-")) lines.add(c);
+	}
+	return parse(lines.toArray(new String[0]));
+    }
+
+    private static void unchanged() throws IOException {
+	final MDCSolution mdc = base();
+	check(SolutionDiff.compute(mdc, mdc).isEmpty(), "no difference with itself");
+	final MDCSolution decoded = SolutionCodec.decode(ByteBuffer.wrap(SolutionCodec.encode(mdc)));
+	check(SolutionDiff.compute(mdc, decoded).isEmpty(), "no difference with its decoded copy");
+	// Same atoms, numbered in another order
+	final List<String> reversed = new ArrayList<String>(Arrays.asList(BASE));
+	Collections.reverse(reversed);
+	check(SolutionDiff.compute(mdc, parse(reversed.toArray(new String[0]))).isEmpty(), "no difference with a renumbered copy");
+    }
+
+    private static void changedTransition() {
+	final SolutionDiff diff = SolutionDiff.compute(base(), base("transition T1 S1 S0 L0 L1"));
+	checkEquals(set("T1"), diff.changedTransitions, "changed transitions");
+	// Executions going through a changed transition are changed too
+	checkEquals(set("E0", "E1"), diff.changedExecutions, "changed executions");
+	check(diff.addedStates.isEmpty() && diff.removedStates.isEmpty(), "same states");
+	check(!diff.tracesChanged(), "traces unchanged");
+
+	final SolutionDiff empty = SolutionDiff.compute(base(), base("label L0"));
+	checkEquals(set("T1"), empty.changedTransitions, "transitions whose label is no longer the empty one");
+    }
+
+    private static void addedAtoms() {
+	final SolutionDiff diff = SolutionDiff.compute(base(), base("transition T2 S2 S3 L2 L0"));
+	checkEquals(set("S3"), diff.addedStates, "added states");
+	checkEquals(set("T2"), diff.addedTransitions, "added transitions");
+	check(diff.changedTransitions.isEmpty(), "no changed transition");
+	check(diff.transitionsChanged(), "transitions graph changed");
+	check(!diff.executionsChanged(), "executions unchanged");
+
+	final SolutionDiff back = SolutionDiff.compute(base("transition T2 S2 S3 L2 L0"), base());
+	checkEquals(set("S3"), back.removedStates, "removed states");
+	checkEquals(set("T2"), back.removedTransitions, "removed transitions");
+    }
+
+    private static void executionsAndTraces() {
+	final SolutionDiff diff = SolutionDiff.compute(base(), base("-execution E1", "execution E2 S0 T0", "trace R0 L1 L1", "execution E0 S0 T0"));
+	checkEquals(set("E1"), diff.removedExecutions, "removed executions");
+	checkEquals(set("E2"), diff.addedExecutions, "added executions");
+	checkEquals(set("E0"), diff.changedExecutions, "changed executions");
+	checkEquals(set("R0"), diff.changedTraces, "changed traces");
+	check(diff.addedTraces.isEmpty() && diff.removedTraces.isEmpty(), "same traces");
+	check(!diff.transitionsChanged(), "transitions graph unchanged");
+    }
+
+    private static Set<String> set(String... names) {
+	return new TreeSet<String>(Arrays.asList(names));
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2018, Gurvan LE GUERNIC
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * * Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ * 
+ * * Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ * 
+ * * Neither the name of the copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package info.le_guernic.MDC;
+import info.le_guernic.MDC.*;
+
+import static info.le_guernic.MDC.Checks.*;
+
+import java.util.*;
+
+/**
+ * TraceSemantics against the predicates of MDC.als: transitionTrace,
+ * executionTrace_internal and projection_internal, on hand-made solutions
+ * whose expected traces follow from the predicates.
+ */
+
+public class TraceSemanticsCheck {
+
+    private static final MDCSolution MDC = parse(
+	"label L0 empty", "label N none",
+	"transition Both S0 S1 L1 L2",
+	"transition NoTrigger S1 S2 L0 L3",
+	"transition NoEffect S2 S0 L1 L0",
+	"transition Silent S0 S0 L0 L0",
+	"transition Lost S0 S1 L1 N",
+	"execution E0 S0 Both NoTrigger NoEffect Silent",
+	"execution E1 S0 Lost",
+	"execution E2 S0",
+	"trace R0 L1 L2 L3 L1",
+	"trace R1 L1 L1",
+	"trace R2 L1",
+	"trace R3 L2 L1",
+	"trace R4 L1 N",
+	"trace R5 L1 L0 L2 L3 L1",
+	"trace R6");
+
+    public static void main(String[] args) {
+	transitionTraces();
+	executionTraces();
+	projections();
+	relations();
+	randomExecutions();
+	done(TraceSemanticsCheck.class);
+    }
+
+    private static void transitionTraces() {
+	// The trace is the trigger then the effect, without EmptyLabel
+	checkEquals(labels("L1", "L2"), transitionTrace("Both"), "trace of a transition");
+	checkEquals(labels("L3"), transitionTrace("NoTrigger"), "trace of a transition with an empty trigger");
+	checkEquals(labels("L1"), transitionTrace("NoEffect"), "trace of a transition with an empty effect");
+	checkEquals(labels(), transitionTrace("Silent"), "trace of a transition with empty labels");
+    }
+
+    private static void executionTraces() {
+	// Concatenation of the traces of the transitions, without EmptyLabel nor NoLabel
+	checkEquals(labels("L1", "L2", "L3", "L1"), executionTrace("E0"), "trace of an execution");
+	check(TraceSemantics.executionTrace(MDC, MDC.executionId("E1")) == null, "no trace for an execution with NoLabel");
+	checkEquals(labels(), executionTrace("E2"), "trace of an empty execution");
+	check(isExecutionTrace("E0", "R0"), "executionTrace[E0, R0]");
+	check(!isExecutionTrace("E0", "R2"), "not executionTrace[E0, R2]");
+	check(!isExecutionTrace("E0", "R5"), "not executionTrace[E0, R5], EmptyLabel is not in traces");
+	check(!isExecutionTrace("E1", "R4"), "not executionTrace[E1, R4], NoLabel is not in traces");
+	check(isExecutionTrace("E2", "R6"), "executionTrace[E2, R6]");
+    }
+
+    private static void projections() {
+	final int r0 = MDC.traceId("R0");
+	// The labels of the trace that are in onLabels, in the same order
+	checkEquals(labels("L1", "L3", "L1"), list(TraceSemantics.projection(MDC, TraceSemantics.traceContent(MDC, r0), on("L1", "L3"))), "projection on {L1, L3}");
+	checkEquals(labels(), list(TraceSemantics.projection(MDC, TraceSemantics.traceContent(MDC, r0), on())), "projection on no label");
+	check(TraceSemantics.projection(MDC, TraceSemantics.traceContent(MDC, r0), on("L1", "N")) == null, "no projection on NoLabel");
+	check(TraceSemantics.projection(MDC, TraceSemantics.traceContent(MDC, MDC.traceId("R4")), on("L1")) == null, "no projection of a trace with NoLabel");
+	check(TraceSemantics.isProjection(MDC, r0, on("L1"), MDC.traceId("R1")), "projection[R0, {L1}, R1]");
+	check(!TraceSemantics.isProjection(MDC, r0, on("L1"), MDC.traceId("R2")), "not projection[R0, {L1}, R2], both L1 are kept");
+	check(!TraceSemantics.isProjection(MDC, r0, on("L1", "L2"), MDC.traceId("R3")), "not projection[R0, {L1, L2}, R3], the order is kept");
+	check(!TraceSemantics.isProjection(MDC, r0, on("L2"), MDC.traceId("R2")), "not projection[R0, {L2}, R2], the labels of R2 are in onLabels");
+	checkEquals(on("L1"), TraceSemantics.projectionLabels(MDC, r0, MDC.traceId("R1")), "labels of projection[R0, _, R1]");
+	check(TraceSemantics.projectionLabels(MDC, r0, MDC.traceId("R3")) == null, "no labels for projection[R0, _, R3]");
+    }
+
+    private static void relations() {
+	final List<String> relations = TraceSemantics.relations(MDC);
+	check(relations.contains("R0 = trace(E0)"), "R0 is the trace of E0 in " + relations);
+	check(relations.contains("R6 = trace(E2)"), "R6 is the trace of E2 in " + relations);
+	check(relations.contains("R1 = projection(R0, {L1})"), "R1 is a projection of R0 in " + relations);
+	check(!relations.contains("R3 = projection(R0, {L1, L2})"), "R3 is not a projection of R0 in " + relations);
+	for (String r:relations) check(!r.contains("E1"), "E1 has no trace in " + r);
+    }
+
+    /** On random solutions, #isTrace = #iTrace - #(EmptyLabel in iTrace), with neither EmptyLabel nor NoLabel in isTrace. */
+    private static void randomExecutions() {
+	final MDCSolution mdc = random(10, 40, 8, new Random(13));
+	for (int e = 0; e < mdc.executionCount(); e++) {
+	    final int[] trace = TraceSemantics.executionTrace(mdc, e);
+	    int empty = 0;
+	    for (int i = 0; i < mdc.executionLength(e); i++) {
+		final int t = mdc.executionStep(e, i);
+		if (mdc.isEmptyLabel(mdc.trigger(t))) empty++;
+		if (mdc.isEmptyLabel(mdc.effect(t))) empty++;
+	    }
+	    check(trace != null, "trace of " + mdc.executionName(e));
+	    if (trace == null) continue;
+	    checkEquals(2 * mdc.executionLength(e) - empty, trace.length, "length of the trace of " + mdc.executionName(e));
+	    for (int l:trace) check(!mdc.isEmptyLabel(l) && !mdc.isNoLabel(l), "labels of the trace of " + mdc.executionName(e));
+	}
+    }
+
+    private static List<String> transitionTrace(String t) {
+	return list(TraceSemantics.transitionTrace(MDC, MDC.transitionId(t)));
+    }
+
+    private static List<String> executionTrace(String e) {
+	return list(TraceSemantics.executionTrace(MDC, MDC.executionId(e)));
+    }
+
+    private static boolean isExecutionTrace(String e, String r) {
+	return TraceSemantics.isExecutionTrace(MDC, MDC.executionId(e), MDC.traceId(r));
+    }
+
+    private static BitSet on(String... labels) {
+	final BitSet res = new BitSet();
+	for (String l:labels) res.set(MDC.labelId(l));
+	return res;
+    }
+
+    private static List<String> labels(String... names) {
+	return Arrays.asList(names);
+    }
+
+    private static List<String> list(int[] trace) {
+	if (trace == null) return null;
+	final List<String> res = new ArrayList<String>();
+	for (int l:trace) res.add(MDC.labelName(l));
+	return res;
+    }
+}